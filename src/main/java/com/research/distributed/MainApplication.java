@@ -1,6 +1,20 @@
 package com.research.distributed;
 
 import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentRouter;
+import com.research.distributed.connection.RetryPolicy;
+import com.research.distributed.connection.TransactionCoordinator;
+import com.research.distributed.controller.BackgroundTasks;
+import com.research.distributed.dao.ChangeFeed;
+import com.research.distributed.dao.GroupCommit;
+import com.research.distributed.dao.MissingKeyCache;
+import com.research.distributed.service.GroupMigrator;
+import com.research.distributed.service.GroupReferenceCache;
+import com.research.distributed.service.MaterializedViews;
+import com.research.distributed.service.QueryResultCache;
+import com.research.distributed.service.SingleFlight;
+import com.research.distributed.service.WriteBehindQueue;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
@@ -58,6 +72,12 @@ public class MainApplication extends Application {
             FragmentConnectionManager connectionManager = FragmentConnectionManager.getInstance();
             connectionManager.initialize();
             logger.info("Database connections initialized successfully");
+            // Migrations interrupted by a crash must finish before anything reads the groups
+            GroupMigrator.getInstance().recover();
+            WriteBehindQueue.getInstance().start();
+            GroupReferenceCache.getInstance().start();
+            MaterializedViews.getInstance().start();
+            ChangeFeed.getInstance().start();
         } catch (Exception e) {
             logger.error("Failed to initialize database connections: {}", e.getMessage());
             showErrorAndExit("Database Connection Error",
@@ -68,7 +88,30 @@ public class MainApplication extends Application {
 
     private void shutdown() {
         try {
+            FragmentRouter.getInstance().logRoutingStats();
+            QueryResultCache.getInstance().logStats();
+            SingleFlight.getInstance().logStats();
+            MaterializedViews.getInstance().logStats();
+            TransactionCoordinator.getInstance().logStats();
+            WriteBehindQueue.getInstance().logStats();
+            GroupCommit.getInstance().logStats();
+            GroupReferenceCache.getInstance().logStats();
+            ChangeFeed.getInstance().logStats();
+            MissingKeyCache.getInstance().logStats();
+            RetryPolicy.getInstance().logStats();
+            FragmentConnectionManager.getInstance().logPoolStats();
+
+            // Cancel what the UI still has running before the pools go away
+            BackgroundTasks.getInstance().shutdown();
             logger.info("Shutting down connections...");
+            ChangeFeed.getInstance().shutdown();
+            MaterializedViews.getInstance().shutdown();
+            GroupReferenceCache.getInstance().shutdown();
+            // Needs the pools for a last flush
+            WriteBehindQueue.getInstance().shutdown();
+            GroupCommit.getInstance().shutdown();
+            FragmentExecutor.getInstance().shutdown();
+            TransactionCoordinator.getInstance().shutdown();
             FragmentConnectionManager.getInstance().shutdown();
             logger.info("Connections shut down successfully");
         } catch (Exception e) {
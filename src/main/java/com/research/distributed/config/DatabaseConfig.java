@@ -52,6 +52,76 @@ public class DatabaseConfig {
         properties.setProperty("pool.connectionTimeout", "5000");
         properties.setProperty("pool.idleTimeout", "300000");
         properties.setProperty("pool.maxLifetime", "600000");
+
+        // Parallel fragment fan-out
+        properties.setProperty("fanout.threads", "8");
+
+        // Query result cache
+        properties.setProperty("cache.enabled", "true");
+        properties.setProperty("cache.maxEntries", "256");
+        properties.setProperty("cache.compact", "true");
+
+        // Materialized views
+        properties.setProperty("views.enabled", "true");
+        properties.setProperty("views.rebuildIntervalSeconds", "300");
+
+        // Online group migration
+        properties.setProperty("migration.chunkSize", "500");
+        properties.setProperty("migration.rowsPerSecond", "2000");
+
+        // Rebalancer
+        properties.setProperty("rebalance.tolerance", "0.10");
+        properties.setProperty("rebalance.maxMoves", "5");
+        properties.setProperty("rebalance.maxConcurrent", "4");
+        properties.setProperty("rebalance.maxPerFragmentPair", "1");
+
+        // Two-phase commit of cross-fragment writes
+        properties.setProperty("twopc.logFile", "data/txn-decisions.log");
+
+        // Write-behind of CRUD inserts and updates
+        properties.setProperty("writeBehind.enabled", "false");
+        properties.setProperty("writeBehind.directory", "data/write-behind");
+        properties.setProperty("writeBehind.batchSize", "100");
+        properties.setProperty("writeBehind.flushIntervalMillis", "200");
+        properties.setProperty("writeBehind.maxRetryDelayMillis", "30000");
+
+        // Group commit of small writes
+        properties.setProperty("groupCommit.enabled", "true");
+        properties.setProperty("groupCommit.windowMillis", "3");
+        properties.setProperty("groupCommit.maxRows", "64");
+        properties.setProperty("groupCommit.threads", "2");
+
+        // In-memory replica of the research groups
+        properties.setProperty("groups.refreshSeconds", "30");
+
+        // Negative cache of keys absent from every fragment
+        properties.setProperty("missingKeys.enabled", "true");
+        properties.setProperty("missingKeys.maxEntries", "10000");
+
+        // Background executor of the UI controllers
+        properties.setProperty("ui.threads", "4");
+        properties.setProperty("ui.pageSize", "200");
+        properties.setProperty("ui.cachedPages", "10");
+        properties.setProperty("query.timeoutMillis", "15000");
+
+        // Change feed (changes made outside this app)
+        properties.setProperty("changeFeed.enabled", "true");
+        properties.setProperty("changeFeed.pollMillis", "5000");
+
+        // Admission control (connection permits per fragment by priority class)
+        properties.setProperty("admission.enabled", "true");
+        properties.setProperty("admission.reservedInteractive", "3");
+        properties.setProperty("admission.maxMigration", "4");
+        properties.setProperty("admission.maxQueue.interactive", "50");
+        properties.setProperty("admission.maxQueue.batch", "10");
+        properties.setProperty("admission.maxQueue.migration", "2");
+        properties.setProperty("admission.waitMillis", "10000");
+
+        // Retry of deadlock victims, lock timeouts and broken connections
+        properties.setProperty("retry.enabled", "true");
+        properties.setProperty("retry.maxAttempts", "4");
+        properties.setProperty("retry.baseDelayMillis", "50");
+        properties.setProperty("retry.maxDelayMillis", "2000");
     }
 
     public String getProperty(String key) {
@@ -74,6 +144,23 @@ public class DatabaseConfig {
         return defaultValue;
     }
 
+    public double getDoubleProperty(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
     public String getP1Url() {
         return getProperty("db.p1.url");
     }
@@ -117,4 +204,208 @@ public class DatabaseConfig {
     public int getPoolMaxLifetime() {
         return getIntProperty("pool.maxLifetime", 600000);
     }
+
+    public int getFanoutThreads() {
+        return getIntProperty("fanout.threads", 8);
+    }
+
+    public boolean isCacheEnabled() {
+        return getBooleanProperty("cache.enabled", true);
+    }
+
+    public int getCacheMaxEntries() {
+        return getIntProperty("cache.maxEntries", 256);
+    }
+
+    /**
+     * Whether cached entity lists are stored dictionary-encoded (CompactEntityList).
+     */
+    public boolean isCacheCompact() {
+        return getBooleanProperty("cache.compact", true);
+    }
+
+    public boolean isViewsEnabled() {
+        return getBooleanProperty("views.enabled", true);
+    }
+
+    public int getViewsRebuildIntervalSeconds() {
+        return getIntProperty("views.rebuildIntervalSeconds", 300);
+    }
+
+    public int getMigrationChunkSize() {
+        return getIntProperty("migration.chunkSize", 500);
+    }
+
+    /**
+     * Copy budget of an online migration; 0 disables throttling.
+     */
+    public int getMigrationRowsPerSecond() {
+        return getIntProperty("migration.rowsPerSecond", 2000);
+    }
+
+    /**
+     * Relative load difference between fragments the rebalancer accepts without moving groups.
+     */
+    public double getRebalanceTolerance() {
+        return getDoubleProperty("rebalance.tolerance", 0.10);
+    }
+
+    public int getRebalanceMaxMoves() {
+        return getIntProperty("rebalance.maxMoves", 5);
+    }
+
+    public int getRebalanceMaxConcurrent() {
+        return getIntProperty("rebalance.maxConcurrent", 4);
+    }
+
+    public int getRebalanceMaxPerFragmentPair() {
+        return getIntProperty("rebalance.maxPerFragmentPair", 1);
+    }
+
+    /**
+     * Local file where the two-phase commit coordinator forces its decisions.
+     */
+    public String getTwoPcLogFile() {
+        return getProperty("twopc.logFile", "data/txn-decisions.log");
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return getBooleanProperty("writeBehind.enabled", false);
+    }
+
+    public String getWriteBehindDirectory() {
+        return getProperty("writeBehind.directory", "data/write-behind");
+    }
+
+    public int getWriteBehindBatchSize() {
+        return getIntProperty("writeBehind.batchSize", 100);
+    }
+
+    public long getWriteBehindFlushIntervalMillis() {
+        return getIntProperty("writeBehind.flushIntervalMillis", 200);
+    }
+
+    /**
+     * Upper bound of the backoff between attempts to reach an unavailable fragment.
+     */
+    public long getWriteBehindMaxRetryDelayMillis() {
+        return getIntProperty("writeBehind.maxRetryDelayMillis", 30000);
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return getBooleanProperty("groupCommit.enabled", true);
+    }
+
+    /**
+     * How long the first write of a batch waits for others to join it.
+     */
+    public long getGroupCommitWindowMillis() {
+        return getIntProperty("groupCommit.windowMillis", 3);
+    }
+
+    public int getGroupCommitMaxRows() {
+        return getIntProperty("groupCommit.maxRows", 64);
+    }
+
+    public int getGroupCommitThreads() {
+        return getIntProperty("groupCommit.threads", 2);
+    }
+
+    /**
+     * How often the group reference cache compares its version with the fragments'.
+     */
+    public int getGroupsRefreshSeconds() {
+        return getIntProperty("groups.refreshSeconds", 30);
+    }
+
+    public boolean isChangeFeedEnabled() {
+        return getBooleanProperty("changeFeed.enabled", true);
+    }
+
+    public long getChangeFeedPollMillis() {
+        return getIntProperty("changeFeed.pollMillis", 5000);
+    }
+
+    public boolean isMissingKeysEnabled() {
+        return getBooleanProperty("missingKeys.enabled", true);
+    }
+
+    public int getMissingKeysMaxEntries() {
+        return getIntProperty("missingKeys.maxEntries", 10000);
+    }
+
+    public int getUiThreads() {
+        return getIntProperty("ui.threads", 4);
+    }
+
+    /**
+     * Deadline of a read started from the UI, across all of its fragment statements.
+     */
+    public long getQueryTimeoutMillis() {
+        return getIntProperty("query.timeoutMillis", 15000);
+    }
+
+    public boolean isAdmissionEnabled() {
+        return getBooleanProperty("admission.enabled", true);
+    }
+
+    /**
+     * Connections per fragment that batch and migration work never take.
+     */
+    public int getAdmissionReservedInteractive() {
+        return getIntProperty("admission.reservedInteractive", 3);
+    }
+
+    public int getAdmissionMaxMigration() {
+        return getIntProperty("admission.maxMigration", 4);
+    }
+
+    public int getAdmissionMaxQueueInteractive() {
+        return getIntProperty("admission.maxQueue.interactive", 50);
+    }
+
+    public int getAdmissionMaxQueueBatch() {
+        return getIntProperty("admission.maxQueue.batch", 10);
+    }
+
+    public int getAdmissionMaxQueueMigration() {
+        return getIntProperty("admission.maxQueue.migration", 2);
+    }
+
+    /**
+     * How long a request waits for a connection permit before failing.
+     */
+    public long getAdmissionWaitMillis() {
+        return getIntProperty("admission.waitMillis", 10000);
+    }
+
+    public boolean isRetryEnabled() {
+        return getBooleanProperty("retry.enabled", true);
+    }
+
+    /**
+     * Attempts of a fragment statement in total, the first one included.
+     */
+    public int getRetryMaxAttempts() {
+        return getIntProperty("retry.maxAttempts", 4);
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return getIntProperty("retry.baseDelayMillis", 50);
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return getIntProperty("retry.maxDelayMillis", 2000);
+    }
+
+    /**
+     * Rows fetched at a time by the paged entity tables.
+     */
+    public int getUiPageSize() {
+        return getIntProperty("ui.pageSize", 200);
+    }
+
+    public int getUiCachedPages() {
+        return getIntProperty("ui.cachedPages", 10);
+    }
 }
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FragmentationConfig {
     private static FragmentationConfig instance;
@@ -12,9 +13,18 @@ public class FragmentationConfig {
     private final Map<String, String> fragmentToDepartment;
     private final List<String> allFragments;
 
+    // Group locations observed from actual data; these win over the ID-based rule
+    // because a department change can move a group away from its "natural" fragment
+    private final Map<String, String> confirmedGroupLocations;
+
+    // Groups being copied to another fragment; the copy stays hidden until the switchover commits
+    private final Map<String, Migration> migrations;
+
     private FragmentationConfig() {
         departmentToFragment = new HashMap<>();
         fragmentToDepartment = new HashMap<>();
+        confirmedGroupLocations = new ConcurrentHashMap<>();
+        migrations = new ConcurrentHashMap<>();
 
         // P1 department maps to p1 fragment
         departmentToFragment.put("P1", "p1");
@@ -53,6 +63,16 @@ public class FragmentationConfig {
             return null;
         }
 
+        Migration migration = migrations.get(groupId);
+        if (migration != null) {
+            return migration.source();
+        }
+
+        String confirmed = confirmedGroupLocations.get(groupId);
+        if (confirmed != null) {
+            return confirmed;
+        }
+
         // Extract numeric part
         String numPart = groupId.replaceAll("[^0-9]", "");
         if (numPart.isEmpty()) {
@@ -64,6 +84,64 @@ public class FragmentationConfig {
         return num <= 2 ? "p1" : "p2";
     }
 
+    /**
+     * Record the fragment a group was actually found in (or migrated to). The
+     * unfinished copy of a group being migrated is never registered.
+     */
+    public void registerGroupLocation(String groupId, String fragment) {
+        if (groupId != null && isValidFragment(fragment) && !isMigrationCopy(groupId, fragment)) {
+            confirmedGroupLocations.put(groupId, fragment);
+        }
+    }
+
+    public void forgetGroupLocation(String groupId) {
+        if (groupId != null) {
+            confirmedGroupLocations.remove(groupId);
+        }
+    }
+
+    /**
+     * Forget the group's location only if it is still the given fragment, so a
+     * location learned meanwhile is kept.
+     */
+    public void forgetGroupLocation(String groupId, String fragment) {
+        if (groupId != null && fragment != null) {
+            confirmedGroupLocations.remove(groupId, fragment);
+        }
+    }
+
+    /**
+     * True when the group's fragment was observed rather than predicted from its ID.
+     */
+    public boolean isGroupLocationConfirmed(String groupId) {
+        return groupId != null && confirmedGroupLocations.containsKey(groupId);
+    }
+
+    /**
+     * Mark a group as being copied from source to target until endMigration: it
+     * is routed to the source, and its rows on the target are not shown.
+     * Returns false if the group is already being migrated.
+     */
+    public boolean beginMigration(String groupId, String source, String target) {
+        return migrations.putIfAbsent(groupId, new Migration(source, target)) == null;
+    }
+
+    public void endMigration(String groupId) {
+        migrations.remove(groupId);
+    }
+
+    public boolean isGroupMigrating(String groupId) {
+        return groupId != null && migrations.containsKey(groupId);
+    }
+
+    /**
+     * True when the group's rows on this fragment are a migration copy that has not been switched over yet.
+     */
+    public boolean isMigrationCopy(String groupId, String fragment) {
+        Migration migration = groupId != null ? migrations.get(groupId) : null;
+        return migration != null && migration.target().equals(fragment);
+    }
+
     public String getTableName(String baseTable, String fragment) {
         return baseTable + "_" + fragment;
     }
@@ -75,4 +153,7 @@ public class FragmentationConfig {
     public boolean isValidDepartment(String department) {
         return departmentToFragment.containsKey(department);
     }
+
+    private record Migration(String source, String target) {
+    }
 }
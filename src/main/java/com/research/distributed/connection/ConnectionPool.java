@@ -76,4 +76,12 @@ public class ConnectionPool {
     public int getTotalConnections() {
         return dataSource.getHikariPoolMXBean().getTotalConnections();
     }
+
+    public int getThreadsAwaitingConnection() {
+        return dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection();
+    }
+
+    public int getMaximumPoolSize() {
+        return dataSource.getMaximumPoolSize();
+    }
 }
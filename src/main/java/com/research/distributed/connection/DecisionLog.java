@@ -0,0 +1,165 @@
+package com.research.distributed.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only local log of distributed transaction decisions, one record per line:
+ * START (kind and payload), COMMIT, END. Every append is forced to disk before it
+ * returns, so a logged COMMIT survives a crash.
+ */
+class DecisionLog {
+    private static final Logger logger = LoggerFactory.getLogger(DecisionLog.class);
+
+    static final String START = "START";
+    static final String COMMIT = "COMMIT";
+    static final String END = "END";
+
+    private final Path path;
+    private FileChannel channel;
+
+    /**
+     * A transaction found in the log that has no END record.
+     */
+    static class Pending {
+        final String id;
+        final String kind;
+        final List<String> payload;
+        boolean committed;
+
+        Pending(String id, String kind, List<String> payload) {
+            this.id = id;
+            this.kind = kind;
+            this.payload = payload;
+        }
+    }
+
+    DecisionLog(Path path) {
+        this.path = path;
+    }
+
+    synchronized void start(String id, String kind, List<String> payload) throws IOException {
+        List<String> fields = new ArrayList<>(List.of(START, id, kind));
+        fields.addAll(payload);
+        append(fields);
+    }
+
+    synchronized void commit(String id) throws IOException {
+        append(List.of(COMMIT, id));
+    }
+
+    synchronized void end(String id) throws IOException {
+        append(List.of(END, id));
+    }
+
+    private void append(List<String> fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append('|');
+            }
+            line.append(URLEncoder.encode(field, StandardCharsets.UTF_8));
+        }
+        line.append('\n');
+        FileChannel out = channel();
+        out.write(ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8)));
+        out.force(false);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    /**
+     * Transactions that were started but never ended, in log order.
+     */
+    synchronized List<Pending> readPending() throws IOException {
+        Map<String, Pending> pending = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = Arrays.stream(line.split("\\|", -1))
+                    .map(field -> URLDecoder.decode(field, StandardCharsets.UTF_8))
+                    .toList();
+            if (fields.size() < 2) {
+                // A torn last line from a crash mid-append carries no decision
+                logger.warn("Ignoring malformed decision log record: {}", line);
+                continue;
+            }
+            String id = fields.get(1);
+            switch (fields.get(0)) {
+                case START -> {
+                    if (fields.size() >= 3) {
+                        pending.put(id, new Pending(id, fields.get(2), fields.subList(3, fields.size())));
+                    }
+                }
+                case COMMIT -> {
+                    Pending tx = pending.get(id);
+                    if (tx != null) {
+                        tx.committed = true;
+                    }
+                }
+                case END -> pending.remove(id);
+                default -> logger.warn("Ignoring unknown decision log record: {}", line);
+            }
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Rewrite the log with only the given transactions. Done through a temporary
+     * file and an atomic rename, so a crash leaves either the old or the new log.
+     */
+    synchronized void compact(List<Pending> keep) throws IOException {
+        close();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        DecisionLog rewritten = new DecisionLog(temp);
+        for (Pending tx : keep) {
+            rewritten.start(tx.id, tx.kind, tx.payload);
+            if (tx.committed) {
+                rewritten.commit(tx.id);
+            }
+        }
+        rewritten.close();
+        if (Files.exists(temp)) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.exception.FragmentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One cross-fragment write coordinated with two-phase commit.
+ *
+ * Each participant is a fragment with its own JDBC transaction. {@link #prepare}
+ * runs the participants' work in parallel and leaves every transaction open with
+ * its locks held. {@link #commit} forces the COMMIT decision to the local decision
+ * log and only then commits the participants, in the given order. After a crash,
+ * TransactionCoordinator.recover() finishes logged commits and presumes everything
+ * else aborted.
+ */
+public class DistributedTransaction {
+    private static final Logger logger = LoggerFactory.getLogger(DistributedTransaction.class);
+
+    private final String id;
+    private final DecisionLog log;
+    private final TransactionCoordinator coordinator;
+    private final FragmentConnectionManager connectionManager;
+    private final FragmentExecutor fragmentExecutor;
+    private final Map<String, Connection> connections = new LinkedHashMap<>();
+    private boolean prepared;
+    private boolean decided;
+    private boolean finished;
+
+    DistributedTransaction(String id, DecisionLog log, TransactionCoordinator coordinator) {
+        this.id = id;
+        this.log = log;
+        this.coordinator = coordinator;
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * The participant connection of a fragment, opened on first use with auto-commit off.
+     */
+    public synchronized Connection connection(String fragment) throws SQLException, FragmentException {
+        Connection conn = connections.get(fragment);
+        if (conn == null) {
+            conn = connectionManager.getConnection(fragment);
+            conn.setAutoCommit(false);
+            connections.put(fragment, conn);
+        }
+        return conn;
+    }
+
+    /**
+     * Run one call per participant, in parallel, inside the participants' transactions.
+     */
+    public <R> Map<String, R> parallel(Map<String, ParticipantCall<R>> calls) throws DatabaseException {
+        for (String fragment : calls.keySet()) {
+            try {
+                connection(fragment);
+            } catch (SQLException | FragmentException e) {
+                throw new DatabaseException("Cannot enlist fragment " + fragment + " in " + id, fragment, e);
+            }
+        }
+
+        List<FragmentResult<R>> results = fragmentExecutor.invokeAll(new ArrayList<>(calls.keySet()),
+                fragment -> calls.get(fragment).call(connections.get(fragment)));
+
+        Map<String, R> values = new LinkedHashMap<>();
+        for (FragmentResult<R> result : results) {
+            if (!result.isSuccess()) {
+                throw new DatabaseException("Participant " + result.getFragment() + " of " + id + " failed: "
+                        + result.getError().getMessage(), result.getFragment(), result.getError());
+            }
+            values.put(result.getFragment(), result.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Phase one: run every participant's remaining work in parallel. When this
+     * returns, all participants have done their writes and hold their locks.
+     */
+    public void prepare(Map<String, ParticipantCall<Void>> work) throws DatabaseException {
+        parallel(work);
+        prepared = true;
+    }
+
+    /**
+     * Phase two: log the decision durably, then commit the participants in order.
+     * Put the participant whose commit destroys data last (e.g. the source of a move).
+     *
+     * @throws DatabaseException if a participant fails after the decision; the
+     *                           transaction is then in doubt and left to recovery,
+     *                           and the participants that had not committed yet
+     *                           are rolled back rather than committed
+     */
+    public void commit(List<String> order) throws DatabaseException {
+        if (!prepared) {
+            throw new IllegalStateException("Transaction " + id + " was not prepared");
+        }
+        try {
+            log.commit(id);
+            decided = true;
+        } catch (IOException e) {
+            rollback();
+            throw new DatabaseException("Cannot log commit decision of " + id, e);
+        }
+
+        List<String> committed = new ArrayList<>();
+        for (String fragment : order) {
+            try {
+                connections.get(fragment).commit();
+                committed.add(fragment);
+            } catch (SQLException e) {
+                abandon(fragment, committed);
+                coordinator.markInDoubt();
+                throw new DatabaseException("Transaction " + id + " is in doubt after fragment " + fragment
+                        + " failed to commit; it will be completed by recovery", fragment, e);
+            }
+        }
+        close();
+        end();
+        coordinator.markCommitted();
+    }
+
+    public boolean isDecided() {
+        return decided;
+    }
+
+    /**
+     * Roll back every participant. Under presumed abort nothing is logged; call
+     * {@link #end()} once any compensation for work outside the participants is done.
+     */
+    public void rollback() {
+        if (decided) {
+            throw new IllegalStateException("Transaction " + id + " already decided to commit");
+        }
+        for (String fragment : new ArrayList<>(connections.keySet())) {
+            rollback(fragment);
+        }
+        close();
+        coordinator.markAborted();
+    }
+
+    /**
+     * Roll back one participant; if that fails its transaction may still be open,
+     * so the connection is aborted instead of being returned to the pool.
+     */
+    private void rollback(String fragment) {
+        try {
+            connections.get(fragment).rollback();
+        } catch (SQLException e) {
+            logger.error("Rollback of {} on fragment {} failed: {}", id, fragment, e.getMessage());
+            abort(connections.remove(fragment));
+        }
+    }
+
+    /**
+     * After a participant failed to commit past the decision: its transaction
+     * state is unknown, so its connection is aborted, and every participant that
+     * has not committed yet is rolled back. None of them may be committed here;
+     * recovery completes the logged decision.
+     */
+    private void abandon(String failed, List<String> committed) {
+        abort(connections.remove(failed));
+        for (String fragment : new ArrayList<>(connections.keySet())) {
+            if (!committed.contains(fragment)) {
+                rollback(fragment);
+            }
+        }
+        close();
+    }
+
+    private void abort(Connection conn) {
+        try {
+            conn.abort(Runnable::run);
+        } catch (SQLException e) {
+            logger.warn("Cannot abort connection of {}: {}", id, e.getMessage());
+        }
+        try {
+            // Hands the dead connection back so the pool discards it and admission releases its slot
+            conn.close();
+        } catch (SQLException e) {
+            /* ignore */
+        }
+    }
+
+    /**
+     * Record that nothing is left to do for this transaction.
+     */
+    public void end() {
+        if (finished) {
+            return;
+        }
+        try {
+            log.end(id);
+            finished = true;
+        } catch (IOException e) {
+            // Recovery will redo or abort it once more, which is harmless
+            logger.warn("Cannot log end of {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Return the participants' connections to the pool; each must have committed
+     * or rolled back, since re-enabling auto-commit commits an open transaction.
+     */
+    private void close() {
+        for (Connection conn : connections.values()) {
+            try {
+                conn.setAutoCommit(true);
+                conn.close();
+            } catch (SQLException e) {
+                /* ignore */
+            }
+        }
+        connections.clear();
+    }
+}
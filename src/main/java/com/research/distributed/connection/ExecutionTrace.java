@@ -0,0 +1,168 @@
+package com.research.distributed.connection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Execution trace of one distributed read: every fragment statement it sent and
+ * notes on how it was answered (routing, cache or view hits).
+ *
+ * A trace is bound to the thread that started it. FragmentExecutor binds it to
+ * its workers for the duration of a fan-out, so parallel statements are recorded too.
+ * When no trace is active, recording is a no-op.
+ */
+public class ExecutionTrace {
+    private static final ThreadLocal<ExecutionTrace> CURRENT = new ThreadLocal<>();
+
+    private final String operation;
+    private final boolean includePlans;
+    private final ExecutionTrace previous;
+    private final long startNanos;
+    private long endNanos;
+    private final List<FragmentTrace> statements = new CopyOnWriteArrayList<>();
+    private final List<String> notes = new CopyOnWriteArrayList<>();
+
+    private ExecutionTrace(String operation, boolean includePlans, ExecutionTrace previous) {
+        this.operation = operation;
+        this.includePlans = includePlans;
+        this.previous = previous;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Start tracing on this thread. Always pair with {@link #finish()}.
+     */
+    public static ExecutionTrace start(String operation, boolean includePlans) {
+        ExecutionTrace trace = new ExecutionTrace(operation, includePlans, CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public ExecutionTrace finish() {
+        endNanos = System.nanoTime();
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+        return this;
+    }
+
+    public static ExecutionTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a trace captured on another thread. Returns the binding to restore afterwards.
+     */
+    static ExecutionTrace bind(ExecutionTrace trace) {
+        ExecutionTrace replaced = CURRENT.get();
+        if (trace != null) {
+            CURRENT.set(trace);
+        } else {
+            CURRENT.remove();
+        }
+        return replaced;
+    }
+
+    /**
+     * Record a statement about to be sent to a fragment. The returned trace is
+     * detached (and simply discarded) when nothing is being traced.
+     */
+    public static FragmentTrace statement(String fragment, String sql) {
+        ExecutionTrace trace = CURRENT.get();
+        FragmentTrace statement = new FragmentTrace(fragment, sql, trace != null && trace.includePlans);
+        if (trace != null) {
+            trace.statements.add(statement);
+        }
+        return statement;
+    }
+
+    public static void note(String format, Object... args) {
+        ExecutionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.notes.add(String.format(format, args));
+        }
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public List<FragmentTrace> getStatements() {
+        List<FragmentTrace> ordered = new ArrayList<>(statements);
+        ordered.sort(Comparator.comparingLong(FragmentTrace::getStartNanos));
+        return ordered;
+    }
+
+    public List<String> getNotes() {
+        return new ArrayList<>(notes);
+    }
+
+    /**
+     * Per-fragment outcome of the statements in this trace. A fragment with a failed
+     * statement is FAILED or TIMED_OUT, one whose statement never finished is
+     * TIMED_OUT, and one without statements is SKIPPED.
+     */
+    public List<FragmentOutcome> getFragmentOutcomes(List<String> fragments) {
+        List<FragmentOutcome> outcomes = new ArrayList<>();
+        for (String fragment : fragments) {
+            FragmentStatus status = FragmentStatus.SKIPPED;
+            long first = Long.MAX_VALUE;
+            double latency = 0;
+            String error = null;
+            for (FragmentTrace statement : getStatements()) {
+                if (!statement.getFragment().equals(fragment)) {
+                    continue;
+                }
+                first = Math.min(first, statement.getStartNanos());
+                latency = Math.max(latency, (statement.getStartNanos() - first) / 1_000_000.0
+                        + statement.getElapsedMillis());
+                if (statement.isFailed()) {
+                    status = statement.isTimedOut() ? FragmentStatus.TIMED_OUT : FragmentStatus.FAILED;
+                    error = statement.getError();
+                } else if (!statement.isFinished()) {
+                    status = FragmentStatus.TIMED_OUT;
+                } else if (status == FragmentStatus.SKIPPED) {
+                    status = FragmentStatus.OK;
+                }
+            }
+            outcomes.add(new FragmentOutcome(fragment, status, latency, error));
+        }
+        return outcomes;
+    }
+
+    public double getTotalMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000.0;
+    }
+
+    /**
+     * Plain-text rendering for logs and the UI.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s - %.1f ms, %d statement(s)%n", operation, getTotalMillis(), statements.size()));
+        for (String note : notes) {
+            sb.append("  * ").append(note).append('\n');
+        }
+        for (FragmentTrace statement : getStatements()) {
+            sb.append(String.format("  [%s] rows=%d  checkout=%.1f ms  execute=%.1f ms  fetch=%.1f ms%s%n",
+                    statement.getFragment(), statement.getRows(), statement.getCheckoutMillis(),
+                    statement.getExecuteMillis(), statement.getFetchMillis(),
+                    statement.isFailed() ? "  FAILED: " + statement.getError() : ""));
+            sb.append("      ").append(statement.getSql().strip().replaceAll("\\s+", " ")).append('\n');
+            if (!statement.getParams().isEmpty()) {
+                sb.append("      params: ").append(statement.getParams()).append('\n');
+            }
+            if (statement.getPlan() != null) {
+                for (String line : statement.getPlan().split("\n")) {
+                    sb.append("      | ").append(line).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
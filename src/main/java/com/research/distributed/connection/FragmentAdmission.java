@@ -0,0 +1,168 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.exception.FragmentException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection permits of one fragment, handed out by priority class.
+ *
+ * There are as many permits as pool connections. Batch and migration work
+ * together never hold the last admission.reservedInteractive of them, migrations
+ * at most admission.maxMigration, and neither is admitted while higher-priority
+ * work is queued. Each class queues up to its admission.maxQueue; past that a
+ * request is shed at once rather than joining a queue it would time out in.
+ */
+class FragmentAdmission {
+    private static final WorkPriority[] PRIORITIES = WorkPriority.values();
+
+    private final String fragment;
+    private final int capacity;
+    private final int reservedInteractive;
+    private final int maxMigration;
+    private final long waitMillis;
+
+    // Indexed by WorkPriority ordinal, guarded by this
+    private final int[] maxQueue = new int[PRIORITIES.length];
+    private final int[] running = new int[PRIORITIES.length];
+    private final int[] queued = new int[PRIORITIES.length];
+    private final int[] peakQueued = new int[PRIORITIES.length];
+    private final long[] admitted = new long[PRIORITIES.length];
+    private final long[] shed = new long[PRIORITIES.length];
+    private final long[] timedOut = new long[PRIORITIES.length];
+
+    FragmentAdmission(String fragment, int capacity, int reservedInteractive, int maxMigration,
+                      Map<WorkPriority, Integer> maxQueue, long waitMillis) {
+        this.fragment = fragment;
+        this.capacity = capacity;
+        // Batch and migration always get at least one permit
+        this.reservedInteractive = Math.min(reservedInteractive, capacity - 1);
+        this.maxMigration = maxMigration;
+        this.waitMillis = waitMillis;
+        for (WorkPriority priority : PRIORITIES) {
+            this.maxQueue[priority.ordinal()] = maxQueue.get(priority);
+        }
+    }
+
+    /**
+     * Take a permit, waiting up to admission.waitMillis or the caller's deadline.
+     *
+     * @throws FragmentException if the class's queue is full or no permit came in time
+     */
+    synchronized void acquire(WorkPriority priority) throws FragmentException {
+        int index = priority.ordinal();
+        if (canAdmit(priority)) {
+            admit(index);
+            return;
+        }
+        if (queued[index] >= maxQueue[index]) {
+            shed[index]++;
+            throw new FragmentException(String.format("Fragment %s overloaded: %d %s requests already queued",
+                    fragment, queued[index], priority), fragment, "admission");
+        }
+
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(Math.min(waitMillis, QueryCancellation.remainingMillis()));
+        queued[index]++;
+        peakQueued[index] = Math.max(peakQueued[index], queued[index]);
+        try {
+            while (!canAdmit(priority)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    timedOut[index]++;
+                    throw new FragmentException(String.format("Fragment %s busy: no %s connection within %d ms",
+                            fragment, priority, waitMillis), fragment, "admission");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FragmentException("Interrupted waiting for a connection", fragment, "admission");
+        } finally {
+            queued[index]--;
+            // Lower classes may have been held back only by this waiter
+            notifyAll();
+        }
+        admit(index);
+    }
+
+    synchronized void release(WorkPriority priority) {
+        running[priority.ordinal()]--;
+        notifyAll();
+    }
+
+    /**
+     * The connection, giving back its permit when it is closed.
+     */
+    Connection track(Connection connection, WorkPriority priority) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                            release(priority);
+                        }
+                    }
+                });
+    }
+
+    private boolean canAdmit(WorkPriority priority) {
+        int total = 0;
+        for (int count : running) {
+            total += count;
+        }
+        if (total >= capacity) {
+            return false;
+        }
+        if (priority == WorkPriority.INTERACTIVE) {
+            return true;
+        }
+        int background = running[WorkPriority.BATCH.ordinal()] + running[WorkPriority.MIGRATION.ordinal()];
+        if (queued[WorkPriority.INTERACTIVE.ordinal()] > 0 || background >= capacity - reservedInteractive) {
+            return false;
+        }
+        if (priority == WorkPriority.MIGRATION) {
+            return queued[WorkPriority.BATCH.ordinal()] == 0
+                    && running[WorkPriority.MIGRATION.ordinal()] < maxMigration;
+        }
+        return true;
+    }
+
+    private void admit(int index) {
+        running[index]++;
+        admitted[index]++;
+    }
+
+    synchronized int getQueueDepth() {
+        int depth = 0;
+        for (int count : queued) {
+            depth += count;
+        }
+        return depth;
+    }
+
+    /**
+     * Per class: running/queued (peak queued), admitted, shed, timed out.
+     */
+    synchronized String describe() {
+        StringBuilder text = new StringBuilder();
+        for (WorkPriority priority : PRIORITIES) {
+            int i = priority.ordinal();
+            if (text.length() > 0) {
+                text.append("; ");
+            }
+            text.append(String.format("%s %d/%d (peak %d), admitted %d, shed %d, timed out %d",
+                    priority, running[i], queued[i], peakQueued[i], admitted[i], shed[i], timedOut[i]));
+        }
+        return text.toString();
+    }
+}
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,11 +18,14 @@ public class FragmentConnectionManager {
     private static FragmentConnectionManager instance;
 
     private final Map<String, ConnectionPool> fragmentPools;
+    // Empty when admission control is off
+    private final Map<String, FragmentAdmission> admissions;
     private final FragmentationConfig fragmentConfig;
     private boolean initialized = false;
 
     private FragmentConnectionManager() {
         fragmentPools = new HashMap<>();
+        admissions = new HashMap<>();
         fragmentConfig = FragmentationConfig.getInstance();
     }
 
@@ -58,6 +62,20 @@ public class FragmentConnectionManager {
         );
         fragmentPools.put("p2", p2Pool);
 
+        if (dbConfig.isAdmissionEnabled()) {
+            Map<WorkPriority, Integer> maxQueue = new EnumMap<>(WorkPriority.class);
+            maxQueue.put(WorkPriority.INTERACTIVE, dbConfig.getAdmissionMaxQueueInteractive());
+            maxQueue.put(WorkPriority.BATCH, dbConfig.getAdmissionMaxQueueBatch());
+            maxQueue.put(WorkPriority.MIGRATION, dbConfig.getAdmissionMaxQueueMigration());
+            for (Map.Entry<String, ConnectionPool> entry : fragmentPools.entrySet()) {
+                admissions.put(entry.getKey(), new FragmentAdmission(entry.getKey(),
+                        entry.getValue().getMaximumPoolSize(), dbConfig.getAdmissionReservedInteractive(),
+                        dbConfig.getAdmissionMaxMigration(), maxQueue, dbConfig.getAdmissionWaitMillis()));
+            }
+            logger.info("Admission control: {} of {} connections per fragment reserved for interactive work",
+                    dbConfig.getAdmissionReservedInteractive(), dbConfig.getPoolMaxSize());
+        }
+
         initialized = true;
         logger.info("FragmentConnectionManager initialized with {} fragments", fragmentPools.size());
     }
@@ -76,7 +94,31 @@ public class FragmentConnectionManager {
             throw new FragmentException("No connection pool for fragment: " + fragment, fragment);
         }
 
-        return pool.getConnection();
+        // A request past its deadline (or cancelled) must not queue for a connection, nor keep one
+        if (QueryCancellation.isExpired()) {
+            throw new FragmentException("Deadline exceeded before connection checkout", fragment, "checkout");
+        }
+        FragmentAdmission admission = admissions.get(fragment);
+        if (admission == null) {
+            return checkout(pool, fragment);
+        }
+        WorkPriority priority = WorkPriority.current();
+        admission.acquire(priority);
+        try {
+            return admission.track(checkout(pool, fragment), priority);
+        } catch (SQLException | FragmentException | RuntimeException e) {
+            admission.release(priority);
+            throw e;
+        }
+    }
+
+    private Connection checkout(ConnectionPool pool, String fragment) throws SQLException, FragmentException {
+        Connection conn = pool.getConnection();
+        if (QueryCancellation.isExpired()) {
+            conn.close();
+            throw new FragmentException("Deadline exceeded during connection checkout", fragment, "checkout");
+        }
+        return conn;
     }
 
     public Connection getConnectionForDepartment(String department) throws SQLException, FragmentException {
@@ -111,6 +153,7 @@ public class FragmentConnectionManager {
             }
         }
         fragmentPools.clear();
+        admissions.clear();
         initialized = false;
     }
 
@@ -122,10 +165,64 @@ public class FragmentConnectionManager {
         return fragmentConfig.getFragmentForGroup(groupId);
     }
 
+    public String getFragmentForDepartment(String department) {
+        return fragmentConfig.getFragmentForDepartment(department);
+    }
+
+    public void registerGroupLocation(String groupId, String fragment) {
+        fragmentConfig.registerGroupLocation(groupId, fragment);
+    }
+
+    public void forgetGroupLocation(String groupId) {
+        fragmentConfig.forgetGroupLocation(groupId);
+    }
+
+    public void forgetGroupLocation(String groupId, String fragment) {
+        fragmentConfig.forgetGroupLocation(groupId, fragment);
+    }
+
+    public boolean beginMigration(String groupId, String source, String target) {
+        return fragmentConfig.beginMigration(groupId, source, target);
+    }
+
+    public void endMigration(String groupId) {
+        fragmentConfig.endMigration(groupId);
+    }
+
+    public boolean isGroupMigrating(String groupId) {
+        return fragmentConfig.isGroupMigrating(groupId);
+    }
+
+    public boolean isMigrationCopy(String groupId, String fragment) {
+        return fragmentConfig.isMigrationCopy(groupId, fragment);
+    }
+
     public String getTableName(String baseTable, String fragment) {
         return fragmentConfig.getTableName(baseTable, fragment);
     }
 
+    /**
+     * Instantaneous pool pressure of a fragment: connections in use plus threads
+     * waiting for one (in the pool or in admission control), relative to the pool
+     * size. Above 1.0 the pool is saturated.
+     */
+    public double getPoolUtilization(String fragment) {
+        ConnectionPool pool = fragmentPools.get(fragment);
+        if (pool == null || !pool.isActive()) {
+            return 0.0;
+        }
+        return (double) (pool.getActiveConnections() + pool.getThreadsAwaitingConnection()
+                + getAdmissionQueueDepth(fragment)) / pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Requests of every priority class waiting for a connection permit on the fragment.
+     */
+    public int getAdmissionQueueDepth(String fragment) {
+        FragmentAdmission admission = admissions.get(fragment);
+        return admission != null ? admission.getQueueDepth() : 0;
+    }
+
     public void logPoolStats() {
         for (Map.Entry<String, ConnectionPool> entry : fragmentPools.entrySet()) {
             ConnectionPool pool = entry.getValue();
@@ -134,6 +231,10 @@ public class FragmentConnectionManager {
                     pool.getActiveConnections(),
                     pool.getIdleConnections(),
                     pool.getTotalConnections());
+            FragmentAdmission admission = admissions.get(entry.getKey());
+            if (admission != null) {
+                logger.info("Admission {} - {}", entry.getKey(), admission.describe());
+            }
         }
     }
 }
@@ -0,0 +1,127 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.config.DatabaseConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same task against several fragments in parallel, so a fan-out costs
+ * the latency of the slowest fragment instead of the sum of all of them.
+ */
+public class FragmentExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(FragmentExecutor.class);
+    private static FragmentExecutor instance;
+
+    private final ExecutorService executor;
+
+    private FragmentExecutor() {
+        int threads = DatabaseConfig.getInstance().getFanoutThreads();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fragment-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("FragmentExecutor started with {} threads", threads);
+    }
+
+    public static synchronized FragmentExecutor getInstance() {
+        if (instance == null) {
+            instance = new FragmentExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Run the task on every fragment in parallel and wait for all of them, or until
+     * the caller's deadline (see QueryCancellation), after which the fragments still
+     * running are cancelled and reported as failed.
+     * Failures are returned per fragment; deciding whether one is fatal is up to the caller.
+     */
+    public <R> List<FragmentResult<R>> invokeAll(List<String> fragments, FragmentTask<R> task) {
+        // Statements run on the workers belong to the caller's trace, cancellation scope, priority, stream
+        // and completeness
+        ExecutionTrace trace = ExecutionTrace.current();
+        QueryCancellation cancellation = QueryCancellation.current();
+        WorkPriority priority = WorkPriority.current();
+        ResultStream.Listener stream = ResultStream.current();
+        ReadCompleteness completeness = ReadCompleteness.current();
+        List<Future<FragmentResult<R>>> futures = new ArrayList<>();
+        for (String fragment : fragments) {
+            futures.add(executor.submit(() -> runTask(fragment, task, trace, cancellation, priority, stream,
+                    completeness)));
+        }
+
+        List<FragmentResult<R>> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            String fragment = fragments.get(i);
+            try {
+                long remaining = QueryCancellation.remainingMillis();
+                results.add(remaining == Long.MAX_VALUE
+                        ? futures.get(i).get()
+                        : futures.get(i).get(Math.max(0, remaining), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                results.add(FragmentResult.failure(fragment,
+                        new SQLTimeoutException("Deadline exceeded waiting for fragment " + fragment, "HYT00"), 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                results.add(FragmentResult.failure(fragment, e, 0));
+            } catch (ExecutionException e) {
+                // An Error (e.g. StackOverflowError) fails this fragment, not the whole fan-out
+                Throwable cause = e.getCause();
+                results.add(FragmentResult.failure(fragment,
+                        cause instanceof Exception exception ? exception : e, 0));
+            }
+        }
+        return results;
+    }
+
+    private <R> FragmentResult<R> runTask(String fragment, FragmentTask<R> task, ExecutionTrace trace,
+                                          QueryCancellation cancellation, WorkPriority priority,
+                                          ResultStream.Listener stream, ReadCompleteness completeness) {
+        ExecutionTrace previous = ExecutionTrace.bind(trace);
+        QueryCancellation previousCancellation = QueryCancellation.bind(cancellation);
+        WorkPriority previousPriority = WorkPriority.bind(priority);
+        ResultStream.Listener previousStream = ResultStream.bind(stream);
+        ReadCompleteness previousCompleteness = ReadCompleteness.bind(completeness);
+        long start = System.nanoTime();
+        try {
+            R value = task.execute(fragment);
+            return FragmentResult.success(fragment, value, System.nanoTime() - start);
+        } catch (Exception e) {
+            return FragmentResult.failure(fragment, e, System.nanoTime() - start);
+        } finally {
+            ExecutionTrace.bind(previous);
+            QueryCancellation.bind(previousCancellation);
+            WorkPriority.bind(previousPriority);
+            ResultStream.bind(previousStream);
+            ReadCompleteness.bind(previousCompleteness);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("FragmentExecutor shut down");
+    }
+}
@@ -0,0 +1,40 @@
+package com.research.distributed.connection;
+
+/**
+ * One fragment's part in a read: its status, how long its statements took and,
+ * if it did not answer, why.
+ */
+public class FragmentOutcome {
+    private final String fragment;
+    private final FragmentStatus status;
+    private final double latencyMillis;
+    private final String error;
+
+    public FragmentOutcome(String fragment, FragmentStatus status, double latencyMillis, String error) {
+        this.fragment = fragment;
+        this.status = status;
+        this.latencyMillis = latencyMillis;
+        this.error = error;
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public FragmentStatus getStatus() {
+        return status;
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %.1f ms%s", fragment, status, latencyMillis, error != null ? " (" + error + ")" : "");
+    }
+}
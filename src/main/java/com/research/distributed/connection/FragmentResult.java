@@ -0,0 +1,55 @@
+package com.research.distributed.connection;
+
+/**
+ * Outcome of a FragmentTask on one fragment: either a value or the error it failed with.
+ */
+public class FragmentResult<R> {
+    private final String fragment;
+    private final R value;
+    private final Exception error;
+    private final long elapsedNanos;
+
+    private FragmentResult(String fragment, R value, Exception error, long elapsedNanos) {
+        this.fragment = fragment;
+        this.value = value;
+        this.error = error;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public static <R> FragmentResult<R> success(String fragment, R value, long elapsedNanos) {
+        return new FragmentResult<>(fragment, value, null, elapsedNanos);
+    }
+
+    public static <R> FragmentResult<R> failure(String fragment, Exception error, long elapsedNanos) {
+        return new FragmentResult<>(fragment, null, error, elapsedNanos);
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public R getValue() {
+        return value;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentResult{" +
+                "fragment='" + fragment + '\'' +
+                ", success=" + isSuccess() +
+                ", elapsedMs=" + getElapsedMillis() +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package com.research.distributed.connection;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of fragments a query has to visit after predicate-based pruning.
+ * Fallback fragments are only probed when the targets return no rows, which
+ * covers groups whose location was predicted from the ID rule, and confirmed
+ * locations that have gone stale.
+ */
+public class FragmentRoute {
+    private final List<String> targets;
+    private final List<String> fallback;
+    private final int totalFragments;
+    private final String reason;
+    private final String confirmedGroup;
+
+    public FragmentRoute(List<String> targets, List<String> fallback, int totalFragments, String reason) {
+        this(targets, fallback, totalFragments, reason, null);
+    }
+
+    public FragmentRoute(List<String> targets, List<String> fallback, int totalFragments, String reason,
+                         String confirmedGroup) {
+        this.targets = Collections.unmodifiableList(targets);
+        this.fallback = Collections.unmodifiableList(fallback);
+        this.totalFragments = totalFragments;
+        this.reason = reason;
+        this.confirmedGroup = confirmedGroup;
+    }
+
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    public List<String> getFallback() {
+        return fallback;
+    }
+
+    public boolean hasFallback() {
+        return !fallback.isEmpty();
+    }
+
+    public boolean isPruned() {
+        return targets.size() < totalFragments;
+    }
+
+    public int getPrunedCount() {
+        return totalFragments - targets.size();
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * The group whose confirmed location chose the targets, or null.
+     */
+    public String getConfirmedGroup() {
+        return confirmedGroup;
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentRoute{" +
+                "targets=" + targets +
+                ", fallback=" + fallback +
+                ", pruned=" + getPrunedCount() +
+                ", reason='" + reason + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,131 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.config.FragmentationConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Location-transparent query router. Looks at the predicate of a query and
+ * consults FragmentationConfig to send it only to the fragments that can match.
+ *
+ * nhomnc is fragmented on tenphong, and nhanvien/dean/thamgia follow their group
+ * (derived fragmentation), so a tenphong or manhomnc predicate pins the fragment.
+ */
+public class FragmentRouter {
+    private static final Logger logger = LoggerFactory.getLogger(FragmentRouter.class);
+    private static FragmentRouter instance;
+
+    private final FragmentationConfig fragmentConfig;
+    private final AtomicLong routedQueries = new AtomicLong();
+    private final AtomicLong prunedFragments = new AtomicLong();
+    private final AtomicLong fallbackProbes = new AtomicLong();
+
+    private FragmentRouter() {
+        this.fragmentConfig = FragmentationConfig.getInstance();
+    }
+
+    public static synchronized FragmentRouter getInstance() {
+        if (instance == null) {
+            instance = new FragmentRouter();
+        }
+        return instance;
+    }
+
+    /**
+     * Route a query with no usable predicate: every fragment is visited.
+     */
+    public FragmentRoute routeAll() {
+        List<String> all = fragmentConfig.getAllFragments();
+        return record(new FragmentRoute(all, Collections.emptyList(), all.size(), "no fragment predicate"));
+    }
+
+    /**
+     * Route a query with a {@code tenphong = ?} predicate. Exact, since the
+     * department is the fragmentation attribute of nhomnc.
+     */
+    public FragmentRoute routeByDepartment(String department) {
+        String fragment = fragmentConfig.getFragmentForDepartment(department);
+        if (fragment == null) {
+            return routeAll();
+        }
+        return record(new FragmentRoute(List.of(fragment), Collections.emptyList(),
+                fragmentConfig.getAllFragments().size(), "tenphong = " + department));
+    }
+
+    /**
+     * Route a query with a {@code manhomnc = ?} predicate on nhomnc or any table
+     * derived from it to the group's confirmed or predicted fragment. Either way
+     * the other fragments are kept as fallback, since a confirmed location can
+     * go stale when the group moves.
+     */
+    public FragmentRoute routeByGroup(String groupId) {
+        String fragment = fragmentConfig.getFragmentForGroup(groupId);
+        if (fragment == null) {
+            return routeAll();
+        }
+
+        List<String> fallback = new ArrayList<>(fragmentConfig.getAllFragments());
+        fallback.remove(fragment);
+        // A group being migrated is routed to its source; the unfinished copy is never probed
+        fallback.removeIf(candidate -> fragmentConfig.isMigrationCopy(groupId, candidate));
+        boolean confirmed = fragmentConfig.isGroupLocationConfirmed(groupId);
+        String reason = "manhomnc = " + groupId + (confirmed ? " (confirmed)" : " (predicted)");
+        return record(new FragmentRoute(List.of(fragment), fallback,
+                fragmentConfig.getAllFragments().size(), reason, confirmed ? groupId : null));
+    }
+
+    /**
+     * Called when the targets of a route came back empty and its fallback
+     * fragments had to be probed after all.
+     */
+    public void recordFallback(FragmentRoute route) {
+        fallbackProbes.incrementAndGet();
+        prunedFragments.addAndGet(-route.getFallback().size());
+        logger.debug("Route fell back to fragments {} ({})", route.getFallback(), route.getReason());
+    }
+
+    /**
+     * Called when a fallback probe found rows. If a confirmed location chose the
+     * targets, it is stale and forgotten, unless a read has already learned the
+     * new one; the next nhomnc read of the group registers it again.
+     */
+    public void recordFallbackHit(FragmentRoute route) {
+        String groupId = route.getConfirmedGroup();
+        if (groupId != null) {
+            logger.debug("Confirmed location {} of group {} is stale", route.getTargets(), groupId);
+            fragmentConfig.forgetGroupLocation(groupId, route.getTargets().get(0));
+        }
+    }
+
+    private FragmentRoute record(FragmentRoute route) {
+        routedQueries.incrementAndGet();
+        prunedFragments.addAndGet(route.getPrunedCount());
+        if (route.isPruned()) {
+            logger.debug("Routed to {} - pruned {} fragment(s) ({})",
+                    route.getTargets(), route.getPrunedCount(), route.getReason());
+        }
+        return route;
+    }
+
+    public long getRoutedQueries() {
+        return routedQueries.get();
+    }
+
+    public long getPrunedFragments() {
+        return prunedFragments.get();
+    }
+
+    public long getFallbackProbes() {
+        return fallbackProbes.get();
+    }
+
+    public void logRoutingStats() {
+        logger.info("Router - Queries: {}, Fragments pruned: {}, Fallback probes: {}",
+                routedQueries.get(), prunedFragments.get(), fallbackProbes.get());
+    }
+}
@@ -0,0 +1,15 @@
+package com.research.distributed.connection;
+
+/**
+ * How a fragment took part in a read.
+ */
+public enum FragmentStatus {
+    // Answered
+    OK,
+    // Did not answer before the deadline (or the read was cancelled)
+    TIMED_OUT,
+    // Answered with an error
+    FAILED,
+    // Not contacted: pruned by routing, or the read was served from a cache or view
+    SKIPPED
+}
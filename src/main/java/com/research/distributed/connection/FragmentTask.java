@@ -0,0 +1,13 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.exception.FragmentException;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of work run against a single fragment by the FragmentExecutor.
+ */
+@FunctionalInterface
+public interface FragmentTask<R> {
+    R execute(String fragment) throws SQLException, FragmentException;
+}
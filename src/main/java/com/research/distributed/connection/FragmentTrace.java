@@ -0,0 +1,213 @@
+package com.research.distributed.connection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What one statement did on one fragment: the SQL, its parameters, the rows it
+ * returned and where the time went (connection checkout, execution, fetching).
+ *
+ * Callers mark the phases in order: {@link #checkedOut()}, {@link #executed()},
+ * then {@link #finished(int)} or {@link #failed(Exception)}.
+ */
+public class FragmentTrace {
+    private final String fragment;
+    private final String sql;
+    private final boolean capturePlan;
+    private final ResultStream.Listener stream;
+    private final long startNanos;
+    private long lastMark;
+
+    private List<Object> params = List.of();
+    private long checkoutNanos;
+    private long executeNanos;
+    private long fetchNanos;
+    private int rows;
+    private boolean finished;
+    private String error;
+    private boolean timedOut;
+    private String plan;
+
+    FragmentTrace(String fragment, String sql, boolean capturePlan) {
+        this.fragment = fragment;
+        this.sql = sql;
+        this.capturePlan = capturePlan;
+        this.stream = ResultStream.current();
+        this.startNanos = System.nanoTime();
+        this.lastMark = startNanos;
+        if (stream != null) {
+            stream.started(fragment);
+        }
+    }
+
+    public FragmentTrace withParams(Object... params) {
+        this.params = Arrays.asList(params);
+        return this;
+    }
+
+    public void checkedOut() {
+        checkoutNanos = sinceLastMark();
+    }
+
+    public void executed() {
+        executeNanos = sinceLastMark();
+    }
+
+    public void finished(int rows) {
+        this.rows = rows;
+        fetchNanos = sinceLastMark();
+        end(false);
+    }
+
+    public void failed(Exception e) {
+        error = e.getMessage();
+        // Whatever the driver reports, a statement failing past the deadline was cut off by it
+        timedOut = e instanceof SQLTimeoutException || QueryCancellation.isExpired();
+        lastMark = System.nanoTime();
+        end(true);
+    }
+
+    private void end(boolean failed) {
+        // Reported once, even if a statement that finished fails afterwards
+        boolean first = !finished;
+        finished = true;
+        if (first && stream != null) {
+            stream.finished(fragment, rows, failed);
+        }
+    }
+
+    private long sinceLastMark() {
+        long now = System.nanoTime();
+        long elapsed = now - lastMark;
+        lastMark = now;
+        return elapsed;
+    }
+
+    /**
+     * Fetch the estimated plan of the statement with SHOWPLAN_TEXT if the trace asked
+     * for plans. Runs between checkout and execution and is not counted in either.
+     * If the session option cannot be reset, the connection is aborted so it is
+     * neither used for the statement nor handed out again by the pool.
+     */
+    public void capturePlan(Connection conn) {
+        if (!capturePlan) {
+            return;
+        }
+        try {
+            plan = showplan(conn);
+        } catch (SQLException e) {
+            plan = "(plan unavailable: " + e.getMessage() + ")";
+        }
+        lastMark = System.nanoTime();
+    }
+
+    private String showplan(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET SHOWPLAN_TEXT ON");
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            List<String> lines = new ArrayList<>();
+            boolean hasResults = stmt.execute();
+            while (hasResults || stmt.getUpdateCount() != -1) {
+                if (hasResults) {
+                    try (ResultSet rs = stmt.getResultSet()) {
+                        while (rs.next()) {
+                            lines.add(rs.getString(1));
+                        }
+                    }
+                }
+                hasResults = stmt.getMoreResults();
+            }
+            return String.join("\n", lines);
+        } finally {
+            // The connection goes back to the pool, so the session option must be reset
+            resetShowplan(conn);
+        }
+    }
+
+    private static void resetShowplan(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET SHOWPLAN_TEXT OFF");
+        } catch (SQLException e) {
+            // Still in SHOWPLAN mode, every statement would return a plan instead of rows
+            try {
+                conn.abort(Runnable::run);
+            } catch (SQLException | RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<Object> getParams() {
+        return params;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getCheckoutMillis() {
+        return checkoutNanos / 1_000_000.0;
+    }
+
+    public double getExecuteMillis() {
+        return executeNanos / 1_000_000.0;
+    }
+
+    public double getFetchMillis() {
+        return fetchNanos / 1_000_000.0;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * False while the statement is still running (or was abandoned by its caller).
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Wall time from the start of the statement to its last phase, or until now if it has not finished.
+     */
+    public double getElapsedMillis() {
+        return ((finished ? lastMark : System.nanoTime()) - startNanos) / 1_000_000.0;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+}
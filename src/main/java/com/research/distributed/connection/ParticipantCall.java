@@ -0,0 +1,12 @@
+package com.research.distributed.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Work done by one participant of a DistributedTransaction on its own connection.
+ */
+@FunctionalInterface
+public interface ParticipantCall<R> {
+    R call(Connection conn) throws SQLException;
+}
@@ -0,0 +1,162 @@
+package com.research.distributed.connection;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation scope and deadline of one request. Statements run while the scope
+ * is bound register with it, and {@link #cancel()} calls Statement.cancel() on
+ * every one still in flight, so an abandoned request stops on the server instead
+ * of running to completion. Statements started after the cancel fail at once.
+ *
+ * With a deadline, every registered statement gets the remaining time as its
+ * JDBC query timeout, connection checkouts and fan-outs fail once it has passed,
+ * and whatever is still running at the deadline is cancelled.
+ *
+ * Like ExecutionTrace, a scope is bound per thread and FragmentExecutor binds it
+ * to its workers for the duration of a fan-out.
+ */
+public final class QueryCancellation {
+    private static final ThreadLocal<QueryCancellation> CURRENT = new ThreadLocal<>();
+    private static final Registration NONE = () -> { };
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "query-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private volatile long deadlineNanos = NO_DEADLINE;
+    private ScheduledFuture<?> timer;
+
+    public static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a scope to this thread (null unbinds). Returns the binding to restore afterwards.
+     */
+    public static QueryCancellation bind(QueryCancellation scope) {
+        QueryCancellation replaced = CURRENT.get();
+        if (scope != null) {
+            CURRENT.set(scope);
+        } else {
+            CURRENT.remove();
+        }
+        return replaced;
+    }
+
+    /**
+     * Give the scope a deadline timeoutMillis from now.
+     */
+    public void setTimeout(long timeoutMillis) {
+        setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    private synchronized void setDeadline(long deadline) {
+        deadlineNanos = deadline;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        timer = TIMER.schedule(this::expire, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time left before the current scope's deadline, or Long.MAX_VALUE without one.
+     */
+    public static long remainingMillis() {
+        QueryCancellation scope = CURRENT.get();
+        if (scope == null || scope.deadlineNanos == NO_DEADLINE) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(scope.deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * True if the current scope was cancelled or its deadline has passed.
+     */
+    public static boolean isExpired() {
+        QueryCancellation scope = CURRENT.get();
+        return scope != null && (scope.cancelled || System.nanoTime() >= scope.deadlineNanos);
+    }
+
+    /**
+     * Register a statement about to run with the current scope, if any, and give it
+     * the time left as query timeout. Close the returned registration when the
+     * statement is done (try-with-resources).
+     *
+     * @throws SQLException if the scope has been cancelled or its deadline has passed
+     */
+    public static Registration register(Statement statement) throws SQLException {
+        QueryCancellation scope = CURRENT.get();
+        if (scope == null) {
+            return NONE;
+        }
+        scope.check();
+        long remaining = remainingMillis();
+        if (remaining != Long.MAX_VALUE) {
+            // JDBC timeouts are whole seconds; the deadline timer cancels at the exact time
+            statement.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+        }
+        scope.running.add(statement);
+        // A cancel between the check and the add would have missed this statement
+        if (scope.cancelled || System.nanoTime() >= scope.deadlineNanos) {
+            scope.running.remove(statement);
+            scope.check();
+        }
+        return () -> scope.running.remove(statement);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        cancelRunning();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void expire() {
+        // The deadline may have been moved since the timer was set
+        if (System.nanoTime() >= deadlineNanos) {
+            cancelRunning();
+        }
+    }
+
+    private void cancelRunning() {
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // The statement finished or its connection is gone; either way it is not running
+            }
+        }
+    }
+
+    private void check() throws SQLException {
+        if (cancelled) {
+            // HY008: operation canceled
+            throw new SQLException("Query cancelled", "HY008");
+        }
+        if (System.nanoTime() >= deadlineNanos) {
+            // HYT00: timeout expired
+            throw new SQLTimeoutException("Query deadline exceeded", "HYT00");
+        }
+    }
+
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.research.distributed.connection;
+
+/**
+ * Marker for reads that skipped a failed fragment under location transparency.
+ * Such results are served to the caller but must not be cached.
+ *
+ * A read is tracked on the thread that began it. FragmentExecutor binds it to
+ * its workers for the duration of a fan-out, so a fragment skipped inside a
+ * parallel task marks the caller's read too. Outside a tracked read, marking
+ * is a no-op.
+ */
+public final class ReadCompleteness {
+    private static final ThreadLocal<ReadCompleteness> CURRENT = new ThreadLocal<>();
+
+    private volatile boolean incomplete;
+
+    private ReadCompleteness() {
+    }
+
+    /**
+     * Start tracking a read. Returns the enclosing read to hand back to {@link #end(ReadCompleteness)}.
+     */
+    public static ReadCompleteness begin() {
+        ReadCompleteness previous = CURRENT.get();
+        CURRENT.set(new ReadCompleteness());
+        return previous;
+    }
+
+    /**
+     * Finish tracking a read. Returns true if every fragment answered; if not,
+     * the enclosing read is incomplete as well.
+     */
+    public static boolean end(ReadCompleteness previous) {
+        ReadCompleteness read = CURRENT.get();
+        boolean incomplete = read != null && read.incomplete;
+        bind(previous);
+        if (incomplete && previous != null) {
+            previous.incomplete = true;
+        }
+        return !incomplete;
+    }
+
+    public static ReadCompleteness current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a read tracked on another thread. Returns the binding to restore afterwards.
+     */
+    static ReadCompleteness bind(ReadCompleteness read) {
+        ReadCompleteness replaced = CURRENT.get();
+        if (read != null) {
+            CURRENT.set(read);
+        } else {
+            CURRENT.remove();
+        }
+        return replaced;
+    }
+
+    public static void markIncomplete() {
+        ReadCompleteness read = CURRENT.get();
+        if (read != null) {
+            read.incomplete = true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.exception.DatabaseException;
+
+import java.util.List;
+
+/**
+ * Completes a distributed transaction of one kind that was interrupted by a crash.
+ * Both operations must be idempotent: recovery may run them more than once.
+ */
+public interface RecoveryHandler {
+
+    /**
+     * The commit decision was logged: bring every participant to the committed state.
+     */
+    void redo(List<String> payload) throws DatabaseException;
+
+    /**
+     * No decision was logged (presumed abort): undo whatever the transaction left behind.
+     */
+    void abort(List<String> payload) throws DatabaseException;
+}
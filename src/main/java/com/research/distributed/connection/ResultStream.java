@@ -0,0 +1,60 @@
+package com.research.distributed.connection;
+
+import java.util.List;
+
+/**
+ * A read as it happens, for callers that show results before the slowest
+ * fragment has answered: every fragment statement reports when it starts and
+ * ends (see FragmentTrace), and reads publish each fragment's rows as soon as
+ * that fragment has returned all of them. Rows are published once per fragment,
+ * after retries, so a failed attempt never shows up twice.
+ *
+ * A listener is bound to the thread running the read. FragmentExecutor binds it
+ * to its workers for the duration of a fan-out, like the execution trace, so
+ * listeners are called from several threads. When none is bound, publishing is
+ * a no-op.
+ */
+public final class ResultStream {
+    private static final ThreadLocal<Listener> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Receives the progress of a read; must be thread-safe and quick.
+     */
+    public interface Listener {
+        void started(String fragment);
+
+        void finished(String fragment, int rows, boolean failed);
+
+        void rows(String fragment, List<?> rows);
+    }
+
+    private ResultStream() {
+    }
+
+    public static Listener current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a listener (or none) to this thread. Returns the binding to restore afterwards.
+     */
+    public static Listener bind(Listener listener) {
+        Listener replaced = CURRENT.get();
+        if (listener != null) {
+            CURRENT.set(listener);
+        } else {
+            CURRENT.remove();
+        }
+        return replaced;
+    }
+
+    /**
+     * All rows one fragment returned for the read running on this thread.
+     */
+    public static void publish(String fragment, List<?> rows) {
+        Listener listener = CURRENT.get();
+        if (listener != null && !rows.isEmpty()) {
+            listener.rows(fragment, rows);
+        }
+    }
+}
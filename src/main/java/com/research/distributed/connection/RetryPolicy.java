@@ -0,0 +1,131 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.exception.FragmentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries fragment statements that failed for a transient reason:
+ * - 1205, chosen as deadlock victim, and 1222, lock request timeout: SQL Server
+ *   rolled the statement back, so any unit can run again.
+ * - A broken connection (SQLState class 08): whether the statement ran is
+ *   unknown, so only idempotent units (reads, absolute updates) are retried.
+ *
+ * Attempts back off exponentially with full jitter, so the transactions that
+ * collided do not collide again, and never sleep past the caller's deadline
+ * (see QueryCancellation). Cancellation, timeouts, admission shedding and every
+ * other error are returned at once. Retries are counted per fragment and cause.
+ */
+public class RetryPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+    private static RetryPolicy instance;
+
+    private static final int DEADLOCK_VICTIM = 1205;
+    private static final int LOCK_TIMEOUT = 1222;
+
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    // "fragment cause" -> count
+    private final Map<String, AtomicLong> retries = new ConcurrentHashMap<>();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private RetryPolicy() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.enabled = config.isRetryEnabled();
+        this.maxAttempts = Math.max(1, config.getRetryMaxAttempts());
+        this.baseDelayMillis = config.getRetryBaseDelayMillis();
+        this.maxDelayMillis = config.getRetryMaxDelayMillis();
+    }
+
+    public static synchronized RetryPolicy getInstance() {
+        if (instance == null) {
+            instance = new RetryPolicy();
+        }
+        return instance;
+    }
+
+    /**
+     * Run the unit against the fragment, again on transient failures.
+     * The unit must take its own connection, so each attempt starts clean.
+     */
+    public <R> R call(String fragment, boolean idempotent, Attempt<R> unit)
+            throws SQLException, FragmentException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                R result = unit.run();
+                if (attempt > 1) {
+                    recovered.incrementAndGet();
+                }
+                return result;
+            } catch (SQLException e) {
+                String cause = classify(e, idempotent);
+                if (!enabled || cause == null) {
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                if (attempt >= maxAttempts || QueryCancellation.isExpired()
+                        || delay >= QueryCancellation.remainingMillis()) {
+                    exhausted.incrementAndGet();
+                    throw e;
+                }
+                retries.computeIfAbsent(fragment + " " + cause, key -> new AtomicLong()).incrementAndGet();
+                ExecutionTrace.note("%s: %s, retry %d in %d ms", fragment, cause, attempt, delay);
+                logger.debug("Fragment {}: {} ({}), retry {} in {} ms", fragment, cause, e.getMessage(),
+                        attempt, delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * The retryable cause of the failure ("1205", "1222", "connection"), or null.
+     */
+    static String classify(SQLException e, boolean idempotent) {
+        // The pool and driver wrap the server's error
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (!(t instanceof SQLException sql)) {
+                continue;
+            }
+            if (sql.getErrorCode() == DEADLOCK_VICTIM || sql.getErrorCode() == LOCK_TIMEOUT) {
+                return String.valueOf(sql.getErrorCode());
+            }
+            String state = sql.getSQLState();
+            if (state != null && state.startsWith("08")) {
+                return idempotent ? "connection" : null;
+            }
+        }
+        return null;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public void logStats() {
+        logger.info("Retry stats: {} recovered, {} gave up, retries by fragment and cause: {}",
+                recovered.get(), exhausted.get(), new TreeMap<>(retries));
+    }
+
+    @FunctionalInterface
+    public interface Attempt<R> {
+        R run() throws SQLException, FragmentException;
+    }
+}
@@ -0,0 +1,140 @@
+package com.research.distributed.connection;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.exception.DatabaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordinator of cross-fragment transactions with a local, durable decision log.
+ *
+ * Recovery follows presumed abort: a transaction whose COMMIT record was forced
+ * is redone, anything else that never ended is aborted. What redo and abort mean
+ * is up to the RecoveryHandler registered for the transaction's kind, so the
+ * payload logged at begin() must be enough to finish the work without memory.
+ */
+public class TransactionCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionCoordinator.class);
+    private static TransactionCoordinator instance;
+
+    private final DecisionLog log;
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final AtomicLong inDoubt = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+
+    private TransactionCoordinator() {
+        this.log = new DecisionLog(Path.of(DatabaseConfig.getInstance().getTwoPcLogFile()));
+    }
+
+    public static synchronized TransactionCoordinator getInstance() {
+        if (instance == null) {
+            instance = new TransactionCoordinator();
+        }
+        return instance;
+    }
+
+    /**
+     * Start a transaction; the START record is on disk when this returns.
+     */
+    public DistributedTransaction begin(String kind, String... payload) throws DatabaseException {
+        String id = UUID.randomUUID().toString();
+        try {
+            log.start(id, kind, List.of(payload));
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot log start of " + kind + " transaction", e);
+        }
+        return new DistributedTransaction(id, log, this);
+    }
+
+    /**
+     * Finish every transaction of the given kind left open by a crash. Runs at
+     * startup, before new transactions of that kind begin. Transactions the handler
+     * cannot finish stay in the log and are retried at the next startup.
+     */
+    public synchronized void recover(String kind, RecoveryHandler handler) throws DatabaseException {
+        List<DecisionLog.Pending> pending;
+        try {
+            pending = log.readPending();
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot read decision log", e);
+        }
+
+        List<DecisionLog.Pending> keep = new ArrayList<>();
+        for (DecisionLog.Pending tx : pending) {
+            if (!tx.kind.equals(kind)) {
+                keep.add(tx);
+                continue;
+            }
+            try {
+                if (tx.committed) {
+                    logger.info("Recovering committed {} transaction {}: redo {}", kind, tx.id, tx.payload);
+                    handler.redo(tx.payload);
+                } else {
+                    logger.info("Recovering unfinished {} transaction {}: abort {}", kind, tx.id, tx.payload);
+                    handler.abort(tx.payload);
+                }
+                recovered.incrementAndGet();
+            } catch (DatabaseException e) {
+                logger.error("Recovery of {} transaction {} failed, will retry at next startup: {}",
+                        kind, tx.id, e.getMessage());
+                keep.add(tx);
+            }
+        }
+
+        try {
+            log.compact(keep);
+        } catch (IOException e) {
+            // Finished transactions are replayed once more next time, which handlers tolerate
+            logger.warn("Cannot compact decision log: {}", e.getMessage());
+        }
+    }
+
+    void markCommitted() {
+        committed.incrementAndGet();
+    }
+
+    void markAborted() {
+        aborted.incrementAndGet();
+    }
+
+    void markInDoubt() {
+        inDoubt.incrementAndGet();
+    }
+
+    public long getCommitted() {
+        return committed.get();
+    }
+
+    public long getAborted() {
+        return aborted.get();
+    }
+
+    public long getInDoubt() {
+        return inDoubt.get();
+    }
+
+    public long getRecovered() {
+        return recovered.get();
+    }
+
+    public void logStats() {
+        logger.info("2PC stats: {} committed, {} aborted, {} in doubt, {} recovered",
+                committed.get(), aborted.get(), inDoubt.get(), recovered.get());
+    }
+
+    public void shutdown() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close decision log: {}", e.getMessage());
+        }
+    }
+}
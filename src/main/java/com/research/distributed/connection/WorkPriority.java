@@ -0,0 +1,47 @@
+package com.research.distributed.connection;
+
+/**
+ * Priority class of the work running on a thread, used by the fragments'
+ * admission control to keep connections for the UI while bulk work runs.
+ *
+ * Like QueryCancellation the class is bound per thread, and FragmentExecutor
+ * carries it over to its workers. Threads that bind nothing are interactive.
+ */
+public enum WorkPriority {
+    // A user is waiting: UI reads and saves
+    INTERACTIVE,
+    // Background upkeep: write-behind flushes, view rebuilds, cache refreshes, change polling
+    BATCH,
+    // Group migrations and rebalancing
+    MIGRATION;
+
+    private static final ThreadLocal<WorkPriority> CURRENT = new ThreadLocal<>();
+
+    public static WorkPriority current() {
+        WorkPriority priority = CURRENT.get();
+        return priority != null ? priority : INTERACTIVE;
+    }
+
+    /**
+     * Bind a priority to this thread (null unbinds). Returns the binding to restore afterwards.
+     */
+    public static WorkPriority bind(WorkPriority priority) {
+        WorkPriority replaced = CURRENT.get();
+        if (priority != null) {
+            CURRENT.set(priority);
+        } else {
+            CURRENT.remove();
+        }
+        return replaced;
+    }
+
+    /**
+     * The runnable, running at this priority; for the body of a dedicated thread.
+     */
+    public Runnable wrap(Runnable runnable) {
+        return () -> {
+            bind(this);
+            runnable.run();
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package com.research.distributed.controller;
+
+import com.research.distributed.config.DatabaseConfig;
+import javafx.concurrent.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one executor the controllers run database work on: a bounded pool of
+ * named daemon threads (ui.threads).
+ *
+ * Reads are submitted under a view name and the latest one wins: submitting
+ * a new task for a view cancels the one still running for it, statements
+ * included, so repeated clicks do not pile up fan-outs. Reads also get a
+ * deadline (query.timeoutMillis) that bounds every fragment statement they run.
+ * Writes are executed without a view name or deadline and are never cancelled
+ * that way.
+ */
+public class BackgroundTasks {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundTasks.class);
+    private static BackgroundTasks instance;
+
+    private final ExecutorService executor;
+    private final long readTimeoutMillis;
+    private final Map<String, Task<?>> latest = new ConcurrentHashMap<>();
+    private final AtomicLong superseded = new AtomicLong();
+
+    private BackgroundTasks() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        int threads = config.getUiThreads();
+        this.readTimeoutMillis = config.getQueryTimeoutMillis();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ui-task-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized BackgroundTasks getInstance() {
+        if (instance == null) {
+            instance = new BackgroundTasks();
+        }
+        return instance;
+    }
+
+    /**
+     * Run the read for the view with the default deadline, cancelling the view's
+     * previous task if it is still running.
+     */
+    public void submitLatest(String view, CancellableTask<?> task) {
+        task.setTimeout(readTimeoutMillis);
+        Task<?> previous = latest.put(view, task);
+        if (previous != null && previous.cancel()) {
+            superseded.incrementAndGet();
+            logger.debug("Cancelled superseded task for {}", view);
+        }
+        task.runningProperty().addListener((obs, wasRunning, running) -> {
+            if (!running && task.isDone()) {
+                latest.remove(view, task);
+            }
+        });
+        executor.execute(task);
+    }
+
+    /**
+     * Run a task that must not be cancelled by later requests, such as a write.
+     */
+    public void execute(Task<?> task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Cancel the view's running task, e.g. when its window closes.
+     */
+    public void cancel(String view) {
+        Task<?> task = latest.remove(view);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    public void shutdown() {
+        latest.values().forEach(Task::cancel);
+        latest.clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Background tasks shut down ({} superseded requests cancelled)", superseded.get());
+    }
+}
@@ -1,13 +1,23 @@
 package com.research.distributed.controller;
 
+import com.research.distributed.config.DatabaseConfig;
 import com.research.distributed.connection.TransparencyLevel;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
+import com.research.distributed.dao.DataChangeListener;
+import com.research.distributed.dao.Delta;
+import com.research.distributed.dao.Page;
+import com.research.distributed.dao.PageRequest;
 import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.exception.StaleDataException;
 import com.research.distributed.exception.ValidationException;
 import com.research.distributed.model.DeAn;
 import com.research.distributed.model.NhanVien;
 import com.research.distributed.model.NhomNC;
 import com.research.distributed.model.ThamGia;
 import com.research.distributed.service.CRUDService;
+import com.research.distributed.service.PartialResult;
+import com.research.distributed.service.PendingWrite;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -21,14 +31,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URL;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 public class CRUDController implements Initializable {
     private static final Logger logger = LoggerFactory.getLogger(CRUDController.class);
 
     @FXML private Label titleLabel;
+    @FXML private Label progressLabel;
     @FXML private TableView<Object> dataTable;
     @FXML private VBox formContainer;
     @FXML private Button refreshButton;
@@ -38,16 +53,32 @@ public class CRUDController implements Initializable {
     @FXML private Button closeButton;
 
     private CRUDService crudService;
+    private BackgroundTasks backgroundTasks;
+    // Latest-wins key of this window's loads
+    private final String refreshView = "crud@" + Integer.toHexString(System.identityHashCode(this));
     private String entityType;
     private TransparencyLevel transparencyLevel;
+    private PagedTableSource rows;
+    // Fragments the loads since the last refresh are waiting for
+    private volatile ProgressiveResult<Object> progress;
+    // Key of the row to select again once a reload brings it back
+    private String pendingSelection;
+
+    private final DataChangeListener changeListener = this::onDataChanged;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         crudService = new CRUDService();
+        backgroundTasks = BackgroundTasks.getInstance();
         transparencyLevel = TransparencyLevel.LOCATION_TRANSPARENCY;
 
-        dataTable.getSelectionModel().selectedItemProperty().addListener(
-                (obs, oldSel, newSel) -> updateButtonStates(newSel != null));
+        dataTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSel, newSel) -> {
+            updateButtonStates(newSel != null);
+            if (newSel != null) {
+                pendingSelection = null;
+            }
+        });
 
         logger.info("CRUDController initialized");
     }
@@ -56,7 +87,44 @@ public class CRUDController implements Initializable {
         this.entityType = entityType;
         titleLabel.setText(getEntityTitle());
         setupTableColumns();
+        setupRows();
         refreshData();
+        DataChangeBus.getInstance().subscribe(changeListener);
+    }
+
+    /**
+     * Stop following changes; called when the window is closed.
+     */
+    public void dispose() {
+        DataChangeBus.getInstance().unsubscribe(changeListener);
+        rows.dispose();
+        progress.close();
+    }
+
+    private String getTableName() {
+        switch (entityType) {
+            case "NhomNC": return "nhomnc";
+            case "NhanVien": return "nhanvien";
+            case "DeAn": return "dean";
+            case "ThamGia": return "thamgia";
+            default: return null;
+        }
+    }
+
+    /**
+     * Reload the table when its data changes, here or elsewhere (see ChangeFeed).
+     * Bursts of events collapse into one reload.
+     */
+    private void onDataChanged(DataChangeEvent event) {
+        if (!event.getTable().equals(getTableName())) {
+            return;
+        }
+        if (refreshQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                refreshQueued.set(false);
+                refreshData();
+            });
+        }
     }
 
     public void setTransparencyLevel(TransparencyLevel level) {
@@ -73,92 +141,50 @@ public class CRUDController implements Initializable {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void setupTableColumns() {
         dataTable.getColumns().clear();
 
         switch (entityType) {
             case "NhomNC":
-                TableColumn<Object, String> groupIdCol = new TableColumn<>("Group ID");
-                groupIdCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhomNC) data.getValue()).getMaHomnc()));
-                groupIdCol.setPrefWidth(120);
-
-                TableColumn<Object, String> groupNameCol = new TableColumn<>("Group Name");
-                groupNameCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhomNC) data.getValue()).getTenNhomnc()));
-                groupNameCol.setPrefWidth(250);
-
-                TableColumn<Object, String> deptCol = new TableColumn<>("Department");
-                deptCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhomNC) data.getValue()).getTenPhong()));
-                deptCol.setPrefWidth(100);
-
-                dataTable.getColumns().addAll(groupIdCol, groupNameCol, deptCol);
+                addColumn("Group ID", "manhomnc", 120, NhomNC.class, NhomNC::getMaHomnc);
+                addColumn("Group Name", "tennhomnc", 250, NhomNC.class, NhomNC::getTenNhomnc);
+                addColumn("Department", "tenphong", 100, NhomNC.class, NhomNC::getTenPhong);
                 break;
 
             case "NhanVien":
-                TableColumn<Object, String> empIdCol = new TableColumn<>("Employee ID");
-                empIdCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhanVien) data.getValue()).getMaNv()));
-                empIdCol.setPrefWidth(120);
-
-                TableColumn<Object, String> nameCol = new TableColumn<>("Full Name");
-                nameCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhanVien) data.getValue()).getHoTen()));
-                nameCol.setPrefWidth(250);
-
-                TableColumn<Object, String> empGroupCol = new TableColumn<>("Group ID");
-                empGroupCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((NhanVien) data.getValue()).getMaHomnc()));
-                empGroupCol.setPrefWidth(120);
-
-                dataTable.getColumns().addAll(empIdCol, nameCol, empGroupCol);
+                addColumn("Employee ID", "manv", 120, NhanVien.class, NhanVien::getMaNv);
+                addColumn("Full Name", "hoten", 250, NhanVien.class, NhanVien::getHoTen);
+                addColumn("Group ID", "manhomnc", 120, NhanVien.class, NhanVien::getMaHomnc);
                 break;
 
             case "DeAn":
-                TableColumn<Object, String> projIdCol = new TableColumn<>("Project ID");
-                projIdCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((DeAn) data.getValue()).getMaDa()));
-                projIdCol.setPrefWidth(120);
-
-                TableColumn<Object, String> projNameCol = new TableColumn<>("Project Name");
-                projNameCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((DeAn) data.getValue()).getTenDa()));
-                projNameCol.setPrefWidth(300);
-
-                TableColumn<Object, String> projGroupCol = new TableColumn<>("Group ID");
-                projGroupCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((DeAn) data.getValue()).getMaHomnc()));
-                projGroupCol.setPrefWidth(120);
-
-                dataTable.getColumns().addAll(projIdCol, projNameCol, projGroupCol);
+                addColumn("Project ID", "mada", 120, DeAn.class, DeAn::getMaDa);
+                addColumn("Project Name", "tenda", 300, DeAn.class, DeAn::getTenDa);
+                addColumn("Group ID", "manhomnc", 120, DeAn.class, DeAn::getMaHomnc);
                 break;
 
             case "ThamGia":
-                TableColumn<Object, String> partEmpCol = new TableColumn<>("Employee ID");
-                partEmpCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((ThamGia) data.getValue()).getMaNv()));
-                partEmpCol.setPrefWidth(150);
-
-                TableColumn<Object, String> partProjCol = new TableColumn<>("Project ID");
-                partProjCol.setCellValueFactory(data ->
-                        new SimpleStringProperty(((ThamGia) data.getValue()).getMaDa()));
-                partProjCol.setPrefWidth(150);
-
-                TableColumn<Object, String> dateCol = new TableColumn<>("Join Date");
-                dateCol.setCellValueFactory(data -> {
-                    ThamGia tg = (ThamGia) data.getValue();
-                    return new SimpleStringProperty(
-                            tg.getNgayThamGia() != null ? tg.getNgayThamGia().toString() : "N/A");
-                });
-                dateCol.setPrefWidth(150);
-
-                dataTable.getColumns().addAll(partEmpCol, partProjCol, dateCol);
+                addColumn("Employee ID", "manv", 150, ThamGia.class, ThamGia::getMaNv);
+                addColumn("Project ID", "mada", 150, ThamGia.class, ThamGia::getMaDa);
+                addColumn("Join Date", "ngaythamgia", 150, ThamGia.class, tg ->
+                        tg.getNgayThamGia() != null ? tg.getNgayThamGia().toString() : "N/A");
                 break;
         }
     }
 
+    /**
+     * A column showing one property; column is the database column sorting by it is pushed down to.
+     * Rows whose page has not arrived yet are null and show empty.
+     */
+    private <T> void addColumn(String title, String column, double width, Class<T> type, Function<T, String> value) {
+        TableColumn<Object, String> tableColumn = new TableColumn<>(title);
+        tableColumn.setCellValueFactory(data -> new SimpleStringProperty(
+                type.isInstance(data.getValue()) ? value.apply(type.cast(data.getValue())) : ""));
+        tableColumn.setUserData(column);
+        tableColumn.setPrefWidth(width);
+        dataTable.getColumns().add(tableColumn);
+    }
+
     private void updateButtonStates(boolean hasSelection) {
         editButton.setDisable(!hasSelection);
         deleteButton.setDisable(!hasSelection);
@@ -204,34 +230,91 @@ public class CRUDController implements Initializable {
         stage.close();
     }
 
+    /**
+     * Read what changed since the last read; see PagedTableSource.refresh().
+     */
     private void refreshData() {
-        refreshButton.setDisable(true);
-        new Thread(() -> {
-            try {
-                List<?> data = loadData();
-                Platform.runLater(() -> {
-                    dataTable.setItems(FXCollections.observableArrayList((List<Object>) data));
-                    updateButtonStates(false);
-                });
-            } catch (DatabaseException e) {
-                Platform.runLater(() ->
-                        showAlert(Alert.AlertType.ERROR, "Load Error", e.getDetailedMessage()));
-            } finally {
-                Platform.runLater(() -> refreshButton.setDisable(false));
+        // A reload drops the selection; it comes back when the row's page arrives
+        Object selected = dataTable.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            pendingSelection = PendingWrite.keyOf(selected);
+        }
+        if (progress != null) {
+            progress.close();
+        }
+        progress = new ProgressiveResult<>(null, Object.class, progressLabel);
+        rows.refresh();
+    }
+
+    /**
+     * Rows are read a page at a time as the table scrolls, ordered by the database.
+     */
+    private void setupRows() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        String table = getTableName();
+        rows = new PagedTableSource(refreshView, new PagedTableSource.Loader() {
+            @Override
+            public Delta<?> changes(Map<String, Timestamp> since) throws DatabaseException {
+                return progress.run(() -> crudService.getChangesSince(table, since, transparencyLevel));
             }
-        }).start();
+
+            @Override
+            public Page<?> load(PageRequest request) throws DatabaseException {
+                // A page is merged across fragments, so only its progress is shown before it is complete
+                return progress.run(() -> crudService.getPage(table, request, transparencyLevel));
+            }
+        }, config.getUiPageSize(), config.getUiCachedPages());
+        rows.setOnReloaded(result -> {
+            updateButtonStates(false);
+            showCompleteness(result);
+        });
+        rows.setOnRefreshed(result -> {
+            // Patched in place, so the selection was kept
+            pendingSelection = null;
+            showCompleteness(result);
+        });
+        rows.setOnPageLoaded(this::onPageLoaded);
+        rows.setOnFailed(error -> showTaskError("Load Error", error));
+        dataTable.setItems(rows);
+
+        dataTable.setSortPolicy(tableView -> {
+            List<TableColumn<Object, ?>> order = dataTable.getSortOrder();
+            if (order.isEmpty()) {
+                rows.setOrder(null, false);
+            } else {
+                TableColumn<Object, ?> column = order.get(0);
+                rows.setOrder((String) column.getUserData(), column.getSortType() == TableColumn.SortType.DESCENDING);
+            }
+            return true;
+        });
     }
 
-    private List<?> loadData() throws DatabaseException {
-        switch (entityType) {
-            case "NhomNC": return crudService.getAllNhomNC(transparencyLevel);
-            case "NhanVien": return crudService.getAllNhanVien(transparencyLevel);
-            case "DeAn": return crudService.getAllDeAn(transparencyLevel);
-            case "ThamGia": return crudService.getAllThamGia(transparencyLevel);
-            default: throw new DatabaseException("Unknown entity type: " + entityType);
+    private void onPageLoaded(int page, PartialResult<?> result) {
+        if (!result.isComplete()) {
+            showCompleteness(result);
+        }
+        if (pendingSelection == null) {
+            return;
+        }
+        int pageSize = DatabaseConfig.getInstance().getUiPageSize();
+        for (int i = page * pageSize; i < Math.min(rows.size(), (page + 1) * pageSize); i++) {
+            Object row = rows.peek(i);
+            if (row != null && PendingWrite.keyOf(row).equals(pendingSelection)) {
+                pendingSelection = null;
+                dataTable.getSelectionModel().select(i);
+                return;
+            }
         }
     }
 
+    /**
+     * Under location transparency a fragment that did not answer is left out.
+     */
+    private void showCompleteness(PartialResult<?> result) {
+        titleLabel.setText(result.isComplete()
+                ? getEntityTitle() : getEntityTitle() + " - " + result.describe());
+    }
+
     private void showEntityDialog(Object entity) {
         Dialog<Object> dialog = new Dialog<>();
         dialog.setTitle(entity == null ? "Add " + entityType : "Edit " + entityType);
@@ -286,6 +369,10 @@ public class CRUDController implements Initializable {
                         nameField.getText().trim(),
                         deptCombo.getValue()
                 );
+                if (existing != null) {
+                    // The version the update is checked against
+                    nhomNC.setUpdatedAt(existing.getUpdatedAt());
+                }
                 saveEntity(nhomNC, existing == null);
             }
             return null;
@@ -317,6 +404,9 @@ public class CRUDController implements Initializable {
                         nameField.getText().trim(),
                         groupField.getText().trim()
                 );
+                if (existing != null) {
+                    nhanVien.setUpdatedAt(existing.getUpdatedAt());
+                }
                 saveEntity(nhanVien, existing == null);
             }
             return null;
@@ -348,6 +438,9 @@ public class CRUDController implements Initializable {
                         nameField.getText().trim(),
                         groupField.getText().trim()
                 );
+                if (existing != null) {
+                    deAn.setUpdatedAt(existing.getUpdatedAt());
+                }
                 saveEntity(deAn, existing == null);
             }
             return null;
@@ -387,62 +480,103 @@ public class CRUDController implements Initializable {
     }
 
     private void saveEntity(Object entity, boolean isNew) {
-        new Thread(() -> {
-            try {
-                if (entity instanceof NhomNC) {
-                    if (isNew) crudService.createNhomNC((NhomNC) entity);
-                    else crudService.updateNhomNC((NhomNC) entity);
-                } else if (entity instanceof NhanVien) {
-                    if (isNew) crudService.createNhanVien((NhanVien) entity);
-                    else crudService.updateNhanVien((NhanVien) entity);
-                } else if (entity instanceof DeAn) {
-                    if (isNew) crudService.createDeAn((DeAn) entity);
-                    else crudService.updateDeAn((DeAn) entity);
-                } else if (entity instanceof ThamGia) {
-                    if (isNew) crudService.createThamGia((ThamGia) entity);
-                }
+        CancellableTask<Void> task = CancellableTask.of(() -> {
+            if (entity instanceof NhomNC) {
+                if (isNew) crudService.createNhomNC((NhomNC) entity);
+                else crudService.updateNhomNC((NhomNC) entity);
+            } else if (entity instanceof NhanVien) {
+                if (isNew) crudService.createNhanVien((NhanVien) entity);
+                else crudService.updateNhanVien((NhanVien) entity);
+            } else if (entity instanceof DeAn) {
+                if (isNew) crudService.createDeAn((DeAn) entity);
+                else crudService.updateDeAn((DeAn) entity);
+            } else if (entity instanceof ThamGia) {
+                if (isNew) crudService.createThamGia((ThamGia) entity);
+            }
+            return null;
+        });
+        task.setOnSucceeded(event -> {
+            String syncNote = crudService.isWriteBehindEnabled()
+                    ? " (syncing to the database in the background)" : "";
+            showAlert(Alert.AlertType.INFORMATION, "Success",
+                    "Record " + (isNew ? "created" : "updated") + " successfully" + syncNote);
+            // An update is shown in place; the change event then refreshes from the fragments
+            if (isNew || !rows.update(entity)) {
+                refreshData();
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task.getException() instanceof StaleDataException conflict) {
+                resolveConflict(entity, conflict);
+            } else {
+                showTaskError("Save Error", task.getException());
+            }
+        });
+        backgroundTasks.execute(task);
+    }
 
-                Platform.runLater(() -> {
-                    showAlert(Alert.AlertType.INFORMATION, "Success",
-                            "Record " + (isNew ? "created" : "updated") + " successfully");
-                    refreshData();
-                });
-            } catch (DatabaseException | ValidationException e) {
-                String message = e instanceof ValidationException ?
-                        ((ValidationException) e).getDetailedMessage() :
-                        ((DatabaseException) e).getDetailedMessage();
-                Platform.runLater(() ->
-                        showAlert(Alert.AlertType.ERROR, "Save Error", message));
+    /**
+     * Someone else saved the record after it was opened: show their version and
+     * let the user overwrite it with theirs (retrying against the new version) or reload.
+     */
+    private void resolveConflict(Object entity, StaleDataException conflict) {
+        ButtonType overwrite = new ButtonType("Overwrite");
+        ButtonType reload = new ButtonType("Reload", ButtonBar.ButtonData.CANCEL_CLOSE);
+        Alert alert = new Alert(Alert.AlertType.WARNING, null, overwrite, reload);
+        alert.setTitle("Edit Conflict");
+        alert.setHeaderText(conflict.getMessage());
+        alert.setContentText("Current values: " + conflict.getCurrent() + "\n\nYour values: " + entity
+                + "\n\nOverwrite the current values with yours?");
+
+        Optional<ButtonType> choice = alert.showAndWait();
+        if (choice.isPresent() && choice.get() == overwrite) {
+            Object current = conflict.getCurrent();
+            if (entity instanceof NhomNC nhomNC) {
+                nhomNC.setUpdatedAt(((NhomNC) current).getUpdatedAt());
+            } else if (entity instanceof NhanVien nhanVien) {
+                nhanVien.setUpdatedAt(((NhanVien) current).getUpdatedAt());
+            } else if (entity instanceof DeAn deAn) {
+                deAn.setUpdatedAt(((DeAn) current).getUpdatedAt());
             }
-        }).start();
+            saveEntity(entity, false);
+        } else {
+            refreshData();
+        }
     }
 
     private void deleteEntity(Object entity) {
-        new Thread(() -> {
-            try {
-                if (entity instanceof NhomNC) {
-                    crudService.deleteNhomNC(((NhomNC) entity).getMaHomnc());
-                } else if (entity instanceof NhanVien) {
-                    crudService.deleteNhanVien(((NhanVien) entity).getMaNv());
-                } else if (entity instanceof DeAn) {
-                    crudService.deleteDeAn(((DeAn) entity).getMaDa());
-                } else if (entity instanceof ThamGia) {
-                    ThamGia tg = (ThamGia) entity;
-                    crudService.deleteThamGia(tg.getMaNv(), tg.getMaDa());
-                }
-
-                Platform.runLater(() -> {
-                    showAlert(Alert.AlertType.INFORMATION, "Success", "Record deleted successfully");
-                    refreshData();
-                });
-            } catch (DatabaseException | ValidationException e) {
-                String message = e instanceof ValidationException ?
-                        ((ValidationException) e).getDetailedMessage() :
-                        ((DatabaseException) e).getDetailedMessage();
-                Platform.runLater(() ->
-                        showAlert(Alert.AlertType.ERROR, "Delete Error", message));
+        CancellableTask<Void> task = CancellableTask.of(() -> {
+            if (entity instanceof NhomNC) {
+                crudService.deleteNhomNC(((NhomNC) entity).getMaHomnc());
+            } else if (entity instanceof NhanVien) {
+                crudService.deleteNhanVien(((NhanVien) entity).getMaNv());
+            } else if (entity instanceof DeAn) {
+                crudService.deleteDeAn(((DeAn) entity).getMaDa());
+            } else if (entity instanceof ThamGia) {
+                ThamGia tg = (ThamGia) entity;
+                crudService.deleteThamGia(tg.getMaNv(), tg.getMaDa());
             }
-        }).start();
+            return null;
+        });
+        task.setOnSucceeded(event -> {
+            showAlert(Alert.AlertType.INFORMATION, "Success", "Record deleted successfully");
+            refreshData();
+        });
+        task.setOnFailed(event -> showTaskError("Delete Error", task.getException()));
+        backgroundTasks.execute(task);
+    }
+
+    private void showTaskError(String title, Throwable error) {
+        String message;
+        if (error instanceof DatabaseException databaseException) {
+            message = databaseException.getDetailedMessage();
+        } else if (error instanceof ValidationException validationException) {
+            message = validationException.getDetailedMessage();
+        } else {
+            logger.error("Background task failed: {}", error.getMessage(), error);
+            message = error.getMessage();
+        }
+        showAlert(Alert.AlertType.ERROR, title, message);
     }
 
     private void showAlert(Alert.AlertType type, String title, String content) {
@@ -0,0 +1,58 @@
+package com.research.distributed.controller;
+
+import com.research.distributed.connection.QueryCancellation;
+import javafx.concurrent.Task;
+
+/**
+ * A JavaFX Task whose database statements run in their own QueryCancellation
+ * scope: cancelling the task, or reaching its deadline, also cancels its
+ * in-flight JDBC statements.
+ */
+public abstract class CancellableTask<V> extends Task<V> {
+    private final QueryCancellation cancellation = new QueryCancellation();
+
+    /**
+     * The work of the task, run on a BackgroundTasks thread.
+     */
+    protected abstract V compute() throws Exception;
+
+    @Override
+    protected final V call() throws Exception {
+        QueryCancellation previous = QueryCancellation.bind(cancellation);
+        try {
+            return compute();
+        } finally {
+            QueryCancellation.bind(previous);
+        }
+    }
+
+    /**
+     * Give the task a deadline timeoutMillis from now, queueing time included.
+     */
+    public void setTimeout(long timeoutMillis) {
+        cancellation.setTimeout(timeoutMillis);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        cancellation.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Wrap a lambda as a task.
+     */
+    public static <V> CancellableTask<V> of(Work<V> work) {
+        return new CancellableTask<>() {
+            @Override
+            protected V compute() throws Exception {
+                return work.compute();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface Work<V> {
+        V compute() throws Exception;
+    }
+}
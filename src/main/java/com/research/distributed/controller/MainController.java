@@ -7,6 +7,10 @@ import com.research.distributed.model.DeAn;
 import com.research.distributed.model.NhomNC;
 import com.research.distributed.service.CRUDService;
 import com.research.distributed.service.QueryService;
+import com.research.distributed.service.PartialResult;
+import com.research.distributed.service.RebalancePlan;
+import com.research.distributed.service.Rebalancer;
+import com.research.distributed.service.WriteBehindQueue;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -25,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 public class MainController implements Initializable {
@@ -34,10 +39,12 @@ public class MainController implements Initializable {
     @FXML private RadioButton level1Radio;
     @FXML private RadioButton level2Radio;
     @FXML private ToggleGroup transparencyGroup;
+    @FXML private CheckBox showplanCheck;
 
     // Query 1: Projects with External Participants
     @FXML private TextField groupIdField;
     @FXML private Button query1Button;
+    @FXML private Label query1Progress;
     @FXML private TableView<DeAn> query1Table;
     @FXML private TableColumn<DeAn, String> query1ProjectIdCol;
     @FXML private TableColumn<DeAn, String> query1ProjectNameCol;
@@ -51,22 +58,40 @@ public class MainController implements Initializable {
 
     // Query 3: Projects Without Participants
     @FXML private Button query3Button;
+    @FXML private Label query3Progress;
     @FXML private TableView<DeAn> query3Table;
     @FXML private TableColumn<DeAn, String> query3ProjectIdCol;
     @FXML private TableColumn<DeAn, String> query3ProjectNameCol;
     @FXML private TableColumn<DeAn, String> query3GroupIdCol;
 
+    // Execution trace of the last query
+    @FXML private TextArea traceArea;
+
+    // Rebalance
+    @FXML private Button rebalancePlanButton;
+    @FXML private Button rebalanceButton;
+    @FXML private TextArea rebalanceArea;
+
     private QueryService queryService;
     private CRUDService crudService;
+    private BackgroundTasks backgroundTasks;
+    // Reads currently streaming into the query tables
+    private ProgressiveResult<DeAn> query1Stream;
+    private ProgressiveResult<DeAn> query3Stream;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         queryService = new QueryService();
         crudService = new CRUDService();
+        backgroundTasks = BackgroundTasks.getInstance();
 
         initializeTableColumns();
         initializeDepartmentCombo();
 
+        // Writes are acknowledged before they reach the fragment, so a refusal can only be reported later
+        WriteBehindQueue.getInstance().addRejectionListener(rejected -> Platform.runLater(() ->
+                showAlert(Alert.AlertType.WARNING, "Write Rejected", rejected.describe())));
+
         logger.info("MainController initialized");
     }
 
@@ -110,30 +135,35 @@ public class MainController implements Initializable {
         TransparencyLevel level = getSelectedLevel();
         logger.info("Executing Query 1 with Group ID: {} at Level: {}", groupId, level);
 
-        query1Button.setDisable(true);
-        new Thread(() -> {
-            try {
-                List<DeAn> results;
-                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
-                    results = queryService.getProjectsWithExternalParticipantsLevel1(groupId);
-                } else {
-                    results = queryService.getProjectsWithExternalParticipantsLevel2(groupId);
-                }
-
-                Platform.runLater(() -> {
-                    query1Table.setItems(FXCollections.observableArrayList(results));
-                    if (results.isEmpty()) {
-                        showAlert(Alert.AlertType.INFORMATION, "No Results",
-                                "No projects found with external participants for group: " + groupId);
-                    }
-                });
-            } catch (DatabaseException e) {
-                Platform.runLater(() ->
-                        showAlert(Alert.AlertType.ERROR, "Query Error", e.getDetailedMessage()));
-            } finally {
-                Platform.runLater(() -> query1Button.setDisable(false));
+        boolean includePlans = showplanCheck.isSelected();
+        if (query1Stream != null) {
+            query1Stream.close();
+        }
+        ProgressiveResult<DeAn> stream = new ProgressiveResult<>(query1Table.getItems(), DeAn.class, query1Progress);
+        query1Stream = stream;
+        CancellableTask<PartialResult<List<DeAn>>> task = CancellableTask.of(() -> stream.run(() -> queryService.traced(
+                "Query 1 (" + groupId + ", " + level + ")", includePlans, () ->
+                        level == TransparencyLevel.FRAGMENT_TRANSPARENCY
+                                ? queryService.getProjectsWithExternalParticipantsLevel1(groupId)
+                                : queryService.getProjectsWithExternalParticipantsLevel2(groupId))));
+        task.setOnSucceeded(event -> {
+            PartialResult<List<DeAn>> traced = task.getValue();
+            List<DeAn> results = traced.getValue();
+            stream.complete(results, traced);
+            showTrace(traced);
+            if (!traced.isComplete()) {
+                showAlert(Alert.AlertType.WARNING, "Partial Results", traced.describe());
+            } else if (results.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "No Results",
+                        "No projects found with external participants for group: " + groupId);
             }
-        }).start();
+        });
+        task.setOnFailed(event -> {
+            stream.close();
+            showTaskError("Query Error", task.getException());
+        });
+        // A newer Query 1 replaces this one
+        backgroundTasks.submitLatest("query1", task);
     }
 
     @FXML
@@ -153,27 +183,24 @@ public class MainController implements Initializable {
         query2Button.setDisable(true);
         query2Result.setText("Processing...");
 
-        new Thread(() -> {
-            try {
-                queryService.updateDepartment(groupId, newDepartment, level);
-                Platform.runLater(() -> {
-                    query2Result.setText("Successfully updated group " + groupId +
-                            " to department " + newDepartment);
-                    query2Result.setStyle("-fx-text-fill: green;");
-                });
-            } catch (DatabaseException | ValidationException e) {
-                String message = e instanceof ValidationException ?
-                        ((ValidationException) e).getDetailedMessage() :
-                        ((DatabaseException) e).getDetailedMessage();
-                Platform.runLater(() -> {
-                    query2Result.setText("Error: " + e.getMessage());
-                    query2Result.setStyle("-fx-text-fill: red;");
-                    showAlert(Alert.AlertType.ERROR, "Update Error", message);
-                });
-            } finally {
-                Platform.runLater(() -> query2Button.setDisable(false));
-            }
-        }).start();
+        CancellableTask<Void> task = CancellableTask.of(() -> {
+            queryService.updateDepartment(groupId, newDepartment, level, progress ->
+                    Platform.runLater(() -> query2Result.setText(progress.toString())));
+            return null;
+        });
+        task.setOnSucceeded(event -> {
+            query2Result.setText("Successfully updated group " + groupId + " to department " + newDepartment);
+            query2Result.setStyle("-fx-text-fill: green;");
+            query2Button.setDisable(false);
+        });
+        task.setOnFailed(event -> {
+            query2Result.setText("Error: " + task.getException().getMessage());
+            query2Result.setStyle("-fx-text-fill: red;");
+            query2Button.setDisable(false);
+            showTaskError("Update Error", task.getException());
+        });
+        // A write: runs to completion even if the user starts something else
+        backgroundTasks.execute(task);
     }
 
     @FXML
@@ -181,32 +208,140 @@ public class MainController implements Initializable {
         TransparencyLevel level = getSelectedLevel();
         logger.info("Executing Query 3 at Level: {}", level);
 
-        query3Button.setDisable(true);
-        new Thread(() -> {
-            try {
-                List<DeAn> results;
-                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
-                    // For fragment transparency, query both fragments
-                    results = queryService.getProjectsWithoutParticipantsLevel1("p1");
-                    results.addAll(queryService.getProjectsWithoutParticipantsLevel1("p2"));
-                } else {
-                    results = queryService.getProjectsWithoutParticipantsLevel2();
-                }
-
-                Platform.runLater(() -> {
-                    query3Table.setItems(FXCollections.observableArrayList(results));
-                    if (results.isEmpty()) {
-                        showAlert(Alert.AlertType.INFORMATION, "No Results",
-                                "All projects have at least one participant");
+        boolean includePlans = showplanCheck.isSelected();
+        if (query3Stream != null) {
+            query3Stream.close();
+        }
+        ProgressiveResult<DeAn> stream = new ProgressiveResult<>(query3Table.getItems(), DeAn.class, query3Progress);
+        query3Stream = stream;
+        CancellableTask<PartialResult<List<DeAn>>> task = CancellableTask.of(() -> stream.run(() -> queryService.traced(
+                "Query 3 (" + level + ")", includePlans, () -> {
+                    if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                        // For fragment transparency, query both fragments
+                        List<DeAn> projects = queryService.getProjectsWithoutParticipantsLevel1("p1");
+                        projects.addAll(queryService.getProjectsWithoutParticipantsLevel1("p2"));
+                        return projects;
                     }
-                });
-            } catch (DatabaseException e) {
-                Platform.runLater(() ->
-                        showAlert(Alert.AlertType.ERROR, "Query Error", e.getDetailedMessage()));
-            } finally {
-                Platform.runLater(() -> query3Button.setDisable(false));
+                    return queryService.getProjectsWithoutParticipantsLevel2();
+                })));
+        task.setOnSucceeded(event -> {
+            PartialResult<List<DeAn>> traced = task.getValue();
+            List<DeAn> results = traced.getValue();
+            stream.complete(results, traced);
+            showTrace(traced);
+            if (!traced.isComplete()) {
+                showAlert(Alert.AlertType.WARNING, "Partial Results", traced.describe());
+            } else if (results.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "No Results",
+                        "All projects have at least one participant");
+            }
+        });
+        task.setOnFailed(event -> {
+            stream.close();
+            showTaskError("Query Error", task.getException());
+        });
+        backgroundTasks.submitLatest("query3", task);
+    }
+
+    @FXML
+    private void handleRebalancePlan() {
+        setRebalanceDisabled(true);
+        rebalanceArea.setText("Collecting fragment load...");
+
+        CancellableTask<RebalancePlan> task = CancellableTask.of(() -> Rebalancer.getInstance().plan());
+        task.setOnSucceeded(event -> {
+            rebalanceArea.setText(task.getValue().describe());
+            setRebalanceDisabled(false);
+        });
+        task.setOnFailed(event -> {
+            rebalanceArea.setText("Error: " + task.getException().getMessage());
+            setRebalanceDisabled(false);
+            showTaskError("Rebalance Error", task.getException());
+        });
+        backgroundTasks.execute(task);
+    }
+
+    /**
+     * Plan, let the user confirm the moves and the department changes they imply, then execute.
+     */
+    @FXML
+    private void handleRebalance() {
+        setRebalanceDisabled(true);
+        rebalanceArea.setText("Collecting fragment load...");
+
+        CancellableTask<RebalancePlan> task = CancellableTask.of(() -> Rebalancer.getInstance().plan());
+        task.setOnSucceeded(event -> {
+            RebalancePlan plan = task.getValue();
+            rebalanceArea.setText(plan.describe());
+            if (plan.isEmpty()) {
+                setRebalanceDisabled(false);
+                showAlert(Alert.AlertType.INFORMATION, "Rebalance", "The fragments are balanced; no group needs to move");
+            } else if (confirmRebalance(plan)) {
+                executeRebalance(plan);
+            } else {
+                setRebalanceDisabled(false);
+            }
+        });
+        task.setOnFailed(event -> {
+            rebalanceArea.setText("Error: " + task.getException().getMessage());
+            setRebalanceDisabled(false);
+            showTaskError("Rebalance Error", task.getException());
+        });
+        backgroundTasks.execute(task);
+    }
+
+    private boolean confirmRebalance(RebalancePlan plan) {
+        StringBuilder content = new StringBuilder(
+                "Moving a group changes its department (tenphong) to the department of the fragment it moves to:\n\n");
+        for (RebalancePlan.Move move : plan.getMoves()) {
+            content.append(String.format("%s: %s -> %s, department becomes %s (%d rows)%n",
+                    move.getGroupId(), move.getFromFragment(), move.getToFragment(),
+                    move.getNewDepartment(), move.getRows()));
+        }
+        content.append(String.format("%nEstimated time: %.1f s", plan.getEstimatedSeconds()));
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Confirm Rebalance");
+        confirm.setHeaderText("Move " + plan.getMoves().size() + " group(s) and change their department?");
+        confirm.setContentText(content.toString());
+        confirm.getDialogPane().getStylesheets().add(
+                getClass().getResource("/css/pastel-theme.css").toExternalForm());
+
+        Optional<ButtonType> result = confirm.showAndWait();
+        return result.isPresent() && result.get() == ButtonType.OK;
+    }
+
+    private void executeRebalance(RebalancePlan plan) {
+        logger.info("Executing rebalance of {} group(s)", plan.getMoves().size());
+        // Moves report their status on the plan; migration progress is shown below it
+        CancellableTask<Void> task = CancellableTask.of(() -> {
+            Rebalancer.getInstance().execute(plan, progress ->
+                    Platform.runLater(() -> rebalanceArea.setText(plan.describe() + "\n" + progress)));
+            return null;
+        });
+        task.setOnSucceeded(event -> {
+            rebalanceArea.setText(plan.describe());
+            setRebalanceDisabled(false);
+            long failed = plan.getMoves().stream()
+                    .filter(move -> move.getStatus() == RebalancePlan.Status.FAILED)
+                    .count();
+            if (failed > 0) {
+                showAlert(Alert.AlertType.WARNING, "Rebalance",
+                        failed + " of " + plan.getMoves().size() + " group moves failed; those groups keep their department");
             }
-        }).start();
+        });
+        task.setOnFailed(event -> {
+            rebalanceArea.setText(plan.describe());
+            setRebalanceDisabled(false);
+            showTaskError("Rebalance Error", task.getException());
+        });
+        // A write: runs to completion even if the user starts something else
+        backgroundTasks.execute(task);
+    }
+
+    private void setRebalanceDisabled(boolean disabled) {
+        rebalancePlanButton.setDisable(disabled);
+        rebalanceButton.setDisable(disabled);
     }
 
     @FXML
@@ -248,6 +383,7 @@ public class MainController implements Initializable {
             stage.setScene(scene);
             stage.setWidth(900);
             stage.setHeight(700);
+            stage.setOnHidden(event -> controller.dispose());
             stage.show();
 
             logger.info("Opened CRUD window for: {}", entityType);
@@ -257,6 +393,29 @@ public class MainController implements Initializable {
         }
     }
 
+    /**
+     * Completeness first, then each fragment's outcome and the execution trace.
+     */
+    private void showTrace(PartialResult<?> result) {
+        StringBuilder text = new StringBuilder(result.describe()).append('\n');
+        result.getFragments().forEach(outcome -> text.append("  ").append(outcome).append('\n'));
+        text.append('\n').append(result.getTrace().format());
+        traceArea.setText(text.toString());
+    }
+
+    private void showTaskError(String title, Throwable error) {
+        String message;
+        if (error instanceof DatabaseException databaseException) {
+            message = databaseException.getDetailedMessage();
+        } else if (error instanceof ValidationException validationException) {
+            message = validationException.getDetailedMessage();
+        } else {
+            logger.error("Background task failed: {}", error.getMessage(), error);
+            message = error.getMessage();
+        }
+        showAlert(Alert.AlertType.ERROR, title, message);
+    }
+
     private void showAlert(Alert.AlertType type, String title, String content) {
         Alert alert = new Alert(type);
         alert.setTitle(title);
@@ -0,0 +1,341 @@
+package com.research.distributed.controller;
+
+import com.research.distributed.dao.Delta;
+import com.research.distributed.dao.Page;
+import com.research.distributed.dao.PageRequest;
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.service.PartialResult;
+import com.research.distributed.service.PendingWrite;
+import javafx.collections.ObservableListBase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Items of a TableView that are fetched from the fragments a page at a time,
+ * as the table asks for them. The list has the size of the whole table; rows
+ * not loaded yet are null until their page arrives, and only the
+ * ui.cachedPages most recently used pages are kept.
+ *
+ * Ordering is done by the database (see PageRequest): sorting the table sets
+ * the order and reloads, instead of sorting the items in memory.
+ *
+ * A refresh reads only the rows changed since the last read (see Delta) and
+ * replaces them in the loaded pages by key. When rows were inserted or deleted,
+ * or a changed row may have moved to another position, it reloads instead.
+ *
+ * Where each page starts on every fragment is remembered once known, so
+ * scrolling on reads one page per fragment. A jump far ahead walks from the
+ * nearest known page in steps of up to WALK_PAGES pages, keeping only where
+ * each step ends.
+ *
+ * Used on the FX thread only; loads run through BackgroundTasks.
+ */
+public class PagedTableSource extends ObservableListBase<Object> {
+    private static final int WALK_PAGES = 20;
+
+    /**
+     * Reads of the table behind the view.
+     */
+    public interface Loader {
+        /**
+         * Rows changed since the per-fragment watermarks; with none, only where each fragment stands.
+         */
+        Delta<?> changes(Map<String, Timestamp> since) throws DatabaseException;
+
+        Page<?> load(PageRequest request) throws DatabaseException;
+    }
+
+    private final String view;
+    private final Loader loader;
+    private final int pageSize;
+    private final int cachedPages;
+    private final BackgroundTasks backgroundTasks;
+
+    private final LinkedHashMap<Integer, List<?>> pages;
+    // Page number -> where that page starts on each fragment
+    private final TreeMap<Integer, Map<String, Integer>> starts = new TreeMap<>();
+    private final Map<Integer, CancellableTask<?>> loading = new HashMap<>();
+
+    private int size;
+    // Where every fragment stood at the last reload or refresh
+    private Map<String, Integer> counts = Map.of();
+    private Map<String, Timestamp> watermarks = Map.of();
+    // Set until a reload asked for has been applied; refreshes reload until then
+    private boolean reloadPending = true;
+    private String orderBy;
+    private boolean descending;
+    // Bumped by every reload; loads started before it are dropped
+    private int generation;
+
+    private BiConsumer<Integer, PartialResult<?>> onPageLoaded = (page, result) -> { };
+    private Consumer<PartialResult<?>> onReloaded = result -> { };
+    private Consumer<PartialResult<?>> onRefreshed = result -> { };
+    private Consumer<Throwable> onFailed = error -> { };
+
+    public PagedTableSource(String view, Loader loader, int pageSize, int cachedPages) {
+        this.view = view;
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.cachedPages = cachedPages;
+        this.backgroundTasks = BackgroundTasks.getInstance();
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<?>> eldest) {
+                return size() > PagedTableSource.this.cachedPages;
+            }
+        };
+    }
+
+    public void setOnPageLoaded(BiConsumer<Integer, PartialResult<?>> onPageLoaded) {
+        this.onPageLoaded = onPageLoaded;
+    }
+
+    public void setOnReloaded(Consumer<PartialResult<?>> onReloaded) {
+        this.onReloaded = onReloaded;
+    }
+
+    /**
+     * Called after a refresh that patched the loaded pages without reloading.
+     */
+    public void setOnRefreshed(Consumer<PartialResult<?>> onRefreshed) {
+        this.onRefreshed = onRefreshed;
+    }
+
+    public void setOnFailed(Consumer<Throwable> onFailed) {
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Order by the column (then by key), or by key only when it is null, and reload if that changed.
+     */
+    public void setOrder(String orderBy, boolean descending) {
+        if (Objects.equals(this.orderBy, orderBy) && this.descending == descending) {
+            return;
+        }
+        this.orderBy = orderBy;
+        this.descending = descending;
+        reload();
+    }
+
+    /**
+     * Count the rows again and drop every loaded page; visible pages load again as the table asks.
+     */
+    public void reload() {
+        reloadPending = true;
+        CancellableTask<PartialResult<Delta<?>>> task = CancellableTask.of(() ->
+                PartialResult.collect("Count " + view, false, () -> loader.changes(Map.of())));
+        task.setOnSucceeded(event -> reset(task.getValue()));
+        task.setOnFailed(event -> onFailed.accept(task.getException()));
+        backgroundTasks.submitLatest(view, task);
+    }
+
+    /**
+     * Read the rows changed since the last reload or refresh and put them in
+     * place of the loaded ones. Inserts and deletes shift rows between pages,
+     * and so may an update when the order is by a column, so then it reloads.
+     */
+    public void refresh() {
+        if (reloadPending) {
+            reload();
+            return;
+        }
+        Map<String, Timestamp> since = watermarks;
+        CancellableTask<PartialResult<Delta<?>>> task = CancellableTask.of(() ->
+                PartialResult.collect("Changes of " + view, false, () -> loader.changes(since)));
+        task.setOnSucceeded(event -> {
+            PartialResult<Delta<?>> result = task.getValue();
+            Delta<?> delta = result.getValue();
+            // A lower count is a delete, a higher one or an equal one with inserted rows an insert
+            if (!delta.getCounts().equals(counts) || delta.getInserted() > 0
+                    || (orderBy != null && delta.getUpdated() > 0)) {
+                reset(result);
+                return;
+            }
+            watermarks = delta.getWatermarks();
+            beginChange();
+            for (Object row : delta.getChanged()) {
+                replace(row);
+            }
+            endChange();
+            onRefreshed.accept(result);
+        });
+        // Nothing left to compare with; read the table again
+        task.setOnFailed(event -> reload());
+        backgroundTasks.submitLatest(view, task);
+    }
+
+    /**
+     * Show the user's own update of a row at once. False when it cannot be done
+     * in place because the row may move; the caller refreshes instead.
+     */
+    public boolean update(Object row) {
+        if (reloadPending || orderBy != null) {
+            return false;
+        }
+        beginChange();
+        replace(row);
+        endChange();
+        return true;
+    }
+
+    private void reset(PartialResult<Delta<?>> result) {
+        Delta<?> delta = result.getValue();
+        reloadPending = false;
+        generation++;
+        cancelLoads();
+        pages.clear();
+        starts.clear();
+        starts.put(0, Collections.emptyMap());
+        counts = delta.getCounts();
+        watermarks = delta.getWatermarks();
+
+        int previousSize = size;
+        size = delta.getTotalCount();
+        beginChange();
+        nextRemove(0, Collections.nCopies(previousSize, null));
+        nextAdd(0, size);
+        endChange();
+        onReloaded.accept(result);
+    }
+
+    private void replace(Object row) {
+        String key = PendingWrite.keyOf(row);
+        for (Map.Entry<Integer, List<?>> entry : pages.entrySet()) {
+            List<?> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (key.equals(PendingWrite.keyOf(rows.get(i)))) {
+                    List<Object> patched = new ArrayList<>(rows);
+                    Object previous = patched.set(i, row);
+                    entry.setValue(patched);
+                    nextSet(entry.getKey() * pageSize + i, previous);
+                    return;
+                }
+            }
+        }
+    }
+
+    public void dispose() {
+        generation++;
+        backgroundTasks.cancel(view);
+        cancelLoads();
+    }
+
+    private void cancelLoads() {
+        for (Integer page : loading.keySet()) {
+            backgroundTasks.cancel(pageView(page));
+        }
+        loading.clear();
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int page = index / pageSize;
+        List<?> rows = pages.get(page);
+        if (rows == null) {
+            request(page);
+            return null;
+        }
+        int offset = index % pageSize;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The row at the index if its page is loaded, without loading it.
+     */
+    public Object peek(int index) {
+        List<?> rows = pages.get(index / pageSize);
+        int offset = index % pageSize;
+        return rows != null && offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    private void request(int page) {
+        if (loading.containsKey(page)) {
+            return;
+        }
+        // The table has scrolled away from pages still loading far off
+        for (Integer other : new ArrayList<>(loading.keySet())) {
+            if (Math.abs(other - page) > cachedPages) {
+                backgroundTasks.cancel(pageView(other));
+                loading.remove(other);
+            }
+        }
+
+        int loadGeneration = generation;
+        Map.Entry<Integer, Map<String, Integer>> known = starts.floorEntry(page);
+        PageRequest from = new PageRequest(known.getValue(), pageSize, orderBy, descending);
+        CancellableTask<PartialResult<Loaded>> task = CancellableTask.of(() ->
+                PartialResult.collect("Page " + page + " of " + view, false,
+                        () -> walk(known.getKey(), from, page)));
+        task.setOnSucceeded(event -> {
+            if (loadGeneration != generation) {
+                return;
+            }
+            loading.remove(page, task);
+            Loaded loaded = task.getValue().getValue();
+            starts.putAll(loaded.starts);
+            pages.put(page, loaded.rows);
+
+            int first = page * pageSize;
+            int last = Math.min(size, first + pageSize);
+            beginChange();
+            for (int i = first; i < last; i++) {
+                nextSet(i, null);
+            }
+            endChange();
+            onPageLoaded.accept(page, task.getValue());
+        });
+        task.setOnFailed(event -> {
+            loading.remove(page, task);
+            onFailed.accept(task.getException());
+        });
+        task.setOnCancelled(event -> loading.remove(page, task));
+        loading.put(page, task);
+        backgroundTasks.submitLatest(pageView(page), task);
+    }
+
+    /**
+     * From a page whose start is known to the requested page; runs on a worker.
+     */
+    private Loaded walk(int fromPage, PageRequest from, int page) throws DatabaseException {
+        Loaded loaded = new Loaded();
+        PageRequest request = from;
+        for (int current = fromPage; current < page; ) {
+            int step = Math.min(WALK_PAGES, page - current);
+            Page<?> skipped = loader.load(request.withLimit(step * pageSize));
+            current += step;
+            loaded.starts.put(current, skipped.getEnd());
+            request = request.after(skipped);
+        }
+        Page<?> result = loader.load(request);
+        loaded.rows = result.getRows();
+        loaded.starts.put(page + 1, result.getEnd());
+        return loaded;
+    }
+
+    private String pageView(int page) {
+        return view + "#" + page;
+    }
+
+    private static final class Loaded {
+        private final Map<Integer, Map<String, Integer>> starts = new HashMap<>();
+        private List<?> rows;
+    }
+}
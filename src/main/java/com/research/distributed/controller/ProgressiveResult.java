@@ -0,0 +1,169 @@
+package com.research.distributed.controller;
+
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentOutcome;
+import com.research.distributed.connection.ResultStream;
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.service.PartialResult;
+import com.research.distributed.service.QueryLoader;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Shows a read while it runs: the rows each fragment returns are added to the
+ * table as soon as that fragment answers, and a label says which fragments are
+ * still running, so the first rows appear after the fastest fragment instead
+ * of the slowest.
+ *
+ * Fragment threads report through ResultStream; their events are applied on the
+ * FX thread in batches, with at most one update queued at a time that applies
+ * everything received since the previous one. The table may be null when only
+ * the progress is shown.
+ */
+public class ProgressiveResult<T> implements ResultStream.Listener {
+    private final ObservableList<T> items;
+    private final Class<T> type;
+    private final Label progress;
+
+    private final Queue<T> arrived = new ConcurrentLinkedQueue<>();
+    private final Map<String, FragmentProgress> fragments = new ConcurrentHashMap<>();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+    // Set on the FX thread once the read is over; later events are ignored
+    private volatile boolean closed;
+
+    public ProgressiveResult(ObservableList<T> items, Class<T> type, Label progress) {
+        this.items = items;
+        this.type = type;
+        this.progress = progress;
+        for (String fragment : FragmentConnectionManager.getInstance().getAllFragments()) {
+            fragments.put(fragment, new FragmentProgress());
+        }
+        if (items != null) {
+            items.clear();
+        }
+        render();
+    }
+
+    /**
+     * Run the read with its events sent here; runs on a worker.
+     */
+    public <V> V run(QueryLoader<V> read) throws DatabaseException {
+        ResultStream.Listener previous = ResultStream.bind(this);
+        try {
+            return read.load();
+        } finally {
+            ResultStream.bind(previous);
+        }
+    }
+
+    /**
+     * Replace the streamed rows with the complete result and show how each fragment fared.
+     */
+    public void complete(List<T> rows, PartialResult<?> result) {
+        closed = true;
+        if (items != null) {
+            items.setAll(rows);
+        }
+        progress.setText(result.getFragments().stream()
+                .map(FragmentOutcome::toString)
+                .collect(Collectors.joining("   ")));
+    }
+
+    /**
+     * Stop showing this read, e.g. when it failed or a newer one replaced it.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void started(String fragment) {
+        fragments.computeIfAbsent(fragment, f -> new FragmentProgress()).running.incrementAndGet();
+        scheduleUpdate();
+    }
+
+    @Override
+    public void finished(String fragment, int rows, boolean failed) {
+        FragmentProgress state = fragments.computeIfAbsent(fragment, f -> new FragmentProgress());
+        state.rows.addAndGet(rows);
+        if (failed) {
+            state.failed = true;
+        }
+        state.running.decrementAndGet();
+        state.done = true;
+        scheduleUpdate();
+    }
+
+    @Override
+    public void rows(String fragment, List<?> rows) {
+        if (items == null) {
+            return;
+        }
+        for (Object row : rows) {
+            if (type.isInstance(row)) {
+                arrived.add(type.cast(row));
+            }
+        }
+        scheduleUpdate();
+    }
+
+    private void scheduleUpdate() {
+        if (!closed && updateQueued.compareAndSet(false, true)) {
+            Platform.runLater(this::applyUpdate);
+        }
+    }
+
+    private void applyUpdate() {
+        updateQueued.set(false);
+        if (closed) {
+            return;
+        }
+        if (items != null) {
+            List<T> batch = new ArrayList<>();
+            for (T row; (row = arrived.poll()) != null; ) {
+                batch.add(row);
+            }
+            items.addAll(batch);
+        }
+        render();
+    }
+
+    /**
+     * e.g. "p1: 12 rows   p2: running..."
+     */
+    private void render() {
+        progress.setText(fragments.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> entry.getKey() + ": " + entry.getValue())
+                .collect(Collectors.joining("   ")));
+    }
+
+    private static final class FragmentProgress {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger rows = new AtomicInteger();
+        private volatile boolean done;
+        private volatile boolean failed;
+
+        @Override
+        public String toString() {
+            if (running.get() > 0) {
+                return "running...";
+            }
+            if (failed) {
+                return "failed";
+            }
+            return done ? rows.get() + " rows" : "waiting";
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package com.research.distributed.dao;
 
+import com.research.distributed.connection.ExecutionTrace;
 import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.FragmentRoute;
+import com.research.distributed.connection.FragmentRouter;
+import com.research.distributed.connection.FragmentTrace;
+import com.research.distributed.connection.QueryCancellation;
+import com.research.distributed.connection.ReadCompleteness;
+import com.research.distributed.connection.ResultStream;
+import com.research.distributed.connection.RetryPolicy;
 import com.research.distributed.connection.TransparencyLevel;
 import com.research.distributed.exception.DatabaseException;
 import com.research.distributed.exception.FragmentException;
+import com.research.distributed.exception.StaleDataException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,21 +22,112 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+// QueryCancellation.Registration resources only deregister their statement on close and are
+// never referenced in the try body, which -Xlint:try would report at every statement
+@SuppressWarnings("try")
 public abstract class BaseDAO<T> {
     protected static final Logger logger = LoggerFactory.getLogger(BaseDAO.class);
+
+    /**
+     * Optimistic concurrency guard for UPDATEs: only matches the row version
+     * (updated_at) the entity was read with. Binds the version twice. The CAST
+     * matters: DATETIME has 1/300 s ticks and never equals a DATETIME2 parameter.
+     */
+    public static final String VERSION_MATCHES =
+            "(updated_at = CAST(? AS DATETIME) OR (updated_at IS NULL AND CAST(? AS DATETIME) IS NULL))";
+
+    // Sortable columns that do not hold text; the others are ordered by code point (see executeQueryPage)
+    private static final Set<String> NON_TEXT_COLUMNS = Set.of("ngaythamgia", "created_at", "updated_at");
+
+    // How far before a watermark changed rows are read again (see executeChangesSince)
+    private static final long WATERMARK_OVERLAP_MILLIS = 1000;
+
     protected final FragmentConnectionManager connectionManager;
+    protected final FragmentRouter router;
+    protected final DataChangeBus changeBus;
+    protected final GroupCommit groupCommit;
+    protected final MissingKeyCache missingKeys;
+    protected final RetryPolicy retryPolicy;
     protected final String baseTableName;
 
     protected BaseDAO(String baseTableName) {
         this.connectionManager = FragmentConnectionManager.getInstance();
+        this.router = FragmentRouter.getInstance();
+        this.changeBus = DataChangeBus.getInstance();
+        this.groupCommit = GroupCommit.getInstance();
+        this.missingKeys = MissingKeyCache.getInstance();
+        this.retryPolicy = RetryPolicy.getInstance();
         this.baseTableName = baseTableName;
     }
 
     protected abstract T mapResultSetToEntity(ResultSet rs) throws SQLException;
 
+    /**
+     * Hook for subclasses that learn something from the fragment a row came from.
+     */
+    protected void onRowLoaded(T entity, String fragment) {
+    }
+
+    /**
+     * The research group a row belongs to, for tables derived from nhomnc; null otherwise.
+     */
+    protected String groupOf(T entity) {
+        return null;
+    }
+
+    /**
+     * Rows of a group that is being migrated onto this fragment belong to the
+     * unfinished copy and are skipped until the switchover commits.
+     */
+    private boolean isVisible(T entity, String fragment) {
+        String groupId = groupOf(entity);
+        return groupId == null || !connectionManager.isMigrationCopy(groupId, fragment);
+    }
+
+    /**
+     * A lookup by key that returns null when the key is on none of the fragments
+     * it probed, and adds each fragment it got an answer from to probed.
+     */
+    @FunctionalInterface
+    protected interface KeyProbe<R> {
+        R find(Set<String> probed) throws DatabaseException;
+    }
+
+    /**
+     * Run a lookup by key through the MissingKeyCache: a key known to be absent
+     * everywhere is answered without touching a fragment, and a miss is remembered
+     * only when every fragment was probed and answered.
+     */
+    protected <R> R findByKey(String key, KeyProbe<R> probe) throws DatabaseException {
+        if (missingKeys.isMissing(baseTableName, key)) {
+            ExecutionTrace.note("%s: %s is known to be absent, no fragment contacted", baseTableName, key);
+            return null;
+        }
+        long generation = missingKeys.generation(baseTableName);
+        ReadCompleteness previous = ReadCompleteness.begin();
+        Set<String> probed = new HashSet<>();
+        R found;
+        boolean complete;
+        try {
+            found = probe.find(probed);
+        } finally {
+            complete = ReadCompleteness.end(previous);
+        }
+        if (found == null && complete && probed.containsAll(connectionManager.getAllFragments())) {
+            missingKeys.recordMissing(baseTableName, key, generation);
+        }
+        return found;
+    }
+
     protected String getTableName(String fragment) {
         return connectionManager.getTableName(baseTableName, fragment);
     }
@@ -37,107 +139,565 @@ public abstract class BaseDAO<T> {
         for (String fragment : connectionManager.getAllFragments()) {
             String tableName = getTableName(fragment);
             String sql = sqlTemplate.replace("{TABLE}", tableName);
+            FragmentTrace trace = ExecutionTrace.statement(fragment, sql);
 
-            try (Connection conn = connectionManager.getConnection(fragment);
-                 PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
-
-                while (rs.next()) {
-                    results.add(mapResultSetToEntity(rs));
-                }
+            try {
+                List<T> fetched = retryPolicy.call(fragment, true, () -> {
+                    List<T> rows = new ArrayList<>();
+                    try (Connection conn = connectionManager.getConnection(fragment)) {
+                        trace.checkedOut();
+                        trace.capturePlan(conn);
+                        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                             QueryCancellation.Registration registration = QueryCancellation.register(stmt);
+                             ResultSet rs = stmt.executeQuery()) {
+                            trace.executed();
+                            while (rs.next()) {
+                                T entity = mapResultSetToEntity(rs);
+                                if (!isVisible(entity, fragment)) {
+                                    continue;
+                                }
+                                onRowLoaded(entity, fragment);
+                                rows.add(entity);
+                            }
+                            trace.finished(rows.size());
+                        }
+                    }
+                    return rows;
+                });
+                ResultStream.publish(fragment, fetched);
+                results.addAll(fetched);
             } catch (SQLException | FragmentException e) {
+                trace.failed(e);
                 logger.error("Error querying fragment {}: {}", fragment, e.getMessage());
                 if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
                     throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
                 }
                 // For location transparency, continue to next fragment
+                ReadCompleteness.markIncomplete();
             }
         }
 
         return results;
     }
 
-    protected List<T> executeQuerySingleFragment(String sqlTemplate, String fragment,
-                                                  Object... params) throws DatabaseException {
-        List<T> results = new ArrayList<>();
-        String tableName = getTableName(fragment);
-        String sql = sqlTemplate.replace("{TABLE}", tableName);
+    /**
+     * One page of the table in a global order (see PageRequest). Every fragment
+     * sorts and returns at most limit rows past its own start, in parallel, and
+     * the sorted streams are merged; the page ends where the merge stopped taking
+     * rows from each fragment.
+     *
+     * Text columns are ordered with a binary collation so the database orders
+     * them exactly as String.compareTo does in the merge.
+     *
+     * Rows of a migration copy are fetched but not shown (see isVisible); they
+     * still move the fragment's start, since OFFSET counts them. A fragment whose
+     * rows were all taken or hidden while it may hold more is read on from there.
+     *
+     * @param sqlTemplate a SELECT of the whole table (with {TABLE}), without ORDER BY
+     * @param sortable    columns the page may be ordered by
+     * @param keyColumns  the primary key, which breaks ties so the order is total
+     */
+    protected Page<T> executeQueryPage(String sqlTemplate, List<String> sortable, List<String> keyColumns,
+                                       PageRequest request, TransparencyLevel level) throws DatabaseException {
+        List<String> order = new ArrayList<>();
+        if (request.getOrderBy() != null) {
+            if (!sortable.contains(request.getOrderBy())) {
+                throw new DatabaseException("Cannot order " + baseTableName + " by " + request.getOrderBy());
+            }
+            order.add(request.getOrderBy());
+        }
+        for (String key : keyColumns) {
+            if (!order.contains(key)) {
+                order.add(key);
+            }
+        }
+        String direction = request.isDescending() ? " DESC" : " ASC";
+        StringBuilder orderBy = new StringBuilder();
+        for (String column : order) {
+            orderBy.append(orderBy.length() == 0 ? " ORDER BY " : ", ").append(column)
+                    .append(NON_TEXT_COLUMNS.contains(column) ? "" : " COLLATE Latin1_General_BIN2")
+                    .append(direction);
+        }
+        String sql = sqlTemplate + orderBy + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        int limit = request.getLimit();
+
+        List<String> fragments = connectionManager.getAllFragments();
+        List<FragmentResult<List<SortedRow<T>>>> fetched = FragmentExecutor.getInstance().invokeAll(fragments,
+                fragment -> fetchSorted(sql.replace("{TABLE}", getTableName(fragment)), fragment, order,
+                        request.getStart(fragment), limit));
+
+        // Heads of the fragments' sorted streams
+        List<List<SortedRow<T>>> streams = new ArrayList<>();
+        for (FragmentResult<List<SortedRow<T>>> result : fetched) {
+            if (result.isSuccess()) {
+                streams.add(result.getValue());
+                continue;
+            }
+            logger.error("Error paging fragment {}: {}", result.getFragment(), result.getError().getMessage());
+            if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                throw new DatabaseException("Error querying fragment " + result.getFragment(),
+                        result.getFragment(), result.getError());
+            }
+            ReadCompleteness.markIncomplete();
+            streams.add(List.of());
+        }
+        // Rows read from each fragment before its current stream, and taken from that stream
+        int[] consumed = new int[streams.size()];
+        int[] taken = new int[streams.size()];
+        List<T> rows = new ArrayList<>(limit);
+        while (rows.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < streams.size(); i++) {
+                List<SortedRow<T>> stream = streams.get(i);
+                while (true) {
+                    while (taken[i] < stream.size() && stream.get(taken[i]).entity == null) {
+                        taken[i]++;
+                    }
+                    // A full window that ran out: the fragment's next row may still come first
+                    if (taken[i] < stream.size() || stream.size() < limit) {
+                        break;
+                    }
+                    String fragment = fragments.get(i);
+                    consumed[i] += taken[i];
+                    taken[i] = 0;
+                    try {
+                        stream = fetchSorted(sql.replace("{TABLE}", getTableName(fragment)), fragment, order,
+                                request.getStart(fragment) + consumed[i], limit);
+                    } catch (SQLException | FragmentException e) {
+                        logger.error("Error paging fragment {}: {}", fragment, e.getMessage());
+                        if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                            throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
+                        }
+                        ReadCompleteness.markIncomplete();
+                        stream = List.of();
+                    }
+                    streams.set(i, stream);
+                }
+                if (taken[i] < stream.size() && (best < 0 || compareSortKeys(
+                        stream.get(taken[i]).key, streams.get(best).get(taken[best]).key,
+                        request.isDescending()) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            rows.add(streams.get(best).get(taken[best]++).entity);
+        }
 
-        try (Connection conn = connectionManager.getConnection(fragment);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Map<String, Integer> end = new HashMap<>();
+        for (int i = 0; i < fragments.size(); i++) {
+            end.put(fragments.get(i), request.getStart(fragments.get(i)) + consumed[i] + taken[i]);
+        }
+        return new Page<>(rows, end);
+    }
+
+    /**
+     * Up to limit rows of one fragment past offset, in order; a row that is not
+     * visible is returned without its entity so it still counts towards the offset.
+     */
+
+    private List<SortedRow<T>> fetchSorted(String sql, String fragment, List<String> order, int offset, int limit)
+            throws SQLException, FragmentException {
+        FragmentTrace trace = ExecutionTrace.statement(fragment, sql).withParams(offset, limit);
+        try {
+            return retryPolicy.call(fragment, true, () -> {
+                List<SortedRow<T>> rows = new ArrayList<>();
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    trace.checkedOut();
+                    trace.capturePlan(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                        stmt.setInt(1, offset);
+                        stmt.setInt(2, limit);
+                        stmt.setFetchSize(limit);
+
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            trace.executed();
+                            while (rs.next()) {
+                                Object[] key = new Object[order.size()];
+                                for (int i = 0; i < key.length; i++) {
+                                    key[i] = rs.getObject(order.get(i));
+                                }
+                                T entity = mapResultSetToEntity(rs);
+                                if (!isVisible(entity, fragment)) {
+                                    rows.add(new SortedRow<>(key, null));
+                                    continue;
+                                }
+                                onRowLoaded(entity, fragment);
+                                rows.add(new SortedRow<>(key, entity));
+                            }
+                            trace.finished(rows.size());
+                        }
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException | FragmentException e) {
+            trace.failed(e);
+            throw e;
+        }
+    }
 
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
+    /**
+     * The order of SQL Server's ORDER BY: NULLs first ascending, last descending.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareSortKeys(Object[] left, Object[] right, boolean descending) {
+        for (int i = 0; i < left.length; i++) {
+            Object a = left[i];
+            Object b = right[i];
+            int cmp;
+            if (a == null || b == null) {
+                cmp = a == b ? 0 : (a == null ? -1 : 1);
+            } else {
+                cmp = ((Comparable) a).compareTo(b);
+            }
+            if (cmp != 0) {
+                return descending ? -cmp : cmp;
             }
+        }
+        return 0;
+    }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    results.add(mapResultSetToEntity(rs));
+    /**
+     * Rows changed on every fragment since its watermark (see Delta), read in
+     * parallel. A fragment without a watermark only reports where it stands.
+     *
+     * Each fragment is summarized before its rows are read, so a row changed in
+     * between is returned now and again next time rather than never. Rows are
+     * read from WATERMARK_OVERLAP_MILLIS before the watermark as well, for
+     * transactions that commit after a later change was seen.
+     *
+     * Under location transparency a fragment that fails is left out of the counts
+     * and watermarks, so a caller comparing counts sees it change when the
+     * fragment leaves or comes back.
+     *
+     * @param sqlTemplate   a SELECT of the whole table (with {TABLE}), without WHERE
+     * @param changedColumn when a row last changed, e.g. COALESCE(updated_at, created_at)
+     */
+    protected Delta<T> executeChangesSince(String sqlTemplate, String changedColumn, Map<String, Timestamp> since,
+                                           TransparencyLevel level) throws DatabaseException {
+        String summarySql = "SELECT COUNT(*), MAX(" + changedColumn + "), "
+                + "SUM(CASE WHEN created_at > CAST(? AS DATETIME) THEN 1 ELSE 0 END), "
+                + "SUM(CASE WHEN " + changedColumn + " > CAST(? AS DATETIME) THEN 1 ELSE 0 END) FROM {TABLE}";
+        String rowsSql = sqlTemplate + " WHERE " + changedColumn + " >= ?";
+
+        List<FragmentResult<Delta<T>>> fetched = FragmentExecutor.getInstance().invokeAll(
+                connectionManager.getAllFragments(), fragment -> fetchChanges(fragment,
+                        summarySql.replace("{TABLE}", getTableName(fragment)),
+                        rowsSql.replace("{TABLE}", getTableName(fragment)), since.get(fragment)));
+
+        List<T> changed = new ArrayList<>();
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Timestamp> watermarks = new HashMap<>();
+        int inserted = 0;
+        int updated = 0;
+        for (FragmentResult<Delta<T>> result : fetched) {
+            if (!result.isSuccess()) {
+                logger.error("Error reading changes of fragment {}: {}", result.getFragment(),
+                        result.getError().getMessage());
+                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                    throw new DatabaseException("Error querying fragment " + result.getFragment(),
+                            result.getFragment(), result.getError());
                 }
+                ReadCompleteness.markIncomplete();
+                continue;
             }
+            Delta<T> delta = result.getValue();
+            changed.addAll(delta.getChanged());
+            counts.putAll(delta.getCounts());
+            watermarks.putAll(delta.getWatermarks());
+            inserted += delta.getInserted();
+            updated += delta.getUpdated();
+        }
+        return new Delta<>(changed, counts, watermarks, inserted, updated);
+    }
+
+    private Delta<T> fetchChanges(String fragment, String summarySql, String rowsSql, Timestamp since)
+            throws SQLException, FragmentException {
+        FragmentTrace summary = ExecutionTrace.statement(fragment, summarySql).withParams(since, since);
+        FragmentTrace trace = since != null ? ExecutionTrace.statement(fragment, rowsSql) : null;
+        Timestamp from = since != null ? new Timestamp(since.getTime() - WATERMARK_OVERLAP_MILLIS) : null;
+        if (trace != null) {
+            trace.withParams(from);
+        }
+        try {
+            return retryPolicy.call(fragment, true, () -> {
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    summary.checkedOut();
+                    int count;
+                    Timestamp watermark;
+                    int inserted;
+                    int updated;
+                    try (PreparedStatement stmt = conn.prepareStatement(summarySql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                        stmt.setTimestamp(1, since);
+                        stmt.setTimestamp(2, since);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            summary.executed();
+                            rs.next();
+                            count = rs.getInt(1);
+                            watermark = rs.getTimestamp(2);
+                            inserted = rs.getInt(3);
+                            updated = rs.getInt(4);
+                            summary.finished(1);
+                        }
+                    }
+
+                    List<T> rows = new ArrayList<>();
+                    if (trace != null) {
+                        trace.checkedOut();
+                        try (PreparedStatement stmt = conn.prepareStatement(rowsSql);
+                             QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                            stmt.setTimestamp(1, from);
+                            try (ResultSet rs = stmt.executeQuery()) {
+                                trace.executed();
+                                while (rs.next()) {
+                                    T entity = mapResultSetToEntity(rs);
+                                    if (!isVisible(entity, fragment)) {
+                                        continue;
+                                    }
+                                    onRowLoaded(entity, fragment);
+                                    rows.add(entity);
+                                }
+                                trace.finished(rows.size());
+                            }
+                        }
+                    }
+
+                    Map<String, Timestamp> watermarks = new HashMap<>();
+                    if (watermark != null) {
+                        watermarks.put(fragment, watermark);
+                    }
+                    return new Delta<>(rows, Map.of(fragment, count), watermarks, inserted, updated);
+                }
+            });
         } catch (SQLException | FragmentException e) {
-            throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
+            summary.failed(e);
+            if (trace != null) {
+                trace.failed(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a parameterized query only on the fragments selected by the router.
+     * Fallback fragments are probed when the targets return nothing.
+     */
+    protected List<T> executeQueryRouted(String sqlTemplate, FragmentRoute route,
+                                         TransparencyLevel level, Object... params)
+            throws DatabaseException {
+        ExecutionTrace.note("%s: %s routed to %s", baseTableName, route.getReason(), route.getTargets());
+        List<T> results = queryFragments(sqlTemplate, route.getTargets(), level, params);
+
+        if (results.isEmpty() && route.hasFallback()) {
+            router.recordFallback(route);
+            ExecutionTrace.note("%s: nothing on %s, probing fallback %s",
+                    baseTableName, route.getTargets(), route.getFallback());
+            results = queryFragments(sqlTemplate, route.getFallback(), level, params);
+            if (!results.isEmpty()) {
+                router.recordFallbackHit(route);
+            }
         }
 
         return results;
     }
 
-    protected int executeUpdateSingleFragment(String sqlTemplate, String fragment,
-                                               Object... params) throws DatabaseException {
+    private List<T> queryFragments(String sqlTemplate, List<String> fragments,
+                                   TransparencyLevel level, Object... params) throws DatabaseException {
+        List<T> results = new ArrayList<>();
+
+        for (String fragment : fragments) {
+            try {
+                results.addAll(executeQuerySingleFragment(sqlTemplate, fragment, params));
+            } catch (DatabaseException e) {
+                logger.error("Error querying fragment {}: {}", fragment, e.getMessage());
+                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                    throw e;
+                }
+                ReadCompleteness.markIncomplete();
+            }
+        }
+
+        return results;
+    }
+
+    protected List<T> executeQuerySingleFragment(String sqlTemplate, String fragment,
+                                                  Object... params) throws DatabaseException {
         String tableName = getTableName(fragment);
         String sql = sqlTemplate.replace("{TABLE}", tableName);
+        FragmentTrace trace = ExecutionTrace.statement(fragment, sql).withParams(params);
 
-        try (Connection conn = connectionManager.getConnection(fragment);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try {
+            return retryPolicy.call(fragment, true, () -> {
+                List<T> results = new ArrayList<>();
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    trace.checkedOut();
+                    trace.capturePlan(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                        for (int i = 0; i < params.length; i++) {
+                            stmt.setObject(i + 1, params[i]);
+                        }
 
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
-            }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            trace.executed();
+                            while (rs.next()) {
+                                T entity = mapResultSetToEntity(rs);
+                                if (!isVisible(entity, fragment)) {
+                                    continue;
+                                }
+                                onRowLoaded(entity, fragment);
+                                results.add(entity);
+                            }
+                            trace.finished(results.size());
+                        }
+                    }
+                }
+                return results;
+            });
+        } catch (SQLException | FragmentException e) {
+            trace.failed(e);
+            throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
+        }
+    }
+
+    /**
+     * The write helpers publish a DataChangeEvent with the given subject once the
+     * statement has succeeded (see DataChangeEvent for what a subject is).
+     */
+    protected int executeUpdateSingleFragment(String sqlTemplate, String fragment, Object subject,
+                                               Object... params) throws DatabaseException {
+        String tableName = getTableName(fragment);
+        String sql = sqlTemplate.replace("{TABLE}", tableName);
 
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = write(fragment, sql, params);
             logger.debug("Updated {} rows in fragment {}", affected, fragment);
+            if (affected > 0) {
+                changeBus.publish(DataChangeEvent.Type.UPDATE, baseTableName, fragment, subject);
+            }
             return affected;
         } catch (SQLException | FragmentException e) {
             throw new DatabaseException("Error updating fragment " + fragment, fragment, e);
         }
     }
 
-    protected void executeInsertSingleFragment(String sqlTemplate, String fragment,
-                                                Object... params) throws DatabaseException {
+    /**
+     * Run a versioned "UPDATE ... OUTPUT inserted.updated_at" (see VERSION_MATCHES).
+     * Returns the row's new version, or null if no row matched key and version.
+     */
+    protected LocalDateTime executeVersionedUpdate(String sqlTemplate, String fragment, Object subject,
+                                                   Object... params) throws DatabaseException {
         String tableName = getTableName(fragment);
         String sql = sqlTemplate.replace("{TABLE}", tableName);
 
-        try (Connection conn = connectionManager.getConnection(fragment);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try {
+            // Not idempotent: once applied, a rerun no longer matches the version read
+            Timestamp[] version = retryPolicy.call(fragment, false, () -> {
+                try (Connection conn = connectionManager.getConnection(fragment);
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
+                    for (int i = 0; i < params.length; i++) {
+                        stmt.setObject(i + 1, params[i]);
+                    }
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? new Timestamp[]{rs.getTimestamp(1)} : null;
+                    }
+                }
+            });
+            if (version == null) {
+                logger.debug("Versioned update matched no row in fragment {}", fragment);
+                return null;
             }
+            changeBus.publish(DataChangeEvent.Type.UPDATE, baseTableName, fragment, subject);
+            return version[0] != null ? version[0].toLocalDateTime() : null;
+        } catch (SQLException | FragmentException e) {
+            throw new DatabaseException("Error updating fragment " + fragment, fragment, e);
+        }
+    }
+
+    /**
+     * A versioned update matched nothing: either the row is gone (0 rows updated)
+     * or someone changed it since it was read.
+     */
+    protected int resolveStaleUpdate(String selectSqlTemplate, String fragment, String description,
+                                     Object... keyParams) throws DatabaseException {
+        List<T> current = executeQuerySingleFragment(selectSqlTemplate, fragment, keyParams);
+        if (current.isEmpty()) {
+            return 0;
+        }
+        throw new StaleDataException(description + " was changed by someone else since it was read",
+                fragment, current.get(0));
+    }
+
+    protected static Timestamp version(LocalDateTime updatedAt) {
+        return updatedAt != null ? Timestamp.valueOf(updatedAt) : null;
+    }
+
+    protected void executeInsertSingleFragment(String sqlTemplate, String fragment, Object subject,
+                                                Object... params) throws DatabaseException {
+        String tableName = getTableName(fragment);
+        String sql = sqlTemplate.replace("{TABLE}", tableName);
 
-            stmt.executeUpdate();
+        try {
+            write(fragment, sql, params);
             logger.debug("Inserted into fragment {}", fragment);
+            changeBus.publish(DataChangeEvent.Type.INSERT, baseTableName, fragment, subject);
         } catch (SQLException | FragmentException e) {
             throw new DatabaseException("Error inserting into fragment " + fragment, fragment, e);
         }
     }
 
-    protected int executeDeleteSingleFragment(String sqlTemplate, String fragment,
+    protected int executeDeleteSingleFragment(String sqlTemplate, String fragment, Object subject,
                                                Object... params) throws DatabaseException {
         String tableName = getTableName(fragment);
         String sql = sqlTemplate.replace("{TABLE}", tableName);
 
-        try (Connection conn = connectionManager.getConnection(fragment);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
-            }
-
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = write(fragment, sql, params);
             logger.debug("Deleted {} rows from fragment {}", affected, fragment);
+            if (affected > 0) {
+                changeBus.publish(DataChangeEvent.Type.DELETE, baseTableName, fragment, subject);
+            }
             return affected;
         } catch (SQLException | FragmentException e) {
             throw new DatabaseException("Error deleting from fragment " + fragment, fragment, e);
         }
     }
+
+    /**
+     * Run a write statement, through group commit when it is enabled. Retried
+     * when SQL Server rolled it back (deadlock victim, lock timeout), not when
+     * the connection broke and it may have been applied.
+     */
+    private int write(String fragment, String sql, Object... params) throws SQLException, FragmentException {
+        return retryPolicy.call(fragment, false, () -> {
+            if (groupCommit.isEnabled()) {
+                return groupCommit.execute(fragment, sql, params);
+            }
+            try (Connection conn = connectionManager.getConnection(fragment);
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setObject(i + 1, params[i]);
+                }
+
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    private static final class SortedRow<T> {
+        private final Object[] key;
+        private final T entity;
+
+        private SortedRow(Object[] key, T entity) {
+            this.key = key;
+            this.entity = entity;
+        }
+    }
 }
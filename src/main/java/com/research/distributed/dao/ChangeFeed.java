@@ -0,0 +1,289 @@
+package com.research.distributed.dao;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.WorkPriority;
+import com.research.distributed.exception.FragmentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes changes made to the fragments outside this process (another app
+ * instance, direct SQL) on the DataChangeBus, so caches and open views see them.
+ *
+ * Every changeFeed.pollMillis each fragment table is polled in one of two modes:
+ * - Change Tracking, if it is enabled on the table
+ *   (ALTER DATABASE ... SET CHANGE_TRACKING = ON; ALTER TABLE ... ENABLE CHANGE_TRACKING):
+ *   one row-level event per changed key since the last version, carrying the row
+ *   as it is now, or its key if it is gone.
+ * - Otherwise a version of the whole table (row count and CHECKSUM_AGG): when it
+ *   moves, one event without a subject, and subscribers reload what they keep of
+ *   that table on that fragment.
+ *
+ * The app's own writes come back through the feed once more; every subscriber
+ * treats a repeated event as a no-op or a refresh.
+ */
+public class ChangeFeed {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+    private static ChangeFeed instance;
+
+    // Base table -> key columns, then the other columns
+    private static final Map<String, List<String>> KEYS = new LinkedHashMap<>();
+    private static final Map<String, List<String>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        KEYS.put("nhomnc", List.of("manhomnc"));
+        COLUMNS.put("nhomnc", List.of("tennhomnc", "tenphong", "created_at", "updated_at"));
+        KEYS.put("nhanvien", List.of("manv"));
+        COLUMNS.put("nhanvien", List.of("hoten", "manhomnc", "created_at", "updated_at"));
+        KEYS.put("dean", List.of("mada"));
+        COLUMNS.put("dean", List.of("tenda", "manhomnc", "created_at", "updated_at"));
+        KEYS.put("thamgia", List.of("manv", "mada"));
+        COLUMNS.put("thamgia", List.of("ngaythamgia", "created_at"));
+    }
+
+    private final FragmentConnectionManager connectionManager;
+    private final FragmentExecutor fragmentExecutor;
+    private final DataChangeBus changeBus;
+    private final boolean enabled;
+    private final long pollMillis;
+    private final ScheduledExecutorService poller;
+    private final Map<String, BaseDAO<?>> daos = new LinkedHashMap<>();
+
+    // table@fragment -> where polling left off
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong rowEvents = new AtomicLong();
+    private final AtomicLong tableEvents = new AtomicLong();
+
+    private ChangeFeed() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+        this.changeBus = DataChangeBus.getInstance();
+        this.enabled = config.isChangeFeedEnabled();
+        this.pollMillis = config.getChangeFeedPollMillis();
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(WorkPriority.BATCH.wrap(runnable), "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        daos.put("nhomnc", new NhomNCDAO());
+        daos.put("nhanvien", new NhanVienDAO());
+        daos.put("dean", new DeAnDAO());
+        daos.put("thamgia", new ThamGiaDAO());
+    }
+
+    public static synchronized ChangeFeed getInstance() {
+        if (instance == null) {
+            instance = new ChangeFeed();
+        }
+        return instance;
+    }
+
+    /**
+     * Record where every table stands now (blocking) and start polling.
+     */
+    public void start() {
+        if (!enabled) {
+            logger.info("Change feed disabled");
+            return;
+        }
+        for (FragmentResult<Map<String, Cursor>> result : fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(), this::openCursors)) {
+            if (!result.isSuccess()) {
+                // Retried on every poll until the fragment answers
+                logger.warn("Change feed cannot open fragment {}: {}", result.getFragment(),
+                        result.getError().getMessage());
+                continue;
+            }
+            cursors.putAll(result.getValue());
+        }
+        long tracked = cursors.values().stream().filter(cursor -> cursor.tracked).count();
+        logger.info("Change feed polling {} tables every {} ms ({} with Change Tracking)",
+                cursors.size(), pollMillis, tracked);
+        poller.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        polls.incrementAndGet();
+        for (FragmentResult<List<DataChangeEvent>> result : fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(), this::pollFragment)) {
+            if (!result.isSuccess()) {
+                logger.debug("Change feed poll of {} failed: {}", result.getFragment(),
+                        result.getError().getMessage());
+                continue;
+            }
+            for (DataChangeEvent event : result.getValue()) {
+                if (event.hasSubject()) {
+                    rowEvents.incrementAndGet();
+                } else {
+                    tableEvents.incrementAndGet();
+                }
+                changeBus.publish(event);
+            }
+        }
+    }
+
+    private Map<String, Cursor> openCursors(String fragment) throws SQLException, FragmentException {
+        Map<String, Cursor> opened = new LinkedHashMap<>();
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            for (String table : KEYS.keySet()) {
+                opened.put(table + "@" + fragment, open(conn, table, fragment));
+            }
+        }
+        return opened;
+    }
+
+    private Cursor open(Connection conn, String table, String fragment) throws SQLException {
+        Cursor cursor = new Cursor();
+        String sql = "SELECT CHANGE_TRACKING_CURRENT_VERSION(), CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID(?))";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, connectionManager.getTableName(table, fragment));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                rs.getLong(2);
+                // The minimum valid version is NULL when the table is not tracked
+                cursor.tracked = !rs.wasNull();
+                cursor.version = rs.getLong(1);
+            }
+        }
+        if (!cursor.tracked) {
+            cursor.checksum = readChecksum(conn, table, fragment);
+        }
+        return cursor;
+    }
+
+    private List<DataChangeEvent> pollFragment(String fragment) throws SQLException, FragmentException {
+        List<DataChangeEvent> events = new ArrayList<>();
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            for (String table : KEYS.keySet()) {
+                String name = table + "@" + fragment;
+                Cursor cursor = cursors.get(name);
+                if (cursor == null) {
+                    // The fragment was down at start; begin from now
+                    cursors.put(name, open(conn, table, fragment));
+                    events.add(new DataChangeEvent(DataChangeEvent.Type.UPDATE, table, fragment));
+                } else if (cursor.tracked) {
+                    pollTracked(conn, table, fragment, cursor, events);
+                } else {
+                    List<Long> checksum = readChecksum(conn, table, fragment);
+                    if (!checksum.equals(cursor.checksum)) {
+                        cursor.checksum = checksum;
+                        events.add(new DataChangeEvent(DataChangeEvent.Type.UPDATE, table, fragment));
+                    }
+                }
+            }
+        }
+        return events;
+    }
+
+    private void pollTracked(Connection conn, String table, String fragment, Cursor cursor,
+                             List<DataChangeEvent> events) throws SQLException {
+        String tableName = connectionManager.getTableName(table, fragment);
+        long current;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT CHANGE_TRACKING_CURRENT_VERSION(), CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID(?))")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                current = rs.getLong(1);
+                long minValid = rs.getLong(2);
+                if (rs.wasNull() || cursor.version < minValid) {
+                    // Tracking was switched off or cleaned up past our version: changes are lost
+                    logger.warn("Change Tracking history of {} no longer covers version {}, reloading",
+                            tableName, cursor.version);
+                    Cursor reopened = open(conn, table, fragment);
+                    cursor.tracked = reopened.tracked;
+                    cursor.version = reopened.version;
+                    cursor.checksum = reopened.checksum;
+                    events.add(new DataChangeEvent(DataChangeEvent.Type.UPDATE, table, fragment));
+                    return;
+                }
+            }
+        }
+        if (current == cursor.version) {
+            return;
+        }
+
+        List<String> keys = KEYS.get(table);
+        StringBuilder select = new StringBuilder("SELECT ct.SYS_CHANGE_OPERATION");
+        for (String key : keys) {
+            select.append(", ct.").append(key).append(" AS ").append(key);
+        }
+        for (String column : COLUMNS.get(table)) {
+            select.append(", t.").append(column).append(" AS ").append(column);
+        }
+        select.append(", CASE WHEN t.").append(keys.get(0)).append(" IS NULL THEN 0 ELSE 1 END AS row_exists")
+                .append(" FROM CHANGETABLE(CHANGES ").append(tableName).append(", ?) AS ct")
+                .append(" LEFT JOIN ").append(tableName).append(" t ON ");
+        for (int i = 0; i < keys.size(); i++) {
+            select.append(i > 0 ? " AND " : "").append("t.").append(keys.get(i)).append(" = ct.").append(keys.get(i));
+        }
+        select.append(" WHERE ct.SYS_CHANGE_VERSION <= ?");
+
+        BaseDAO<?> dao = daos.get(table);
+        try (PreparedStatement stmt = conn.prepareStatement(select.toString())) {
+            stmt.setLong(1, cursor.version);
+            stmt.setLong(2, current);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // The join sees the row as it is now, which may be past the logged operation
+                    boolean exists = rs.getInt("row_exists") == 1;
+                    DataChangeEvent.Type type;
+                    if (!exists) {
+                        type = DataChangeEvent.Type.DELETE;
+                    } else {
+                        type = "U".equals(rs.getString(1)) ? DataChangeEvent.Type.UPDATE : DataChangeEvent.Type.INSERT;
+                    }
+                    // For deletes only the key columns are set, as on the DAO delete paths
+                    events.add(new DataChangeEvent(type, table, fragment, dao.mapResultSetToEntity(rs)));
+                }
+            }
+        }
+        cursor.version = current;
+    }
+
+    private List<Long> readChecksum(Connection conn, String table, String fragment) throws SQLException {
+        String sql = String.format("SELECT COUNT(*), CHECKSUM_AGG(BINARY_CHECKSUM(*)) FROM %s",
+                connectionManager.getTableName(table, fragment));
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return Arrays.asList(rs.getLong(1), rs.getLong(2));
+        }
+    }
+
+    public void logStats() {
+        logger.info("Change feed stats: {} polls, {} row events, {} table events",
+                polls.get(), rowEvents.get(), tableEvents.get());
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    private static final class Cursor {
+        private boolean tracked;
+        private long version;
+        private List<Long> checksum;
+    }
+}
@@ -0,0 +1,56 @@
+package com.research.distributed.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes DataChangeEvents from the DAO write paths and migrations to
+ * anything that keeps derived state, such as result caches.
+ */
+public class DataChangeBus {
+    private static final Logger logger = LoggerFactory.getLogger(DataChangeBus.class);
+    private static DataChangeBus instance;
+
+    private final List<DataChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private DataChangeBus() {
+    }
+
+    public static synchronized DataChangeBus getInstance() {
+        if (instance == null) {
+            instance = new DataChangeBus();
+        }
+        return instance;
+    }
+
+    public void subscribe(DataChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(DataChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(DataChangeEvent event) {
+        logger.debug("Publishing {}", event);
+        for (DataChangeListener listener : listeners) {
+            try {
+                listener.onDataChanged(event);
+            } catch (RuntimeException e) {
+                // A broken listener must not fail a write that has already been committed
+                logger.error("Data change listener failed for {}: {}", event, e.getMessage(), e);
+            }
+        }
+    }
+
+    public void publish(DataChangeEvent.Type type, String table, String fragment) {
+        publish(new DataChangeEvent(type, table, fragment));
+    }
+
+    public void publish(DataChangeEvent.Type type, String table, String fragment, Object subject) {
+        publish(new DataChangeEvent(type, table, fragment, subject));
+    }
+}
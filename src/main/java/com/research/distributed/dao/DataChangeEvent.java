@@ -0,0 +1,68 @@
+package com.research.distributed.dao;
+
+/**
+ * A write to one base table on one fragment. A null fragment means "any fragment".
+ *
+ * The subject, when present, is the entity that was written, or for deletes an
+ * entity carrying the key columns of the WHERE clause (null fields match anything).
+ * Events without a subject only say that something in the table changed.
+ */
+public class DataChangeEvent {
+
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE,
+        MIGRATE
+    }
+
+    private final Type type;
+    private final String table;
+    private final String fragment;
+    private final Object subject;
+
+    public DataChangeEvent(Type type, String table, String fragment) {
+        this(type, table, fragment, null);
+    }
+
+    public DataChangeEvent(Type type, String table, String fragment, Object subject) {
+        this.type = type;
+        this.table = table;
+        this.fragment = fragment;
+        this.subject = subject;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public Object getSubject() {
+        return subject;
+    }
+
+    public boolean hasSubject() {
+        return subject != null;
+    }
+
+    public boolean affects(String table, String fragment) {
+        return this.table.equals(table) && (this.fragment == null || this.fragment.equals(fragment));
+    }
+
+    @Override
+    public String toString() {
+        return "DataChangeEvent{" +
+                "type=" + type +
+                ", table='" + table + '\'' +
+                ", fragment='" + fragment + '\'' +
+                ", subject=" + subject +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package com.research.distributed.dao;
+
+/**
+ * Receives DataChangeEvents after the write they describe has succeeded.
+ */
+@FunctionalInterface
+public interface DataChangeListener {
+    void onDataChanged(DataChangeEvent event);
+}
@@ -6,9 +6,16 @@ import com.research.distributed.model.DeAn;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public class DeAnDAO extends BaseDAO<DeAn> {
+    private static final List<String> KEY = List.of("mada");
+    // When a row last changed, for incremental reads
+    private static final String CHANGED = "COALESCE(updated_at, created_at)";
+    private static final List<String> SORTABLE = List.of("mada", "tenda", "manhomnc");
 
     public DeAnDAO() {
         super("dean");
@@ -33,6 +40,11 @@ public class DeAnDAO extends BaseDAO<DeAn> {
         return deAn;
     }
 
+    @Override
+    protected String groupOf(DeAn entity) {
+        return entity.getMaHomnc();
+    }
+
     private boolean hasColumn(ResultSet rs, String columnName) {
         try {
             rs.findColumn(columnName);
@@ -47,17 +59,37 @@ public class DeAnDAO extends BaseDAO<DeAn> {
         return executeQueryAllFragments(sql, level);
     }
 
+    /**
+     * One page of the table, in key order or ordered by one of SORTABLE.
+     */
+    public Page<DeAn> findPage(PageRequest request, TransparencyLevel level) throws DatabaseException {
+        String sql = "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE}";
+        return executeQueryPage(sql, SORTABLE, KEY, request, level);
+    }
+
+    /**
+     * Rows changed since the per-fragment watermarks, and where each fragment stands (see Delta).
+     */
+    public Delta<DeAn> findChangesSince(Map<String, Timestamp> since, TransparencyLevel level)
+            throws DatabaseException {
+        String sql = "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE}";
+        return executeChangesSince(sql, CHANGED, since, level);
+    }
+
     public DeAn findById(String maDa, TransparencyLevel level) throws DatabaseException {
-        // Search all fragments
-        for (String fragment : connectionManager.getAllFragments()) {
-            List<DeAn> results = executeQuerySingleFragment(
-                    "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE} WHERE mada = ?",
-                    fragment, maDa);
-            if (!results.isEmpty()) {
-                return results.get(0);
+        return findByKey(maDa, probed -> {
+            // Search all fragments
+            for (String fragment : connectionManager.getAllFragments()) {
+                List<DeAn> results = executeQuerySingleFragment(
+                        "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE} WHERE mada = ?",
+                        fragment, maDa);
+                probed.add(fragment);
+                if (!results.isEmpty()) {
+                    return results.get(0);
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     public List<DeAn> findByGroup(String maHomnc, TransparencyLevel level) throws DatabaseException {
@@ -68,9 +100,10 @@ public class DeAnDAO extends BaseDAO<DeAn> {
                     fragment, maHomnc);
         }
 
-        // Search all fragments
-        String sql = "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE} WHERE manhomnc = '" + maHomnc + "'";
-        return executeQueryAllFragments(sql, level);
+        // Location transparency: derived fragmentation puts all of a group's rows with the group
+        return executeQueryRouted(
+                "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
+                router.routeByGroup(maHomnc), level, maHomnc);
     }
 
     public void insert(DeAn deAn) throws DatabaseException {
@@ -82,6 +115,7 @@ public class DeAnDAO extends BaseDAO<DeAn> {
         executeInsertSingleFragment(
                 "INSERT INTO {TABLE} (mada, tenda, manhomnc) VALUES (?, ?, ?)",
                 fragment,
+                deAn,
                 deAn.getMaDa(),
                 deAn.getTenDa(),
                 deAn.getMaHomnc()
@@ -94,13 +128,24 @@ public class DeAnDAO extends BaseDAO<DeAn> {
             throw new DatabaseException("Cannot determine fragment for group: " + deAn.getMaHomnc());
         }
 
-        return executeUpdateSingleFragment(
-                "UPDATE {TABLE} SET tenda = ?, manhomnc = ?, updated_at = GETDATE() WHERE mada = ?",
+        LocalDateTime version = executeVersionedUpdate(
+                "UPDATE {TABLE} SET tenda = ?, manhomnc = ?, updated_at = GETDATE() " +
+                        "OUTPUT inserted.updated_at WHERE mada = ? AND " + VERSION_MATCHES,
                 fragment,
+                deAn,
                 deAn.getTenDa(),
                 deAn.getMaHomnc(),
-                deAn.getMaDa()
+                deAn.getMaDa(),
+                version(deAn.getUpdatedAt()),
+                version(deAn.getUpdatedAt())
         );
+        if (version == null) {
+            return resolveStaleUpdate(
+                    "SELECT mada, tenda, manhomnc, created_at, updated_at FROM {TABLE} WHERE mada = ?",
+                    fragment, "Project " + deAn.getMaDa(), deAn.getMaDa());
+        }
+        deAn.setUpdatedAt(version);
+        return 1;
     }
 
     public int delete(String maDa) throws DatabaseException {
@@ -109,20 +154,23 @@ public class DeAnDAO extends BaseDAO<DeAn> {
         for (String fragment : connectionManager.getAllFragments()) {
             total += executeDeleteSingleFragment(
                     "DELETE FROM {TABLE} WHERE mada = ?",
-                    fragment, maDa);
+                    fragment, new DeAn(maDa, null, null), maDa);
         }
         return total;
     }
 
     public String getFragmentForProject(String maDa) throws DatabaseException {
-        for (String fragment : connectionManager.getAllFragments()) {
-            List<DeAn> results = executeQuerySingleFragment(
-                    "SELECT mada, tenda, manhomnc FROM {TABLE} WHERE mada = ?",
-                    fragment, maDa);
-            if (!results.isEmpty()) {
-                return fragment;
+        return findByKey(maDa, probed -> {
+            for (String fragment : connectionManager.getAllFragments()) {
+                List<DeAn> results = executeQuerySingleFragment(
+                        "SELECT mada, tenda, manhomnc FROM {TABLE} WHERE mada = ?",
+                        fragment, maDa);
+                probed.add(fragment);
+                if (!results.isEmpty()) {
+                    return fragment;
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 }
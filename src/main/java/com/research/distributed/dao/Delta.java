@@ -0,0 +1,63 @@
+package com.research.distributed.dao;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What changed in a table since a set of per-fragment watermarks: the rows
+ * updated or inserted since then, and where each fragment stands now (its row
+ * count and new watermark, and how many rows changed and were inserted after
+ * the old one).
+ *
+ * The rows may include some changed shortly before a watermark (see
+ * BaseDAO.executeChangesSince), which the counts leave out. Deletes leave no
+ * row behind, so they only show as a lower row count.
+ */
+public class Delta<T> {
+    private final List<T> changed;
+    private final Map<String, Integer> counts;
+    private final Map<String, Timestamp> watermarks;
+    private final int inserted;
+    private final int updated;
+
+    public Delta(List<T> changed, Map<String, Integer> counts, Map<String, Timestamp> watermarks,
+                 int inserted, int updated) {
+        this.changed = changed;
+        this.counts = Collections.unmodifiableMap(counts);
+        this.watermarks = Collections.unmodifiableMap(watermarks);
+        this.inserted = inserted;
+        this.updated = updated;
+    }
+
+    public List<T> getChanged() {
+        return changed;
+    }
+
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    public int getTotalCount() {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Latest change on each fragment, by that fragment's clock; absent for an empty table.
+     */
+    public Map<String, Timestamp> getWatermarks() {
+        return watermarks;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Rows changed after the watermarks, inserted ones included.
+     */
+    public int getUpdated() {
+        return updated;
+    }
+}
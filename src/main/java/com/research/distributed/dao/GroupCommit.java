@@ -0,0 +1,242 @@
+package com.research.distributed.dao;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.exception.FragmentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit for small writes. Writes to the same fragment that arrive within
+ * groupCommit.windowMillis of each other (or until groupCommit.maxRows are
+ * waiting) share one connection checkout, one JDBC batch per statement and one
+ * transaction commit. Every caller still blocks until its own write has committed
+ * and gets its own update count or error: if the batch fails, its writes are
+ * retried one by one so a bad row only fails its own caller.
+ */
+public class GroupCommit {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommit.class);
+    private static GroupCommit instance;
+
+    private final FragmentConnectionManager connectionManager;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxRows;
+    private final ScheduledExecutorService committer;
+
+    private final Map<String, Batch> open = new HashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong isolated = new AtomicLong();
+
+    private GroupCommit() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.enabled = config.isGroupCommitEnabled();
+        this.windowMillis = config.getGroupCommitWindowMillis();
+        this.maxRows = config.getGroupCommitMaxRows();
+        AtomicInteger counter = new AtomicInteger();
+        this.committer = Executors.newScheduledThreadPool(config.getGroupCommitThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "group-commit-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized GroupCommit getInstance() {
+        if (instance == null) {
+            instance = new GroupCommit();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a write for the fragment's current batch and wait until it has committed.
+     *
+     * @return the statement's update count
+     */
+    public int execute(String fragment, String sql, Object... params) throws SQLException, FragmentException {
+        Write write = new Write(sql, params);
+        Batch full = null;
+        synchronized (open) {
+            Batch batch = open.get(fragment);
+            if (batch == null) {
+                batch = new Batch(fragment);
+                open.put(fragment, batch);
+                Batch window = batch;
+                committer.schedule(() -> close(window), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.writes.add(write);
+            if (batch.writes.size() >= maxRows) {
+                open.remove(fragment);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            Batch batch = full;
+            committer.execute(() -> commit(batch));
+        }
+
+        try {
+            return write.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof FragmentException fragmentException) {
+                throw fragmentException;
+            }
+            throw new SQLException("Group commit failed", e.getCause());
+        }
+    }
+
+    /**
+     * The batch's window is over; commit it unless it already filled up and went.
+     */
+    private void close(Batch batch) {
+        synchronized (open) {
+            if (open.get(batch.fragment) != batch) {
+                return;
+            }
+            open.remove(batch.fragment);
+        }
+        commit(batch);
+    }
+
+    private void commit(Batch batch) {
+        batches.incrementAndGet();
+        writes.addAndGet(batch.writes.size());
+        try (Connection conn = connectionManager.getConnection(batch.fragment)) {
+            conn.setAutoCommit(false);
+            int[] counts;
+            try {
+                counts = executeBatched(conn, batch.writes);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+                if (batch.writes.size() == 1) {
+                    batch.writes.get(0).result.completeExceptionally(e);
+                } else {
+                    executeOneByOne(conn, batch.writes);
+                }
+                return;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                // Drivers may report a batched statement's count as SUCCESS_NO_INFO
+                batch.writes.get(i).result.complete(counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i]);
+            }
+            logger.debug("Group commit of {} writes on fragment {}", counts.length, batch.fragment);
+        } catch (SQLException | FragmentException | RuntimeException e) {
+            for (Write write : batch.writes) {
+                write.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Run the writes in order, with consecutive writes of the same statement in one JDBC batch.
+     */
+    private int[] executeBatched(Connection conn, List<Write> batch) throws SQLException {
+        int[] counts = new int[batch.size()];
+        int start = 0;
+        while (start < batch.size()) {
+            String sql = batch.get(start).sql;
+            int end = start;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                while (end < batch.size() && batch.get(end).sql.equals(sql)) {
+                    bind(stmt, batch.get(end).params);
+                    stmt.addBatch();
+                    end++;
+                }
+                System.arraycopy(stmt.executeBatch(), 0, counts, start, end - start);
+            }
+            start = end;
+        }
+        return counts;
+    }
+
+    private void executeOneByOne(Connection conn, List<Write> batch) {
+        isolated.incrementAndGet();
+        for (Write write : batch) {
+            try (PreparedStatement stmt = conn.prepareStatement(write.sql)) {
+                bind(stmt, write.params);
+                write.result.complete(stmt.executeUpdate());
+            } catch (SQLException e) {
+                write.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+
+    public void logStats() {
+        long batchCount = batches.get();
+        logger.info("Group commit stats: {} writes in {} transactions (avg {}), {} batches retried row by row",
+                writes.get(), batchCount,
+                batchCount > 0 ? String.format("%.1f", (double) writes.get() / batchCount) : "-",
+                isolated.get());
+    }
+
+    public void shutdown() {
+        // Let pending windows close so no caller is left waiting
+        committer.shutdown();
+        try {
+            if (!committer.awaitTermination(5, TimeUnit.SECONDS)) {
+                committer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            committer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Batch {
+        private final String fragment;
+        private final List<Write> writes = new ArrayList<>();
+
+        private Batch(String fragment) {
+            this.fragment = fragment;
+        }
+    }
+
+    private static final class Write {
+        private final String sql;
+        private final Object[] params;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private Write(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+}
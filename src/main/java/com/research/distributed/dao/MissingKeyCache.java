@@ -0,0 +1,128 @@
+package com.research.distributed.dao;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.model.DeAn;
+import com.research.distributed.model.NhanVien;
+import com.research.distributed.model.NhomNC;
+import com.research.distributed.model.ThamGia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Negative cache for key lookups: remembers keys that every fragment confirmed
+ * absent, so checks like "does this ID already exist?" before an insert do not
+ * probe all fragments again.
+ *
+ * Bounded (LRU, missingKeys.maxEntries) and kept honest by the DataChangeBus: an
+ * insert or update of a key forgets it, and an event without a subject (a
+ * migration, a change seen by the ChangeFeed) forgets the whole table. A probe
+ * that overlapped such an event, or skipped a failed fragment, is not recorded.
+ */
+public class MissingKeyCache {
+    private static final Logger logger = LoggerFactory.getLogger(MissingKeyCache.class);
+    private static MissingKeyCache instance;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    // "table|key" in access order
+    private final LinkedHashMap<String, Boolean> missing;
+    // Bumped by every event that may have added keys to the table
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private MissingKeyCache() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.enabled = config.isMissingKeysEnabled();
+        this.maxEntries = config.getMissingKeysMaxEntries();
+        this.missing = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        DataChangeBus.getInstance().subscribe(this::onDataChanged);
+    }
+
+    public static synchronized MissingKeyCache getInstance() {
+        if (instance == null) {
+            instance = new MissingKeyCache();
+        }
+        return instance;
+    }
+
+    public synchronized boolean isMissing(String table, String key) {
+        if (!enabled || !missing.containsKey(table + "|" + key)) {
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Take before probing the fragments and hand to {@link #recordMissing}.
+     */
+    public synchronized long generation(String table) {
+        return generations.getOrDefault(table, 0L);
+    }
+
+    public synchronized void recordMissing(String table, String key, long startGeneration) {
+        if (enabled && generation(table) == startGeneration) {
+            missing.put(table + "|" + key, Boolean.TRUE);
+            recorded.incrementAndGet();
+        }
+    }
+
+    private synchronized void onDataChanged(DataChangeEvent event) {
+        if (event.getType() == DataChangeEvent.Type.DELETE) {
+            return;
+        }
+        String table = event.getTable();
+        generations.merge(table, 1L, Long::sum);
+
+        if (event.getType() != DataChangeEvent.Type.MIGRATE && event.hasSubject()) {
+            String key = keyOf(event.getSubject());
+            if (key != null) {
+                if (missing.remove(table + "|" + key) != null) {
+                    invalidations.incrementAndGet();
+                }
+                return;
+            }
+        }
+        int before = missing.size();
+        missing.keySet().removeIf(entry -> entry.startsWith(table + "|"));
+        invalidations.addAndGet(before - missing.size());
+    }
+
+    /**
+     * The lookup key of a model object, as the DAOs pass it; ThamGia is "manv|mada".
+     */
+    static String keyOf(Object entity) {
+        if (entity instanceof NhomNC group) {
+            return group.getMaHomnc();
+        } else if (entity instanceof NhanVien employee) {
+            return employee.getMaNv();
+        } else if (entity instanceof DeAn project) {
+            return project.getMaDa();
+        } else if (entity instanceof ThamGia participation) {
+            return participation.getMaNv() + "|" + participation.getMaDa();
+        }
+        return null;
+    }
+
+    public void logStats() {
+        int size;
+        synchronized (this) {
+            size = missing.size();
+        }
+        logger.info("Missing key cache stats: {} keys, {} hits, {} recorded, {} invalidated",
+                size, hits.get(), recorded.get(), invalidations.get());
+    }
+}
@@ -6,9 +6,16 @@ import com.research.distributed.model.NhanVien;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public class NhanVienDAO extends BaseDAO<NhanVien> {
+    private static final List<String> KEY = List.of("manv");
+    // When a row last changed, for incremental reads
+    private static final String CHANGED = "COALESCE(updated_at, created_at)";
+    private static final List<String> SORTABLE = List.of("manv", "hoten", "manhomnc");
 
     public NhanVienDAO() {
         super("nhanvien");
@@ -33,6 +40,11 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
         return nhanVien;
     }
 
+    @Override
+    protected String groupOf(NhanVien entity) {
+        return entity.getMaHomnc();
+    }
+
     private boolean hasColumn(ResultSet rs, String columnName) {
         try {
             rs.findColumn(columnName);
@@ -47,17 +59,37 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
         return executeQueryAllFragments(sql, level);
     }
 
+    /**
+     * One page of the table, in key order or ordered by one of SORTABLE.
+     */
+    public Page<NhanVien> findPage(PageRequest request, TransparencyLevel level) throws DatabaseException {
+        String sql = "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE}";
+        return executeQueryPage(sql, SORTABLE, KEY, request, level);
+    }
+
+    /**
+     * Rows changed since the per-fragment watermarks, and where each fragment stands (see Delta).
+     */
+    public Delta<NhanVien> findChangesSince(Map<String, Timestamp> since, TransparencyLevel level)
+            throws DatabaseException {
+        String sql = "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE}";
+        return executeChangesSince(sql, CHANGED, since, level);
+    }
+
     public NhanVien findById(String maNv, TransparencyLevel level) throws DatabaseException {
-        // Search all fragments since we can't determine fragment from employee ID
-        for (String fragment : connectionManager.getAllFragments()) {
-            List<NhanVien> results = executeQuerySingleFragment(
-                    "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE} WHERE manv = ?",
-                    fragment, maNv);
-            if (!results.isEmpty()) {
-                return results.get(0);
+        return findByKey(maNv, probed -> {
+            // Search all fragments since we can't determine fragment from employee ID
+            for (String fragment : connectionManager.getAllFragments()) {
+                List<NhanVien> results = executeQuerySingleFragment(
+                        "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE} WHERE manv = ?",
+                        fragment, maNv);
+                probed.add(fragment);
+                if (!results.isEmpty()) {
+                    return results.get(0);
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     public List<NhanVien> findByGroup(String maHomnc, TransparencyLevel level) throws DatabaseException {
@@ -68,9 +100,10 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
                     fragment, maHomnc);
         }
 
-        // Search all fragments for location transparency
-        String sql = "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE} WHERE manhomnc = '" + maHomnc + "'";
-        return executeQueryAllFragments(sql, level);
+        // Location transparency: derived fragmentation puts all of a group's rows with the group
+        return executeQueryRouted(
+                "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
+                router.routeByGroup(maHomnc), level, maHomnc);
     }
 
     public void insert(NhanVien nhanVien) throws DatabaseException {
@@ -82,6 +115,7 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
         executeInsertSingleFragment(
                 "INSERT INTO {TABLE} (manv, hoten, manhomnc) VALUES (?, ?, ?)",
                 fragment,
+                nhanVien,
                 nhanVien.getMaNv(),
                 nhanVien.getHoTen(),
                 nhanVien.getMaHomnc()
@@ -94,13 +128,24 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
             throw new DatabaseException("Cannot determine fragment for group: " + nhanVien.getMaHomnc());
         }
 
-        return executeUpdateSingleFragment(
-                "UPDATE {TABLE} SET hoten = ?, manhomnc = ?, updated_at = GETDATE() WHERE manv = ?",
+        LocalDateTime version = executeVersionedUpdate(
+                "UPDATE {TABLE} SET hoten = ?, manhomnc = ?, updated_at = GETDATE() " +
+                        "OUTPUT inserted.updated_at WHERE manv = ? AND " + VERSION_MATCHES,
                 fragment,
+                nhanVien,
                 nhanVien.getHoTen(),
                 nhanVien.getMaHomnc(),
-                nhanVien.getMaNv()
+                nhanVien.getMaNv(),
+                version(nhanVien.getUpdatedAt()),
+                version(nhanVien.getUpdatedAt())
         );
+        if (version == null) {
+            return resolveStaleUpdate(
+                    "SELECT manv, hoten, manhomnc, created_at, updated_at FROM {TABLE} WHERE manv = ?",
+                    fragment, "Employee " + nhanVien.getMaNv(), nhanVien.getMaNv());
+        }
+        nhanVien.setUpdatedAt(version);
+        return 1;
     }
 
     public int delete(String maNv) throws DatabaseException {
@@ -109,20 +154,23 @@ public class NhanVienDAO extends BaseDAO<NhanVien> {
         for (String fragment : connectionManager.getAllFragments()) {
             total += executeDeleteSingleFragment(
                     "DELETE FROM {TABLE} WHERE manv = ?",
-                    fragment, maNv);
+                    fragment, new NhanVien(maNv, null, null), maNv);
         }
         return total;
     }
 
     public String getFragmentForEmployee(String maNv) throws DatabaseException {
-        for (String fragment : connectionManager.getAllFragments()) {
-            List<NhanVien> results = executeQuerySingleFragment(
-                    "SELECT manv, hoten, manhomnc FROM {TABLE} WHERE manv = ?",
-                    fragment, maNv);
-            if (!results.isEmpty()) {
-                return fragment;
+        return findByKey(maNv, probed -> {
+            for (String fragment : connectionManager.getAllFragments()) {
+                List<NhanVien> results = executeQuerySingleFragment(
+                        "SELECT manv, hoten, manhomnc FROM {TABLE} WHERE manv = ?",
+                        fragment, maNv);
+                probed.add(fragment);
+                if (!results.isEmpty()) {
+                    return fragment;
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 }
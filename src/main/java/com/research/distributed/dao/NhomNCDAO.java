@@ -1,14 +1,22 @@
 package com.research.distributed.dao;
 
+import com.research.distributed.connection.FragmentRoute;
 import com.research.distributed.connection.TransparencyLevel;
 import com.research.distributed.exception.DatabaseException;
 import com.research.distributed.model.NhomNC;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public class NhomNCDAO extends BaseDAO<NhomNC> {
+    private static final List<String> KEY = List.of("manhomnc");
+    // When a row last changed, for incremental reads
+    private static final String CHANGED = "COALESCE(updated_at, created_at)";
+    private static final List<String> SORTABLE = List.of("manhomnc", "tennhomnc", "tenphong");
 
     public NhomNCDAO() {
         super("nhomnc");
@@ -33,6 +41,17 @@ public class NhomNCDAO extends BaseDAO<NhomNC> {
         return nhomNC;
     }
 
+    @Override
+    protected void onRowLoaded(NhomNC entity, String fragment) {
+        // The group row is authoritative for where the group lives; child rows never register it
+        connectionManager.registerGroupLocation(entity.getMaHomnc(), fragment);
+    }
+
+    @Override
+    protected String groupOf(NhomNC entity) {
+        return entity.getMaHomnc();
+    }
+
     private boolean hasColumn(ResultSet rs, String columnName) {
         try {
             rs.findColumn(columnName);
@@ -47,54 +66,71 @@ public class NhomNCDAO extends BaseDAO<NhomNC> {
         return executeQueryAllFragments(sql, level);
     }
 
+    /**
+     * One page of the table, in key order or ordered by one of SORTABLE.
+     */
+    public Page<NhomNC> findPage(PageRequest request, TransparencyLevel level) throws DatabaseException {
+        String sql = "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE}";
+        return executeQueryPage(sql, SORTABLE, KEY, request, level);
+    }
+
+    /**
+     * Rows changed since the per-fragment watermarks, and where each fragment stands (see Delta).
+     */
+    public Delta<NhomNC> findChangesSince(Map<String, Timestamp> since, TransparencyLevel level)
+            throws DatabaseException {
+        String sql = "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE}";
+        return executeChangesSince(sql, CHANGED, since, level);
+    }
+
     public NhomNC findById(String maHomnc, TransparencyLevel level) throws DatabaseException {
-        String fragment = connectionManager.getFragmentForGroup(maHomnc);
-        if (fragment == null) {
-            // Search all fragments
-            for (String frag : connectionManager.getAllFragments()) {
-                List<NhomNC> results = executeQuerySingleFragment(
-                        "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
-                        frag, maHomnc);
-                if (!results.isEmpty()) {
-                    return results.get(0);
-                }
+        return findByKey(maHomnc, probed -> {
+            FragmentRoute route = router.routeByGroup(maHomnc);
+            List<NhomNC> results = executeQueryRouted(
+                    "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
+                    route, level, maHomnc);
+            // The fallback is only probed when the targets come back empty
+            probed.addAll(route.getTargets());
+            if (results.isEmpty()) {
+                probed.addAll(route.getFallback());
+                // Not on the routed fragment nor its fallback: whatever location was confirmed is stale
+                connectionManager.forgetGroupLocation(maHomnc);
+                return null;
             }
-            return null;
-        }
-
-        List<NhomNC> results = executeQuerySingleFragment(
-                "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
-                fragment, maHomnc);
-        return results.isEmpty() ? null : results.get(0);
+            return results.get(0);
+        });
     }
 
     public List<NhomNC> findByDepartment(String tenPhong, TransparencyLevel level) throws DatabaseException {
-        String fragment = connectionManager.getFragmentForGroup(tenPhong.equals("P1") ? "NC01" : "NC03");
+        String fragment = connectionManager.getFragmentForDepartment(tenPhong);
         if (fragment != null && level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
             return executeQuerySingleFragment(
                     "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE tenphong = ?",
                     fragment, tenPhong);
         }
 
-        // Search all fragments for location transparency
-        String sql = "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE tenphong = '" + tenPhong + "'";
-        return executeQueryAllFragments(sql, level);
+        // Location transparency: the router prunes every fragment that cannot hold this department
+        return executeQueryRouted(
+                "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE tenphong = ?",
+                router.routeByDepartment(tenPhong), level, tenPhong);
     }
 
     public void insert(NhomNC nhomNC) throws DatabaseException {
-        String fragment = connectionManager.getFragmentForGroup(nhomNC.getMaHomnc());
+        // The department is the fragmentation attribute, so it decides where the row goes
+        String fragment = connectionManager.getFragmentForDepartment(nhomNC.getTenPhong());
         if (fragment == null) {
-            // Determine fragment from department
-            fragment = nhomNC.getTenPhong().equals("P1") ? "p1" : "p2";
+            throw new DatabaseException("Cannot determine fragment for department: " + nhomNC.getTenPhong());
         }
 
         executeInsertSingleFragment(
                 "INSERT INTO {TABLE} (manhomnc, tennhomnc, tenphong) VALUES (?, ?, ?)",
                 fragment,
+                nhomNC,
                 nhomNC.getMaHomnc(),
                 nhomNC.getTenNhomnc(),
                 nhomNC.getTenPhong()
         );
+        connectionManager.registerGroupLocation(nhomNC.getMaHomnc(), fragment);
     }
 
     public int update(NhomNC nhomNC) throws DatabaseException {
@@ -103,30 +139,45 @@ public class NhomNCDAO extends BaseDAO<NhomNC> {
             throw new DatabaseException("Cannot determine fragment for group: " + nhomNC.getMaHomnc());
         }
 
-        return executeUpdateSingleFragment(
-                "UPDATE {TABLE} SET tennhomnc = ?, tenphong = ?, updated_at = GETDATE() WHERE manhomnc = ?",
+        LocalDateTime version = executeVersionedUpdate(
+                "UPDATE {TABLE} SET tennhomnc = ?, tenphong = ?, updated_at = GETDATE() " +
+                        "OUTPUT inserted.updated_at WHERE manhomnc = ? AND " + VERSION_MATCHES,
                 fragment,
+                nhomNC,
                 nhomNC.getTenNhomnc(),
                 nhomNC.getTenPhong(),
-                nhomNC.getMaHomnc()
+                nhomNC.getMaHomnc(),
+                version(nhomNC.getUpdatedAt()),
+                version(nhomNC.getUpdatedAt())
         );
+        if (version == null) {
+            return resolveStaleUpdate(
+                    "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM {TABLE} WHERE manhomnc = ?",
+                    fragment, "Research group " + nhomNC.getMaHomnc(), nhomNC.getMaHomnc());
+        }
+        nhomNC.setUpdatedAt(version);
+        return 1;
     }
 
     public int delete(String maHomnc) throws DatabaseException {
         String fragment = connectionManager.getFragmentForGroup(maHomnc);
+        int total = 0;
         if (fragment == null) {
             // Try all fragments
-            int total = 0;
             for (String frag : connectionManager.getAllFragments()) {
                 total += executeDeleteSingleFragment(
                         "DELETE FROM {TABLE} WHERE manhomnc = ?",
-                        frag, maHomnc);
+                        frag, new NhomNC(maHomnc, null, null), maHomnc);
             }
-            return total;
+        } else {
+            total = executeDeleteSingleFragment(
+                    "DELETE FROM {TABLE} WHERE manhomnc = ?",
+                    fragment, new NhomNC(maHomnc, null, null), maHomnc);
         }
 
-        return executeDeleteSingleFragment(
-                "DELETE FROM {TABLE} WHERE manhomnc = ?",
-                fragment, maHomnc);
+        if (total > 0) {
+            connectionManager.forgetGroupLocation(maHomnc);
+        }
+        return total;
     }
 }
@@ -0,0 +1,28 @@
+package com.research.distributed.dao;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of a PageRequest, and how far into each fragment they reach: the start
+ * of the next page. A fragment that failed keeps its start, so under location
+ * transparency its rows are missing rather than shifted (see ReadCompleteness).
+ */
+public class Page<T> {
+    private final List<T> rows;
+    private final Map<String, Integer> end;
+
+    public Page(List<T> rows, Map<String, Integer> end) {
+        this.rows = rows;
+        this.end = Collections.unmodifiableMap(end);
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    public Map<String, Integer> getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,59 @@
+package com.research.distributed.dao;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A page of a table across all fragments: up to limit rows in the given order,
+ * starting after the first start[f] rows (in that order) of each fragment f.
+ * Fragments missing from start begin at their first row.
+ *
+ * The per-fragment start is what makes pages cheap: each fragment reads only
+ * limit rows past its own offset instead of every row before the page.
+ */
+public class PageRequest {
+    private final Map<String, Integer> start;
+    private final int limit;
+    private final String orderBy;
+    private final boolean descending;
+
+    /**
+     * @param orderBy column to order by, then by key; null orders by key only
+     */
+    public PageRequest(Map<String, Integer> start, int limit, String orderBy, boolean descending) {
+        this.start = Collections.unmodifiableMap(start);
+        this.limit = limit;
+        this.orderBy = orderBy;
+        this.descending = descending;
+    }
+
+    public int getStart(String fragment) {
+        return start.getOrDefault(fragment, 0);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * The same start and order with another number of rows.
+     */
+    public PageRequest withLimit(int limit) {
+        return new PageRequest(start, limit, orderBy, descending);
+    }
+
+    /**
+     * The same order and size, starting where the given page ended.
+     */
+    public PageRequest after(Page<?> page) {
+        return new PageRequest(page.getEnd(), limit, orderBy, descending);
+    }
+}
@@ -6,9 +6,15 @@ import com.research.distributed.model.ThamGia;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 public class ThamGiaDAO extends BaseDAO<ThamGia> {
+    private static final List<String> KEY = List.of("manv", "mada");
+    // When a row last changed, for incremental reads
+    private static final String CHANGED = "created_at";
+    private static final List<String> SORTABLE = List.of("manv", "mada", "ngaythamgia");
 
     public ThamGiaDAO() {
         super("thamgia");
@@ -46,16 +52,36 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
         return executeQueryAllFragments(sql, level);
     }
 
+    /**
+     * One page of the table, in key order or ordered by one of SORTABLE.
+     */
+    public Page<ThamGia> findPage(PageRequest request, TransparencyLevel level) throws DatabaseException {
+        String sql = "SELECT manv, mada, ngaythamgia, created_at FROM {TABLE}";
+        return executeQueryPage(sql, SORTABLE, KEY, request, level);
+    }
+
+    /**
+     * Rows changed since the per-fragment watermarks, and where each fragment stands (see Delta).
+     */
+    public Delta<ThamGia> findChangesSince(Map<String, Timestamp> since, TransparencyLevel level)
+            throws DatabaseException {
+        String sql = "SELECT manv, mada, ngaythamgia, created_at FROM {TABLE}";
+        return executeChangesSince(sql, CHANGED, since, level);
+    }
+
     public ThamGia findById(String maNv, String maDa, TransparencyLevel level) throws DatabaseException {
-        for (String fragment : connectionManager.getAllFragments()) {
-            List<ThamGia> results = executeQuerySingleFragment(
-                    "SELECT manv, mada, ngaythamgia, created_at FROM {TABLE} WHERE manv = ? AND mada = ?",
-                    fragment, maNv, maDa);
-            if (!results.isEmpty()) {
-                return results.get(0);
+        return findByKey(maNv + "|" + maDa, probed -> {
+            for (String fragment : connectionManager.getAllFragments()) {
+                List<ThamGia> results = executeQuerySingleFragment(
+                        "SELECT manv, mada, ngaythamgia, created_at FROM {TABLE} WHERE manv = ? AND mada = ?",
+                        fragment, maNv, maDa);
+                probed.add(fragment);
+                if (!results.isEmpty()) {
+                    return results.get(0);
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     public List<ThamGia> findByEmployee(String maNv, TransparencyLevel level) throws DatabaseException {
@@ -77,6 +103,7 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
             executeInsertSingleFragment(
                     "INSERT INTO {TABLE} (manv, mada, ngaythamgia) VALUES (?, ?, ?)",
                     fragment,
+                    thamGia,
                     thamGia.getMaNv(),
                     thamGia.getMaDa(),
                     java.sql.Date.valueOf(thamGia.getNgayThamGia())
@@ -85,6 +112,7 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
             executeInsertSingleFragment(
                     "INSERT INTO {TABLE} (manv, mada) VALUES (?, ?)",
                     fragment,
+                    thamGia,
                     thamGia.getMaNv(),
                     thamGia.getMaDa()
             );
@@ -96,7 +124,7 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
         for (String fragment : connectionManager.getAllFragments()) {
             total += executeDeleteSingleFragment(
                     "DELETE FROM {TABLE} WHERE manv = ? AND mada = ?",
-                    fragment, maNv, maDa);
+                    fragment, new ThamGia(maNv, maDa), maNv, maDa);
         }
         return total;
     }
@@ -106,7 +134,7 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
         for (String fragment : connectionManager.getAllFragments()) {
             total += executeDeleteSingleFragment(
                     "DELETE FROM {TABLE} WHERE manv = ?",
-                    fragment, maNv);
+                    fragment, new ThamGia(maNv, null), maNv);
         }
         return total;
     }
@@ -116,7 +144,7 @@ public class ThamGiaDAO extends BaseDAO<ThamGia> {
         for (String fragment : connectionManager.getAllFragments()) {
             total += executeDeleteSingleFragment(
                     "DELETE FROM {TABLE} WHERE mada = ?",
-                    fragment, maDa);
+                    fragment, new ThamGia(null, maDa), maDa);
         }
         return total;
     }
@@ -0,0 +1,20 @@
+package com.research.distributed.exception;
+
+/**
+ * An update lost an optimistic concurrency check: the row was changed by
+ * someone else after it was read. Carries the row as it is now, so the
+ * caller can show it and retry against its current version.
+ */
+public class StaleDataException extends DatabaseException {
+    // Any entity type; not serialized with the exception
+    private final transient Object current;
+
+    public StaleDataException(String message, String fragment, Object current) {
+        super(message, fragment, null);
+        this.current = current;
+    }
+
+    public Object getCurrent() {
+        return current;
+    }
+}
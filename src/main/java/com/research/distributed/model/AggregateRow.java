@@ -0,0 +1,48 @@
+package com.research.distributed.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One merged row of a distributed aggregation: the GROUP BY key plus the aggregate values, by alias.
+ */
+public class AggregateRow {
+    private final List<Object> key;
+    private final Map<String, Object> values;
+
+    public AggregateRow(List<Object> key, Map<String, Object> values) {
+        this.key = Collections.unmodifiableList(key);
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+    }
+
+    public List<Object> getKey() {
+        return key;
+    }
+
+    public Object getKey(int index) {
+        return key.get(index);
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    public Object getValue(String alias) {
+        return values.get(alias);
+    }
+
+    public long getLong(String alias) {
+        Object value = values.get(alias);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateRow{" +
+                "key=" + key +
+                ", values=" + values +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.research.distributed.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregates that can be split into per-fragment partial states and merged in the app.
+ * COUNT partials are summed, SUM partials are summed, MIN/MAX partials are compared.
+ */
+public enum AggregateFunction {
+    COUNT,
+    SUM,
+    MIN,
+    MAX;
+
+    public String toSql(String expression) {
+        return name() + "(" + expression + ")";
+    }
+
+    /**
+     * Normalize a value read from a fragment so partial states of different JDBC types merge cleanly.
+     */
+    public Object normalize(Object value) {
+        if (value == null) {
+            return this == COUNT ? 0L : null;
+        }
+        if ((this == COUNT || this == SUM) && value instanceof Number) {
+            return toNumber((Number) value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object merge(Object left, Object right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        switch (this) {
+            case COUNT:
+            case SUM:
+                return add((Number) left, (Number) right);
+            case MIN:
+                return ((Comparable) left).compareTo(right) <= 0 ? left : right;
+            case MAX:
+                return ((Comparable) left).compareTo(right) >= 0 ? left : right;
+            default:
+                throw new IllegalStateException("Unsupported aggregate: " + this);
+        }
+    }
+
+    private static Number toNumber(Number value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            if (decimal.scale() > 0) {
+                return decimal;
+            }
+            try {
+                return decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                return decimal;
+            }
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(value.doubleValue());
+        }
+        return value.longValue();
+    }
+
+    private static Number add(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            return left.longValue() + right.longValue();
+        }
+        return toBigDecimal(left).add(toBigDecimal(right));
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        return value instanceof BigDecimal ? (BigDecimal) value : BigDecimal.valueOf(value.longValue());
+    }
+}
@@ -0,0 +1,75 @@
+package com.research.distributed.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A GROUP BY query that is pushed down to every fragment as-is.
+ * The FROM clause uses {FRAGMENT} wherever a fragment suffix belongs, e.g. "dean_{FRAGMENT}".
+ */
+public class AggregateQuery {
+    private final String fromTemplate;
+    private String whereClause;
+    private final List<String> groupByExpressions = new ArrayList<>();
+    private final List<String> groupByAliases = new ArrayList<>();
+    private final List<AggregateFunction> functions = new ArrayList<>();
+    private final List<String> aggregateExpressions = new ArrayList<>();
+    private final List<String> aggregateAliases = new ArrayList<>();
+
+    public AggregateQuery(String fromTemplate) {
+        this.fromTemplate = fromTemplate;
+    }
+
+    public AggregateQuery where(String whereClause) {
+        this.whereClause = whereClause;
+        return this;
+    }
+
+    public AggregateQuery groupBy(String expression, String alias) {
+        groupByExpressions.add(expression);
+        groupByAliases.add(alias);
+        return this;
+    }
+
+    public AggregateQuery aggregate(AggregateFunction function, String expression, String alias) {
+        functions.add(function);
+        aggregateExpressions.add(expression);
+        aggregateAliases.add(alias);
+        return this;
+    }
+
+    public String toSql(String fragment) {
+        List<String> selectList = new ArrayList<>();
+        for (int i = 0; i < groupByExpressions.size(); i++) {
+            selectList.add(groupByExpressions.get(i) + " AS " + groupByAliases.get(i));
+        }
+        for (int i = 0; i < functions.size(); i++) {
+            selectList.add(functions.get(i).toSql(aggregateExpressions.get(i)) + " AS " + aggregateAliases.get(i));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(String.join(", ", selectList))
+                .append(" FROM ")
+                .append(fromTemplate.replace("{FRAGMENT}", fragment));
+        if (whereClause != null) {
+            sql.append(" WHERE ").append(whereClause.replace("{FRAGMENT}", fragment));
+        }
+        if (!groupByExpressions.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", groupByExpressions));
+        }
+        return sql.toString();
+    }
+
+    public List<String> getGroupByAliases() {
+        return Collections.unmodifiableList(groupByAliases);
+    }
+
+    public List<AggregateFunction> getFunctions() {
+        return Collections.unmodifiableList(functions);
+    }
+
+    public List<String> getAggregateAliases() {
+        return Collections.unmodifiableList(aggregateAliases);
+    }
+}
@@ -1,9 +1,13 @@
 package com.research.distributed.service;
 
+import com.research.distributed.connection.FragmentConnectionManager;
 import com.research.distributed.connection.TransparencyLevel;
 import com.research.distributed.dao.DeAnDAO;
+import com.research.distributed.dao.Delta;
 import com.research.distributed.dao.NhanVienDAO;
 import com.research.distributed.dao.NhomNCDAO;
+import com.research.distributed.dao.Page;
+import com.research.distributed.dao.PageRequest;
 import com.research.distributed.dao.ThamGiaDAO;
 import com.research.distributed.exception.DatabaseException;
 import com.research.distributed.exception.ValidationException;
@@ -14,52 +18,227 @@ import com.research.distributed.model.ThamGia;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public class CRUDService {
     private static final Logger logger = LoggerFactory.getLogger(CRUDService.class);
 
+    // How long a delete waits for queued writes to reach the database
+    private static final long DRAIN_TIMEOUT_MILLIS = 10_000;
+
     private final NhomNCDAO nhomNCDAO;
     private final NhanVienDAO nhanVienDAO;
     private final DeAnDAO deAnDAO;
     private final ThamGiaDAO thamGiaDAO;
+    private final QueryResultCache resultCache;
+    private final FragmentConnectionManager connectionManager;
+    private final WriteBehindQueue writeBehind;
+    private final GroupReferenceCache groupCache;
 
     public CRUDService() {
         this.nhomNCDAO = new NhomNCDAO();
         this.nhanVienDAO = new NhanVienDAO();
         this.deAnDAO = new DeAnDAO();
         this.thamGiaDAO = new ThamGiaDAO();
+        this.resultCache = QueryResultCache.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.writeBehind = WriteBehindQueue.getInstance();
+        this.groupCache = GroupReferenceCache.getInstance();
+    }
+
+    /**
+     * True when inserts and updates are acknowledged before they reach the database.
+     */
+    public boolean isWriteBehindEnabled() {
+        return writeBehind.isEnabled();
+    }
+
+    /**
+     * Full-table reads go through the shared result cache; any write to the
+     * table on any fragment evicts them.
+     */
+    private <T> List<T> cachedFindAll(String table, TransparencyLevel level, QueryLoader<List<T>> loader)
+            throws DatabaseException {
+        return resultCache.get(
+                QueryKey.of("findAll:" + table, level),
+                QueryResultCache.dependencies(List.of(table), connectionManager.getAllFragments()),
+                loader);
+    }
+
+    /**
+     * Overlay writes still queued for write-behind on rows read from the database:
+     * a pending write replaces the row with the same key, or is added if it
+     * matches the filter. An update that no longer matches removes the row.
+     */
+    private <T> List<T> withPending(String table, List<T> rows, Class<T> type, Predicate<T> filter) {
+        List<PendingWrite> pending = writeBehind.getPending(table);
+        if (pending.isEmpty()) {
+            return rows;
+        }
+        Map<String, T> byKey = new LinkedHashMap<>();
+        for (T row : rows) {
+            byKey.put(PendingWrite.keyOf(row), row);
+        }
+        for (PendingWrite write : pending) {
+            T entity = type.cast(write.getEntity());
+            if (filter.test(entity)) {
+                byKey.put(write.getKey(), entity);
+            } else {
+                byKey.remove(write.getKey());
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    private <T> T pendingById(String table, String key, Class<T> type) {
+        T latest = null;
+        for (PendingWrite write : writeBehind.getPending(table)) {
+            if (write.getKey().equals(key)) {
+                latest = type.cast(write.getEntity());
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Group lookup for the write paths: queued writes first, then the in-memory
+     * replica, and only on a miss the database.
+     */
+    private NhomNC lookupGroup(String maHomnc) throws DatabaseException {
+        NhomNC pending = pendingById("nhomnc", maHomnc, NhomNC.class);
+        if (pending != null) {
+            return pending;
+        }
+        NhomNC cached = groupCache.get(maHomnc);
+        return cached != null ? cached : nhomNCDAO.findById(maHomnc, TransparencyLevel.LOCATION_TRANSPARENCY);
+    }
+
+    private String fragmentForGroup(String maHomnc) throws DatabaseException {
+        String fragment = connectionManager.getFragmentForGroup(maHomnc);
+        if (fragment == null) {
+            throw new DatabaseException("Cannot determine fragment for group: " + maHomnc);
+        }
+        return fragment;
+    }
+
+    /**
+     * Deletes are not written behind; they first wait for queued writes, so they
+     * see (and may cascade to) everything the user has written.
+     */
+    private void drainPendingWrites() throws DatabaseException {
+        if (writeBehind.getPendingCount() > 0) {
+            writeBehind.drainAll(DRAIN_TIMEOUT_MILLIS);
+        }
+    }
+
+    // ==================== Paged reads ====================
+
+    /**
+     * One page of a table for a paged view (see PageRequest). Queued writes
+     * replace the rows they update; inserted rows appear once they are flushed
+     * and the view reloads on the change event.
+     */
+    public Page<?> getPage(String table, PageRequest request, TransparencyLevel level) throws DatabaseException {
+        Page<?> page;
+        switch (table) {
+            case "nhomnc": page = nhomNCDAO.findPage(request, level); break;
+            case "nhanvien": page = nhanVienDAO.findPage(request, level); break;
+            case "dean": page = deAnDAO.findPage(request, level); break;
+            case "thamgia": page = thamGiaDAO.findPage(request, level); break;
+            default: throw new DatabaseException("Unknown table: " + table);
+        }
+        return new Page<>(withPendingUpdates(table, page.getRows()), page.getEnd());
+    }
+
+    /**
+     * Rows of a table changed since the per-fragment watermarks, for views that
+     * refresh incrementally (see Delta). Queued writes replace the rows they update.
+     */
+    public Delta<?> getChangesSince(String table, Map<String, Timestamp> since, TransparencyLevel level)
+            throws DatabaseException {
+        Delta<?> delta;
+        switch (table) {
+            case "nhomnc": delta = nhomNCDAO.findChangesSince(since, level); break;
+            case "nhanvien": delta = nhanVienDAO.findChangesSince(since, level); break;
+            case "dean": delta = deAnDAO.findChangesSince(since, level); break;
+            case "thamgia": delta = thamGiaDAO.findChangesSince(since, level); break;
+            default: throw new DatabaseException("Unknown table: " + table);
+        }
+        return new Delta<>(withPendingUpdates(table, delta.getChanged()), delta.getCounts(),
+                delta.getWatermarks(), delta.getInserted(), delta.getUpdated());
+    }
+
+    private List<?> withPendingUpdates(String table, List<?> rows) {
+        List<PendingWrite> pending = writeBehind.getPending(table);
+        if (pending.isEmpty()) {
+            return rows;
+        }
+        Map<String, Object> latest = new LinkedHashMap<>();
+        for (PendingWrite write : pending) {
+            latest.put(write.getKey(), write.getEntity());
+        }
+        List<Object> replaced = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            replaced.add(latest.getOrDefault(PendingWrite.keyOf(row), row));
+        }
+        return replaced;
     }
 
     // ==================== NhomNC Operations ====================
 
     public List<NhomNC> getAllNhomNC(TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting all research groups with level: {}", level);
-        return nhomNCDAO.findAll(level);
+        return withPending("nhomnc", cachedFindAll("nhomnc", level, () -> nhomNCDAO.findAll(level)),
+                NhomNC.class, group -> true);
     }
 
     public NhomNC getNhomNCById(String maHomnc, TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting research group by ID: {}", maHomnc);
-        return nhomNCDAO.findById(maHomnc, level);
+        NhomNC pending = pendingById("nhomnc", maHomnc, NhomNC.class);
+        return pending != null ? pending : nhomNCDAO.findById(maHomnc, level);
     }
 
     public void createNhomNC(NhomNC nhomNC) throws DatabaseException, ValidationException {
         validateNhomNC(nhomNC);
 
         // Check if group already exists
-        NhomNC existing = nhomNCDAO.findById(nhomNC.getMaHomnc(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        NhomNC existing = lookupGroup(nhomNC.getMaHomnc());
         if (existing != null) {
             throw new ValidationException("Research group already exists: " + nhomNC.getMaHomnc(),
                     "maHomnc", nhomNC.getMaHomnc());
         }
 
-        nhomNCDAO.insert(nhomNC);
+        if (writeBehind.isEnabled()) {
+            String fragment = connectionManager.getFragmentForDepartment(nhomNC.getTenPhong());
+            if (fragment == null) {
+                throw new DatabaseException("Cannot determine fragment for department: " + nhomNC.getTenPhong());
+            }
+            writeBehind.enqueue(fragment, "nhomnc", PendingWrite.Op.INSERT, nhomNC);
+            connectionManager.registerGroupLocation(nhomNC.getMaHomnc(), fragment);
+        } else {
+            nhomNCDAO.insert(nhomNC);
+        }
         logger.info("Created research group: {}", nhomNC.getMaHomnc());
     }
 
     public void updateNhomNC(NhomNC nhomNC) throws DatabaseException, ValidationException {
         validateNhomNC(nhomNC);
 
+        if (writeBehind.isEnabled()) {
+            if (lookupGroup(nhomNC.getMaHomnc()) == null) {
+                throw new ValidationException("Research group not found: " + nhomNC.getMaHomnc(),
+                        "maHomnc", nhomNC.getMaHomnc());
+            }
+            writeBehind.enqueue(fragmentForGroup(nhomNC.getMaHomnc()), "nhomnc", PendingWrite.Op.UPDATE, nhomNC);
+            logger.info("Queued update of research group: {}", nhomNC.getMaHomnc());
+            return;
+        }
+
         int updated = nhomNCDAO.update(nhomNC);
         if (updated == 0) {
             throw new ValidationException("Research group not found: " + nhomNC.getMaHomnc(),
@@ -69,6 +248,8 @@ public class CRUDService {
     }
 
     public void deleteNhomNC(String maHomnc) throws DatabaseException, ValidationException {
+        drainPendingWrites();
+
         // Check for dependent records
         List<NhanVien> employees = nhanVienDAO.findByGroup(maHomnc, TransparencyLevel.LOCATION_TRANSPARENCY);
         if (!employees.isEmpty()) {
@@ -109,44 +290,63 @@ public class CRUDService {
 
     public List<NhanVien> getAllNhanVien(TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting all employees with level: {}", level);
-        return nhanVienDAO.findAll(level);
+        return withPending("nhanvien", cachedFindAll("nhanvien", level, () -> nhanVienDAO.findAll(level)),
+                NhanVien.class, employee -> true);
     }
 
     public NhanVien getNhanVienById(String maNv, TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting employee by ID: {}", maNv);
-        return nhanVienDAO.findById(maNv, level);
+        NhanVien pending = pendingById("nhanvien", maNv, NhanVien.class);
+        return pending != null ? pending : nhanVienDAO.findById(maNv, level);
     }
 
     public List<NhanVien> getNhanVienByGroup(String maHomnc, TransparencyLevel level)
             throws DatabaseException {
         logger.debug("Getting employees by group: {}", maHomnc);
-        return nhanVienDAO.findByGroup(maHomnc, level);
+        return withPending("nhanvien", nhanVienDAO.findByGroup(maHomnc, level),
+                NhanVien.class, employee -> maHomnc.equals(employee.getMaHomnc()));
     }
 
     public void createNhanVien(NhanVien nhanVien) throws DatabaseException, ValidationException {
         validateNhanVien(nhanVien);
 
         // Check if employee already exists
-        NhanVien existing = nhanVienDAO.findById(nhanVien.getMaNv(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        NhanVien existing = getNhanVienById(nhanVien.getMaNv(), TransparencyLevel.LOCATION_TRANSPARENCY);
         if (existing != null) {
             throw new ValidationException("Employee already exists: " + nhanVien.getMaNv(),
                     "maNv", nhanVien.getMaNv());
         }
 
         // Check if group exists
-        NhomNC group = nhomNCDAO.findById(nhanVien.getMaHomnc(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        NhomNC group = lookupGroup(nhanVien.getMaHomnc());
         if (group == null) {
             throw new ValidationException("Research group not found: " + nhanVien.getMaHomnc(),
                     "maHomnc", nhanVien.getMaHomnc());
         }
 
-        nhanVienDAO.insert(nhanVien);
+        if (writeBehind.isEnabled()) {
+            writeBehind.enqueue(fragmentForGroup(nhanVien.getMaHomnc()), "nhanvien",
+                    PendingWrite.Op.INSERT, nhanVien);
+        } else {
+            nhanVienDAO.insert(nhanVien);
+        }
         logger.info("Created employee: {}", nhanVien.getMaNv());
     }
 
     public void updateNhanVien(NhanVien nhanVien) throws DatabaseException, ValidationException {
         validateNhanVien(nhanVien);
 
+        if (writeBehind.isEnabled()) {
+            if (getNhanVienById(nhanVien.getMaNv(), TransparencyLevel.LOCATION_TRANSPARENCY) == null) {
+                throw new ValidationException("Employee not found: " + nhanVien.getMaNv(),
+                        "maNv", nhanVien.getMaNv());
+            }
+            writeBehind.enqueue(fragmentForGroup(nhanVien.getMaHomnc()), "nhanvien",
+                    PendingWrite.Op.UPDATE, nhanVien);
+            logger.info("Queued update of employee: {}", nhanVien.getMaNv());
+            return;
+        }
+
         int updated = nhanVienDAO.update(nhanVien);
         if (updated == 0) {
             throw new ValidationException("Employee not found: " + nhanVien.getMaNv(),
@@ -156,6 +356,8 @@ public class CRUDService {
     }
 
     public void deleteNhanVien(String maNv) throws DatabaseException, ValidationException {
+        drainPendingWrites();
+
         // Delete participations first
         thamGiaDAO.deleteByEmployee(maNv);
 
@@ -182,43 +384,60 @@ public class CRUDService {
 
     public List<DeAn> getAllDeAn(TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting all projects with level: {}", level);
-        return deAnDAO.findAll(level);
+        return withPending("dean", cachedFindAll("dean", level, () -> deAnDAO.findAll(level)),
+                DeAn.class, project -> true);
     }
 
     public DeAn getDeAnById(String maDa, TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting project by ID: {}", maDa);
-        return deAnDAO.findById(maDa, level);
+        DeAn pending = pendingById("dean", maDa, DeAn.class);
+        return pending != null ? pending : deAnDAO.findById(maDa, level);
     }
 
     public List<DeAn> getDeAnByGroup(String maHomnc, TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting projects by group: {}", maHomnc);
-        return deAnDAO.findByGroup(maHomnc, level);
+        return withPending("dean", deAnDAO.findByGroup(maHomnc, level),
+                DeAn.class, project -> maHomnc.equals(project.getMaHomnc()));
     }
 
     public void createDeAn(DeAn deAn) throws DatabaseException, ValidationException {
         validateDeAn(deAn);
 
         // Check if project already exists
-        DeAn existing = deAnDAO.findById(deAn.getMaDa(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        DeAn existing = getDeAnById(deAn.getMaDa(), TransparencyLevel.LOCATION_TRANSPARENCY);
         if (existing != null) {
             throw new ValidationException("Project already exists: " + deAn.getMaDa(),
                     "maDa", deAn.getMaDa());
         }
 
         // Check if group exists
-        NhomNC group = nhomNCDAO.findById(deAn.getMaHomnc(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        NhomNC group = lookupGroup(deAn.getMaHomnc());
         if (group == null) {
             throw new ValidationException("Research group not found: " + deAn.getMaHomnc(),
                     "maHomnc", deAn.getMaHomnc());
         }
 
-        deAnDAO.insert(deAn);
+        if (writeBehind.isEnabled()) {
+            writeBehind.enqueue(fragmentForGroup(deAn.getMaHomnc()), "dean", PendingWrite.Op.INSERT, deAn);
+        } else {
+            deAnDAO.insert(deAn);
+        }
         logger.info("Created project: {}", deAn.getMaDa());
     }
 
     public void updateDeAn(DeAn deAn) throws DatabaseException, ValidationException {
         validateDeAn(deAn);
 
+        if (writeBehind.isEnabled()) {
+            if (getDeAnById(deAn.getMaDa(), TransparencyLevel.LOCATION_TRANSPARENCY) == null) {
+                throw new ValidationException("Project not found: " + deAn.getMaDa(),
+                        "maDa", deAn.getMaDa());
+            }
+            writeBehind.enqueue(fragmentForGroup(deAn.getMaHomnc()), "dean", PendingWrite.Op.UPDATE, deAn);
+            logger.info("Queued update of project: {}", deAn.getMaDa());
+            return;
+        }
+
         int updated = deAnDAO.update(deAn);
         if (updated == 0) {
             throw new ValidationException("Project not found: " + deAn.getMaDa(),
@@ -228,6 +447,8 @@ public class CRUDService {
     }
 
     public void deleteDeAn(String maDa) throws DatabaseException, ValidationException {
+        drainPendingWrites();
+
         // Delete participations first
         thamGiaDAO.deleteByProject(maDa);
 
@@ -254,27 +475,33 @@ public class CRUDService {
 
     public List<ThamGia> getAllThamGia(TransparencyLevel level) throws DatabaseException {
         logger.debug("Getting all participations with level: {}", level);
-        return thamGiaDAO.findAll(level);
+        return withPending("thamgia", cachedFindAll("thamgia", level, () -> thamGiaDAO.findAll(level)),
+                ThamGia.class, participation -> true);
     }
 
     public List<ThamGia> getThamGiaByEmployee(String maNv, TransparencyLevel level)
             throws DatabaseException {
         logger.debug("Getting participations by employee: {}", maNv);
-        return thamGiaDAO.findByEmployee(maNv, level);
+        return withPending("thamgia", thamGiaDAO.findByEmployee(maNv, level),
+                ThamGia.class, participation -> maNv.equals(participation.getMaNv()));
     }
 
     public List<ThamGia> getThamGiaByProject(String maDa, TransparencyLevel level)
             throws DatabaseException {
         logger.debug("Getting participations by project: {}", maDa);
-        return thamGiaDAO.findByProject(maDa, level);
+        return withPending("thamgia", thamGiaDAO.findByProject(maDa, level),
+                ThamGia.class, participation -> maDa.equals(participation.getMaDa()));
     }
 
     public void createThamGia(ThamGia thamGia) throws DatabaseException, ValidationException {
         validateThamGia(thamGia);
 
         // Check if participation already exists
-        ThamGia existing = thamGiaDAO.findById(thamGia.getMaNv(), thamGia.getMaDa(),
-                TransparencyLevel.LOCATION_TRANSPARENCY);
+        ThamGia existing = pendingById("thamgia", PendingWrite.keyOf(thamGia), ThamGia.class);
+        if (existing == null) {
+            existing = thamGiaDAO.findById(thamGia.getMaNv(), thamGia.getMaDa(),
+                    TransparencyLevel.LOCATION_TRANSPARENCY);
+        }
         if (existing != null) {
             throw new ValidationException(
                     "Participation already exists for employee " + thamGia.getMaNv() +
@@ -283,24 +510,33 @@ public class CRUDService {
         }
 
         // Get employee's fragment
-        String fragment = nhanVienDAO.getFragmentForEmployee(thamGia.getMaNv());
+        NhanVien pendingEmployee = pendingById("nhanvien", thamGia.getMaNv(), NhanVien.class);
+        String fragment = pendingEmployee != null
+                ? fragmentForGroup(pendingEmployee.getMaHomnc())
+                : nhanVienDAO.getFragmentForEmployee(thamGia.getMaNv());
         if (fragment == null) {
             throw new ValidationException("Employee not found: " + thamGia.getMaNv(),
                     "maNv", thamGia.getMaNv());
         }
 
         // Check if project exists
-        DeAn project = deAnDAO.findById(thamGia.getMaDa(), TransparencyLevel.LOCATION_TRANSPARENCY);
+        DeAn project = getDeAnById(thamGia.getMaDa(), TransparencyLevel.LOCATION_TRANSPARENCY);
         if (project == null) {
             throw new ValidationException("Project not found: " + thamGia.getMaDa(),
                     "maDa", thamGia.getMaDa());
         }
 
-        thamGiaDAO.insert(thamGia, fragment);
+        if (writeBehind.isEnabled()) {
+            writeBehind.enqueue(fragment, "thamgia", PendingWrite.Op.INSERT, thamGia);
+        } else {
+            thamGiaDAO.insert(thamGia, fragment);
+        }
         logger.info("Created participation: {} - {}", thamGia.getMaNv(), thamGia.getMaDa());
     }
 
     public void deleteThamGia(String maNv, String maDa) throws DatabaseException, ValidationException {
+        drainPendingWrites();
+
         int deleted = thamGiaDAO.delete(maNv, maDa);
         if (deleted == 0) {
             throw new ValidationException(
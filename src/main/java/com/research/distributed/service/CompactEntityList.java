@@ -0,0 +1,115 @@
+package com.research.distributed.service;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, column-encoded list of model objects for long-lived caches.
+ *
+ * Instead of several objects per row (the entity, its Strings, its LocalDateTimes)
+ * the list keeps three arrays: every distinct string once in a dictionary, each
+ * row's strings as int codes into it, and each row's timestamps and dates as longs.
+ * IDs that repeat across rows (a group ID on every employee, an employee ID on every
+ * participation) cost one int each. get() builds a fresh model object on demand,
+ * so callers can never modify what is cached.
+ */
+public final class CompactEntityList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int NULL_CODE = -1;
+
+    private final EntityCodec<T> codec;
+    private final String[] dictionary;
+    private final int[] codes;
+    private final long[] longs;
+    private final int size;
+
+    private CompactEntityList(EntityCodec<T> codec, String[] dictionary, int[] codes, long[] longs, int size) {
+        this.codec = codec;
+        this.dictionary = dictionary;
+        this.codes = codes;
+        this.longs = longs;
+        this.size = size;
+    }
+
+    /**
+     * Encode the rows if their type has a codec (and no row is null); otherwise null.
+     */
+    public static <T> CompactEntityList<T> tryEncode(List<T> rows) {
+        if (rows.isEmpty() || rows.get(0) == null) {
+            return null;
+        }
+        EntityCodec<T> codec = EntityCodec.forClass(rows.get(0).getClass());
+        if (codec == null) {
+            return null;
+        }
+        for (T row : rows) {
+            if (row == null || row.getClass() != rows.get(0).getClass()) {
+                return null;
+            }
+        }
+        return encode(rows, codec);
+    }
+
+    static <T> CompactEntityList<T> encode(List<T> rows, EntityCodec<T> codec) {
+        int stringColumns = codec.stringColumns();
+        int longColumns = codec.longColumns();
+        int[] codes = new int[rows.size() * stringColumns];
+        long[] longs = new long[rows.size() * longColumns];
+        Map<String, Integer> index = new HashMap<>();
+        String[] strings = new String[stringColumns];
+        long[] rowLongs = new long[longColumns];
+
+        for (int row = 0; row < rows.size(); row++) {
+            codec.encode(rows.get(row), strings, rowLongs);
+            for (int c = 0; c < stringColumns; c++) {
+                codes[row * stringColumns + c] = strings[c] == null
+                        ? NULL_CODE : index.computeIfAbsent(strings[c], s -> index.size());
+            }
+            System.arraycopy(rowLongs, 0, longs, row * longColumns, longColumns);
+        }
+
+        String[] dictionary = new String[index.size()];
+        index.forEach((value, code) -> dictionary[code] = value);
+        return new CompactEntityList<>(codec, dictionary, codes, longs, rows.size());
+    }
+
+    @Override
+    public T get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        int stringColumns = codec.stringColumns();
+        int longColumns = codec.longColumns();
+        String[] strings = new String[stringColumns];
+        for (int c = 0; c < stringColumns; c++) {
+            int code = codes[row * stringColumns + c];
+            strings[c] = code == NULL_CODE ? null : dictionary[code];
+        }
+        long[] rowLongs = new long[longColumns];
+        System.arraycopy(longs, row * longColumns, rowLongs, 0, longColumns);
+        return codec.decode(strings, rowLongs);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getDictionarySize() {
+        return dictionary.length;
+    }
+
+    /**
+     * Approximate heap footprint of the arrays, dictionary strings included.
+     */
+    public long estimateBytes() {
+        long bytes = 16L + 4L * codes.length + 8L * longs.length + 4L * dictionary.length;
+        for (String value : dictionary) {
+            // String header plus its byte[] (Latin-1 compact strings)
+            bytes += 40 + value.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,143 @@
+package com.research.distributed.service;
+
+import com.research.distributed.model.DeAn;
+import com.research.distributed.model.NhanVien;
+import com.research.distributed.model.NhomNC;
+import com.research.distributed.model.ThamGia;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+/**
+ * Splits a model object into the columns CompactEntityList stores: strings
+ * (dictionary-encoded) and longs (timestamps and dates), and puts it back together.
+ */
+abstract class EntityCodec<T> {
+    // Stands for null in a long column
+    static final long NULL = Long.MIN_VALUE;
+
+    private final int stringColumns;
+    private final int longColumns;
+
+    EntityCodec(int stringColumns, int longColumns) {
+        this.stringColumns = stringColumns;
+        this.longColumns = longColumns;
+    }
+
+    int stringColumns() {
+        return stringColumns;
+    }
+
+    int longColumns() {
+        return longColumns;
+    }
+
+    abstract void encode(T entity, String[] strings, long[] longs);
+
+    abstract T decode(String[] strings, long[] longs);
+
+    static final EntityCodec<NhomNC> NHOMNC = new EntityCodec<>(3, 2) {
+        @Override
+        void encode(NhomNC group, String[] strings, long[] longs) {
+            strings[0] = group.getMaHomnc();
+            strings[1] = group.getTenNhomnc();
+            strings[2] = group.getTenPhong();
+            longs[0] = time(group.getCreatedAt());
+            longs[1] = time(group.getUpdatedAt());
+        }
+
+        @Override
+        NhomNC decode(String[] strings, long[] longs) {
+            return new NhomNC(strings[0], strings[1], strings[2], time(longs[0]), time(longs[1]));
+        }
+    };
+
+    static final EntityCodec<NhanVien> NHANVIEN = new EntityCodec<>(3, 2) {
+        @Override
+        void encode(NhanVien employee, String[] strings, long[] longs) {
+            strings[0] = employee.getMaNv();
+            strings[1] = employee.getHoTen();
+            strings[2] = employee.getMaHomnc();
+            longs[0] = time(employee.getCreatedAt());
+            longs[1] = time(employee.getUpdatedAt());
+        }
+
+        @Override
+        NhanVien decode(String[] strings, long[] longs) {
+            NhanVien employee = new NhanVien(strings[0], strings[1], strings[2]);
+            employee.setCreatedAt(time(longs[0]));
+            employee.setUpdatedAt(time(longs[1]));
+            return employee;
+        }
+    };
+
+    static final EntityCodec<DeAn> DEAN = new EntityCodec<>(3, 2) {
+        @Override
+        void encode(DeAn project, String[] strings, long[] longs) {
+            strings[0] = project.getMaDa();
+            strings[1] = project.getTenDa();
+            strings[2] = project.getMaHomnc();
+            longs[0] = time(project.getCreatedAt());
+            longs[1] = time(project.getUpdatedAt());
+        }
+
+        @Override
+        DeAn decode(String[] strings, long[] longs) {
+            DeAn project = new DeAn(strings[0], strings[1], strings[2]);
+            project.setCreatedAt(time(longs[0]));
+            project.setUpdatedAt(time(longs[1]));
+            return project;
+        }
+    };
+
+    static final EntityCodec<ThamGia> THAMGIA = new EntityCodec<>(2, 2) {
+        @Override
+        void encode(ThamGia participation, String[] strings, long[] longs) {
+            strings[0] = participation.getMaNv();
+            strings[1] = participation.getMaDa();
+            longs[0] = participation.getNgayThamGia() != null ? participation.getNgayThamGia().toEpochDay() : NULL;
+            longs[1] = time(participation.getCreatedAt());
+        }
+
+        @Override
+        ThamGia decode(String[] strings, long[] longs) {
+            return new ThamGia(strings[0], strings[1],
+                    longs[0] != NULL ? LocalDate.ofEpochDay(longs[0]) : null, time(longs[1]));
+        }
+    };
+
+    private static final Map<Class<?>, EntityCodec<?>> BY_CLASS = Map.of(
+            NhomNC.class, NHOMNC,
+            NhanVien.class, NHANVIEN,
+            DeAn.class, DEAN,
+            ThamGia.class, THAMGIA);
+
+    /**
+     * The codec for rows of this class, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityCodec<T> forClass(Class<?> type) {
+        return (EntityCodec<T>) BY_CLASS.get(type);
+    }
+
+    /**
+     * Timestamps are kept as microseconds since the epoch, read as UTC; DATETIME
+     * has 1/300 s precision, so nothing is lost.
+     */
+    static long time(LocalDateTime value) {
+        if (value == null) {
+            return NULL;
+        }
+        return value.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + value.getNano() / 1_000;
+    }
+
+    static LocalDateTime time(long value) {
+        if (value == NULL) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1_000_000),
+                Math.floorMod(value, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,56 @@
+package com.research.distributed.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Load of one fragment as seen by the rebalancer: the rows each group owns
+ * there and how busy the fragment's connection pool is.
+ */
+public class FragmentLoad {
+    private final String fragment;
+    private final Map<String, Long> groupRows;
+    private final double poolUtilization;
+
+    public FragmentLoad(String fragment, Map<String, Long> groupRows, double poolUtilization) {
+        this.fragment = fragment;
+        this.groupRows = Collections.unmodifiableMap(groupRows);
+        this.poolUtilization = poolUtilization;
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    /**
+     * Rows per group: the group itself, its employees, projects and their participations.
+     */
+    public Map<String, Long> getGroupRows() {
+        return groupRows;
+    }
+
+    public long getTotalRows() {
+        return groupRows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double getPoolUtilization() {
+        return poolUtilization;
+    }
+
+    /**
+     * Weight of data on this fragment: rows scaled up by how hot its pool runs.
+     */
+    public double getPressure() {
+        return 1.0 + poolUtilization;
+    }
+
+    public double getScore() {
+        return getTotalRows() * getPressure();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d groups, %d rows, pool %.0f%%, score %.0f",
+                fragment, groupRows.size(), getTotalRows(), poolUtilization * 100, getScore());
+    }
+}
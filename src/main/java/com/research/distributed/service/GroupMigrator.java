@@ -0,0 +1,613 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.DistributedTransaction;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.ParticipantCall;
+import com.research.distributed.connection.RecoveryHandler;
+import com.research.distributed.connection.TransactionCoordinator;
+import com.research.distributed.connection.WorkPriority;
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.exception.FragmentException;
+import com.research.distributed.model.NhomNC;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online migration of a research group (with its employees, projects and
+ * participations) from one fragment to another.
+ *
+ * Instead of one transaction spanning the whole copy, rows are copied in
+ * keyset-ordered chunks: each chunk is a short autocommit read on the source
+ * and one batched insert transaction on the target, throttled to the configured
+ * rows-per-second budget. Only the final switchover holds locks on both
+ * fragments: it locks the group's source rows, verifies the copy by checksum
+ * (re-copying inside the switchover if writes raced with it), deletes the
+ * source rows and commits.
+ *
+ * While the copy runs, the group is registered as migrating with the fragment
+ * configuration: routed reads and all writes keep going to the source, reads
+ * skip the group's rows on the target, and no read registers the target as the
+ * group's location, until the switchover commits. A failed migration removes
+ * the copy. A switchover left in doubt (a participant failed to commit after
+ * the decision) keeps the group migrating and is redone in the background,
+ * with backoff, until it has been applied.
+ */
+public class GroupMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(GroupMigrator.class);
+    private static GroupMigrator instance;
+
+    // Decision log kind; payload is group, source, target, new department
+    private static final String TX_KIND = "migrate";
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000;
+    private static final long REDO_INITIAL_DELAY_MILLIS = 1_000;
+    private static final long REDO_MAX_DELAY_MILLIS = 60_000;
+
+    private final FragmentConnectionManager connectionManager;
+    private final TransactionCoordinator coordinator;
+    private final int chunkSize;
+    private final int rowsPerSecond;
+    private final ScheduledExecutorService redoer;
+
+    private GroupMigrator() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.coordinator = TransactionCoordinator.getInstance();
+        this.chunkSize = config.getMigrationChunkSize();
+        this.rowsPerSecond = config.getMigrationRowsPerSecond();
+        this.redoer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(WorkPriority.MIGRATION.wrap(runnable), "migration-redo");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized GroupMigrator getInstance() {
+        if (instance == null) {
+            instance = new GroupMigrator();
+        }
+        return instance;
+    }
+
+    /**
+     * Copy order respects the foreign keys: employees and projects before participations.
+     */
+    private static final List<TableCopy> TABLES = List.of(
+            new TableCopy("nhanvien", 1, 1,
+                    "SELECT TOP (?) manv, hoten, manhomnc, created_at FROM nhanvien_%1$s%2$s " +
+                            "WHERE manhomnc = ? AND manv > ? ORDER BY manv",
+                    "INSERT INTO nhanvien_%s (manv, hoten, manhomnc, created_at, updated_at) " +
+                            "VALUES (?, ?, ?, ?, GETDATE())",
+                    "SELECT COUNT(*), CHECKSUM_AGG(BINARY_CHECKSUM(manv, hoten, manhomnc)) " +
+                            "FROM nhanvien_%1$s%2$s WHERE manhomnc = ?"),
+            new TableCopy("dean", 1, 1,
+                    "SELECT TOP (?) mada, tenda, manhomnc, created_at FROM dean_%1$s%2$s " +
+                            "WHERE manhomnc = ? AND mada > ? ORDER BY mada",
+                    "INSERT INTO dean_%s (mada, tenda, manhomnc, created_at, updated_at) " +
+                            "VALUES (?, ?, ?, ?, GETDATE())",
+                    "SELECT COUNT(*), CHECKSUM_AGG(BINARY_CHECKSUM(mada, tenda, manhomnc)) " +
+                            "FROM dean_%1$s%2$s WHERE manhomnc = ?"),
+            // Only participations where both the employee and the project belong to the group move with it
+            new TableCopy("thamgia", 2, 2,
+                    "SELECT TOP (?) t.manv, t.mada, t.ngaythamgia, t.created_at FROM thamgia_%1$s t%2$s " +
+                            "INNER JOIN nhanvien_%1$s nv ON t.manv = nv.manv " +
+                            "INNER JOIN dean_%1$s d ON t.mada = d.mada " +
+                            "WHERE nv.manhomnc = ? AND d.manhomnc = ? " +
+                            "AND (t.manv > ? OR (t.manv = ? AND t.mada > ?)) ORDER BY t.manv, t.mada",
+                    "INSERT INTO thamgia_%s (manv, mada, ngaythamgia, created_at) VALUES (?, ?, ?, ?)",
+                    "SELECT COUNT(*), CHECKSUM_AGG(BINARY_CHECKSUM(t.manv, t.mada, t.ngaythamgia)) " +
+                            "FROM thamgia_%1$s t%2$s " +
+                            "INNER JOIN nhanvien_%1$s nv ON t.manv = nv.manv " +
+                            "INNER JOIN dean_%1$s d ON t.mada = d.mada " +
+                            "WHERE nv.manhomnc = ? AND d.manhomnc = ?")
+    );
+
+    private static final String LOCKED = " WITH (UPDLOCK, HOLDLOCK)";
+
+    /**
+     * Move the group to the target fragment and set its department.
+     * On failure the source is left untouched and authoritative. Different groups
+     * can be migrated concurrently; the same group only once at a time.
+     */
+    public void migrate(String groupId, String source, String target, String newDepartment,
+                        MigrationListener listener) throws DatabaseException {
+        if (!connectionManager.beginMigration(groupId, source, target)) {
+            throw new DatabaseException("Group " + groupId + " is already being migrated");
+        }
+        // Copies go through the migration lane of admission control, leaving connections to the UI
+        WorkPriority previousPriority = WorkPriority.bind(WorkPriority.MIGRATION);
+        DistributedTransaction tx = null;
+        boolean inDoubt = false;
+        try {
+            // Writes acknowledged by write-behind must be on the source before it is copied
+            WriteBehindQueue.getInstance().drain(source, DRAIN_TIMEOUT_MILLIS);
+            tx = coordinator.begin(TX_KIND, groupId, source, target, newDepartment);
+            migrate(tx, groupId, source, target, newDepartment, listener);
+        } catch (DatabaseException e) {
+            if (tx != null && tx.isDecided()) {
+                // Both fragments may hold the group; it stays migrating so reads ignore the copy
+                inDoubt = true;
+                scheduleRedo(tx, List.of(groupId, source, target, newDepartment), REDO_INITIAL_DELAY_MILLIS);
+            }
+            throw e;
+        } finally {
+            WorkPriority.bind(previousPriority);
+            if (!inDoubt) {
+                connectionManager.endMigration(groupId);
+            }
+        }
+    }
+
+    /**
+     * Redo the switchover of an in-doubt migration after the delay, retrying with
+     * a doubled delay until it succeeds; only then does the group stop migrating.
+     */
+    private void scheduleRedo(DistributedTransaction tx, List<String> payload, long delayMillis) {
+        String groupId = payload.get(0);
+        logger.warn("Migration of group {} is in doubt; redoing its switchover in {} ms", groupId, delayMillis);
+        redoer.schedule(() -> {
+            try {
+                redo(payload);
+            } catch (DatabaseException | RuntimeException e) {
+                logger.error("Redo of migration of group {} failed: {}", groupId, e.getMessage());
+                scheduleRedo(tx, payload, Math.min(delayMillis * 2, REDO_MAX_DELAY_MILLIS));
+                return;
+            }
+            tx.end();
+            connectionManager.endMigration(groupId);
+            connectionManager.registerGroupLocation(groupId, payload.get(2));
+            logger.info("Migration of group {} completed by redo", groupId);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void migrate(DistributedTransaction tx, String groupId, String source, String target,
+                         String newDepartment, MigrationListener listener) throws DatabaseException {
+        logger.info("Online migration of group {} from {} to {} (chunk {}, budget {} rows/s, txn {})",
+                groupId, source, target, chunkSize, rowsPerSecond > 0 ? rowsPerSecond : "unlimited", tx.getId());
+        Progress progress = new Progress(groupId, listener);
+        boolean targetTouched = false;
+
+        try {
+            progress.report(MigrationProgress.Phase.PREPARING, null);
+            long totalRows = 0;
+            try (Connection src = connectionManager.getConnection(source)) {
+                NhomNC group = readGroup(src, source, groupId, false);
+                if (group == null) {
+                    throw new DatabaseException("Group not found: " + groupId, source, null);
+                }
+                for (TableCopy table : TABLES) {
+                    totalRows += checksum(src, table, source, groupId, false)[0];
+                }
+                progress.totalRows = totalRows;
+
+                try (Connection dst = connectionManager.getConnection(target)) {
+                    // Leftovers of an earlier failed attempt
+                    targetTouched = true;
+                    deleteGroupRows(dst, target, groupId);
+                    insertGroup(dst, target, group, newDepartment);
+
+                    for (TableCopy table : TABLES) {
+                        copyTable(table, src, source, dst, target, groupId, progress, false);
+                    }
+                }
+            }
+
+            progress.report(MigrationProgress.Phase.SWITCHING_OVER, null);
+            switchover(tx, groupId, source, target, newDepartment, progress);
+
+            progress.report(MigrationProgress.Phase.COMPLETED, null);
+            logger.info("Migrated group {} from {} to {}: {} rows in {} ms",
+                    groupId, source, target, progress.copied, progress.elapsedMillis());
+        } catch (SQLException | FragmentException | InterruptedException | DatabaseException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            progress.report(MigrationProgress.Phase.FAILED, null);
+            if (tx.isDecided()) {
+                // Past the decision the move must complete; the scheduled redo (or recovery) finishes it
+                if (e instanceof DatabaseException databaseException) {
+                    throw databaseException;
+                }
+                throw new DatabaseException("Migration failed after commit decision: " + e.getMessage(), e);
+            }
+            tx.rollback();
+            if (targetTouched) {
+                removeCopy(groupId, target);
+            }
+            tx.end();
+            if (e instanceof DatabaseException databaseException) {
+                throw databaseException;
+            }
+            throw new DatabaseException("Migration failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copy one table in keyset chunks. Outside the switchover every chunk is its
+     * own target transaction and the copy is throttled; inside it the caller's
+     * transactions and locks are used.
+     */
+    private void copyTable(TableCopy table, Connection src, String source, Connection dst, String target,
+                           String groupId, Progress progress, boolean inSwitchover)
+            throws SQLException, InterruptedException {
+        String selectSql = String.format(table.selectSql, source, inSwitchover ? LOCKED : "");
+        String insertSql = String.format(table.insertSql, target);
+        Object[] lastKey = null;
+
+        while (true) {
+            List<Object[]> chunk = new ArrayList<>();
+            try (PreparedStatement stmt = src.prepareStatement(selectSql)) {
+                int index = 1;
+                stmt.setInt(index++, chunkSize);
+                for (int i = 0; i < table.groupParams; i++) {
+                    stmt.setString(index++, groupId);
+                }
+                for (Object value : table.keysetParams(lastKey)) {
+                    stmt.setObject(index++, value);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        Object[] row = new Object[columns];
+                        for (int i = 0; i < columns; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        chunk.add(row);
+                    }
+                }
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            if (!inSwitchover) {
+                dst.setAutoCommit(false);
+            }
+            try (PreparedStatement stmt = dst.prepareStatement(insertSql)) {
+                for (Object[] row : chunk) {
+                    for (int i = 0; i < row.length; i++) {
+                        stmt.setObject(i + 1, row[i]);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                if (!inSwitchover) {
+                    dst.commit();
+                }
+            } catch (SQLException e) {
+                if (!inSwitchover) {
+                    dst.rollback();
+                }
+                throw e;
+            } finally {
+                if (!inSwitchover) {
+                    dst.setAutoCommit(true);
+                }
+            }
+
+            lastKey = chunk.get(chunk.size() - 1);
+            progress.copied += chunk.size();
+            if (!inSwitchover) {
+                progress.report(MigrationProgress.Phase.COPYING, table.name);
+                throttle(progress);
+            }
+            if (chunk.size() < chunkSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sleep as long as needed to keep the average copy rate within the budget.
+     */
+    private void throttle(Progress progress) throws InterruptedException {
+        if (rowsPerSecond <= 0) {
+            return;
+        }
+        long dueMillis = progress.copied * 1000L / rowsPerSecond;
+        long aheadMillis = dueMillis - progress.elapsedMillis();
+        if (aheadMillis > 0) {
+            Thread.sleep(aheadMillis);
+        }
+    }
+
+    /**
+     * The only phase that holds locks on both fragments, run as a two-phase commit:
+     * the source locks and checksums, the target checksums, then (after a resync if
+     * writes raced with the copy) the source deletes and the target takes over the
+     * group, all in parallel. The target commits before the source, so the group
+     * always exists on at least one fragment.
+     */
+    private void switchover(DistributedTransaction tx, String groupId, String source, String target,
+                            String newDepartment, Progress progress)
+            throws SQLException, FragmentException, DatabaseException, InterruptedException {
+        long start = System.nanoTime();
+
+        Map<String, ParticipantCall<GroupState>> inspect = new LinkedHashMap<>();
+        // Freeze the group on the source until the switchover commits
+        inspect.put(source, conn -> readState(conn, source, groupId, true));
+        inspect.put(target, conn -> readState(conn, target, groupId, false));
+        Map<String, GroupState> states = tx.parallel(inspect);
+        GroupState expected = states.get(source);
+        GroupState actual = states.get(target);
+        if (expected.group == null) {
+            throw new DatabaseException("Group " + groupId + " was deleted during migration", source, null);
+        }
+
+        Connection src = tx.connection(source);
+        Connection dst = tx.connection(target);
+        if (actual.group == null) {
+            insertGroup(dst, target, expected.group, newDepartment);
+        }
+        boolean inSync = true;
+        for (int i = 0; i < TABLES.size(); i++) {
+            if (expected.checksums[i][0] != actual.checksums[i][0]
+                    || expected.checksums[i][1] != actual.checksums[i][1]) {
+                logger.warn("Copy of {} for group {} is out of date (source {} rows, target {} rows)",
+                        TABLES.get(i).name, groupId, expected.checksums[i][0], actual.checksums[i][0]);
+                inSync = false;
+            }
+        }
+        if (!inSync) {
+            // Writes raced with the copy: redo it under the source locks
+            deleteChildRows(dst, target, groupId);
+            for (TableCopy table : TABLES) {
+                copyTable(table, src, source, dst, target, groupId, progress, true);
+            }
+        }
+
+        Map<String, ParticipantCall<Void>> work = new LinkedHashMap<>();
+        work.put(source, conn -> {
+            deleteGroupRows(conn, source, groupId);
+            return null;
+        });
+        work.put(target, conn -> {
+            execute(conn, String.format("UPDATE nhomnc_%s SET tennhomnc = ?, tenphong = ? WHERE manhomnc = ?",
+                    target), expected.group.getTenNhomnc(), newDepartment, groupId);
+            return null;
+        });
+        tx.prepare(work);
+        tx.commit(List.of(target, source));
+        logger.info("Switchover of group {} held locks for {} ms{}", groupId,
+                (System.nanoTime() - start) / 1_000_000, inSync ? "" : " (copy was redone)");
+    }
+
+    /**
+     * Finish migrations interrupted by a crash. A committed one whose source rows
+     * still exist gets its switchover redone; an uncommitted one loses its copy.
+     */
+    public void recover() throws DatabaseException {
+        coordinator.recover(TX_KIND, new RecoveryHandler() {
+            @Override
+            public void redo(List<String> payload) throws DatabaseException {
+                GroupMigrator.this.redo(payload);
+                connectionManager.registerGroupLocation(payload.get(0), payload.get(2));
+            }
+
+            @Override
+            public void abort(List<String> payload) throws DatabaseException {
+                String groupId = payload.get(0);
+                String source = payload.get(1);
+                String target = payload.get(2);
+                // Without the source rows the target copy is the only one left
+                if (groupExists(source, groupId)) {
+                    removeCopy(groupId, target);
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply a logged commit decision: switch over again if the source still holds the group.
+     */
+    private void redo(List<String> payload) throws DatabaseException {
+        String groupId = payload.get(0);
+        String source = payload.get(1);
+        String target = payload.get(2);
+        if (!groupExists(source, groupId)) {
+            return;
+        }
+        DistributedTransaction tx = coordinator.begin(TX_KIND, payload.toArray(new String[0]));
+        try {
+            switchover(tx, groupId, source, target, payload.get(3), new Progress(groupId, null));
+        } catch (SQLException | FragmentException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (!tx.isDecided()) {
+                tx.rollback();
+                tx.end();
+            }
+            throw new DatabaseException("Redo of migration of group " + groupId + " failed", e);
+        } catch (DatabaseException e) {
+            if (!tx.isDecided()) {
+                tx.rollback();
+                tx.end();
+            }
+            throw e;
+        }
+    }
+
+    private boolean groupExists(String fragment, String groupId) throws DatabaseException {
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            return readGroup(conn, fragment, groupId, false) != null;
+        } catch (SQLException | FragmentException e) {
+            throw new DatabaseException("Cannot read group " + groupId, fragment, e);
+        }
+    }
+
+    private GroupState readState(Connection conn, String fragment, String groupId, boolean lock)
+            throws SQLException {
+        GroupState state = new GroupState();
+        state.group = readGroup(conn, fragment, groupId, lock);
+        state.checksums = new long[TABLES.size()][];
+        for (int i = 0; i < TABLES.size(); i++) {
+            state.checksums[i] = checksum(conn, TABLES.get(i), fragment, groupId, lock);
+        }
+        return state;
+    }
+
+    private void removeCopy(String groupId, String target) {
+        try (Connection dst = connectionManager.getConnection(target)) {
+            deleteGroupRows(dst, target, groupId);
+            logger.info("Removed partial copy of group {} from fragment {}", groupId, target);
+        } catch (SQLException | FragmentException e) {
+            logger.error("Could not remove partial copy of group {} from {}: {}", groupId, target, e.getMessage());
+        }
+    }
+
+    private NhomNC readGroup(Connection conn, String fragment, String groupId, boolean lock) throws SQLException {
+        String sql = String.format(
+                "SELECT manhomnc, tennhomnc, tenphong, created_at FROM nhomnc_%s%s WHERE manhomnc = ?",
+                fragment, lock ? LOCKED : "");
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, groupId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                return new NhomNC(rs.getString("manhomnc"), rs.getString("tennhomnc"), rs.getString("tenphong"),
+                        createdAt != null ? createdAt.toLocalDateTime() : null, null);
+            }
+        }
+    }
+
+    private void insertGroup(Connection conn, String fragment, NhomNC group, String newDepartment)
+            throws SQLException {
+        String sql = String.format(
+                "INSERT INTO nhomnc_%s (manhomnc, tennhomnc, tenphong, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, GETDATE())", fragment);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, group.getMaHomnc());
+            stmt.setString(2, group.getTenNhomnc());
+            stmt.setString(3, newDepartment);
+            stmt.setObject(4, group.getCreatedAt() != null ? Timestamp.valueOf(group.getCreatedAt()) : null);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Row count and CHECKSUM_AGG of the group's rows in one table.
+     */
+    private long[] checksum(Connection conn, TableCopy table, String fragment, String groupId, boolean lock)
+            throws SQLException {
+        String sql = String.format(table.checksumSql, fragment, lock ? LOCKED : "");
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < table.groupParams; i++) {
+                stmt.setString(i + 1, groupId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+        }
+    }
+
+    private void deleteChildRows(Connection conn, String fragment, String groupId) throws SQLException {
+        // Participations that reference either an employee or a project of the group block their deletion
+        execute(conn, String.format(
+                "DELETE FROM thamgia_%1$s WHERE manv IN (SELECT manv FROM nhanvien_%1$s WHERE manhomnc = ?) " +
+                        "OR mada IN (SELECT mada FROM dean_%1$s WHERE manhomnc = ?)", fragment), groupId, groupId);
+        execute(conn, String.format("DELETE FROM dean_%s WHERE manhomnc = ?", fragment), groupId);
+        execute(conn, String.format("DELETE FROM nhanvien_%s WHERE manhomnc = ?", fragment), groupId);
+    }
+
+    private void deleteGroupRows(Connection conn, String fragment, String groupId) throws SQLException {
+        deleteChildRows(conn, fragment, groupId);
+        execute(conn, String.format("DELETE FROM nhomnc_%s WHERE manhomnc = ?", fragment), groupId);
+    }
+
+    private void execute(Connection conn, String sql, Object... params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * How one table of a group is copied: a keyset-paginated select (%1$s fragment,
+     * %2$s lock hint), the matching insert and a checksum query for verification.
+     */
+    private static final class TableCopy {
+        private final String name;
+        private final int groupParams;
+        private final int keyColumns;
+        private final String selectSql;
+        private final String insertSql;
+        private final String checksumSql;
+
+        private TableCopy(String name, int groupParams, int keyColumns,
+                          String selectSql, String insertSql, String checksumSql) {
+            this.name = name;
+            this.groupParams = groupParams;
+            this.keyColumns = keyColumns;
+            this.selectSql = selectSql;
+            this.insertSql = insertSql;
+            this.checksumSql = checksumSql;
+        }
+
+        /**
+         * Parameters of the "after the last key" predicate; the empty string sorts before every key.
+         */
+        private Object[] keysetParams(Object[] lastRow) {
+            Object first = lastRow != null ? lastRow[0] : "";
+            if (keyColumns == 1) {
+                return new Object[]{first};
+            }
+            Object second = lastRow != null ? lastRow[1] : "";
+            return new Object[]{first, first, second};
+        }
+    }
+
+    /**
+     * The group row and per-table checksums of a group on one fragment.
+     */
+    private static final class GroupState {
+        private NhomNC group;
+        private long[][] checksums;
+    }
+
+    private static final class Progress {
+        private final String groupId;
+        private final MigrationListener listener;
+        private final long startNanos = System.nanoTime();
+        private long totalRows;
+        private long copied;
+
+        private Progress(String groupId, MigrationListener listener) {
+            this.groupId = groupId;
+            this.listener = Objects.requireNonNullElse(listener, MigrationListener.NONE);
+        }
+
+        private long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        private void report(MigrationProgress.Phase phase, String table) {
+            long elapsed = Math.max(1, elapsedMillis());
+            try {
+                listener.onProgress(new MigrationProgress(groupId, phase, table, copied,
+                        Math.max(totalRows, copied), copied * 1000.0 / elapsed));
+            } catch (RuntimeException e) {
+                logger.warn("Migration progress listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.WorkPriority;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
+import com.research.distributed.exception.FragmentException;
+import com.research.distributed.model.NhomNC;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory replica of every fragment's research groups (nhomnc), so the write
+ * paths can look a group and its fragment up without a round trip.
+ *
+ * The replica is loaded at startup and kept current from the NhomNC write paths'
+ * DataChangeEvents. Every groups.refreshSeconds it compares a per-fragment version
+ * (row count and CHECKSUM_AGG over the rows, including updated_at) with the one it
+ * loaded and reloads fragments that changed behind its back, e.g. from another
+ * client. A miss is not proof that a group does not exist; callers fall back to the
+ * database for that.
+ *
+ * Each fragment's groups are kept apart, so reloading one fragment never replaces
+ * what is known about another. A group is only answered, and its location only
+ * registered with the router, while exactly one fragment holds it: the copy of a
+ * group being migrated does not count, and a group found on several fragments
+ * (left behind by a failed migration) is a miss and has its location forgotten.
+ */
+public class GroupReferenceCache {
+    private static final Logger logger = LoggerFactory.getLogger(GroupReferenceCache.class);
+    private static GroupReferenceCache instance;
+
+    private final FragmentConnectionManager connectionManager;
+    private final FragmentExecutor fragmentExecutor;
+    private final int refreshSeconds;
+    private final ScheduledExecutorService refresher;
+
+    // fragment -> group ID -> group
+    private final Map<String, Map<String, NhomNC>> groups = new ConcurrentHashMap<>();
+    private final Map<String, List<Long>> versions = new ConcurrentHashMap<>();
+    // Bumped by every applied event, so a reload that raced with one is redone
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    private GroupReferenceCache() {
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+        this.refreshSeconds = DatabaseConfig.getInstance().getGroupsRefreshSeconds();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(WorkPriority.BATCH.wrap(runnable), "group-cache-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        DataChangeBus.getInstance().subscribe(this::onDataChanged);
+    }
+
+    public static synchronized GroupReferenceCache getInstance() {
+        if (instance == null) {
+            instance = new GroupReferenceCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Load every fragment's groups (blocking) and schedule the version checks.
+     */
+    public void start() {
+        reload(connectionManager.getAllFragments());
+        loaded = true;
+        refresher.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        logger.info("Group reference cache loaded {} groups (version check every {} s)",
+                groupCount(), refreshSeconds);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * The group as last seen, or null if it is not in the replica.
+     */
+    public NhomNC get(String groupId) {
+        Entry entry = locate(groupId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        NhomNC group = entry.group;
+        return new NhomNC(group.getMaHomnc(), group.getTenNhomnc(), group.getTenPhong(),
+                group.getCreatedAt(), group.getUpdatedAt());
+    }
+
+    /**
+     * The fragment that holds the group, or null if it is not in the replica.
+     */
+    public String getFragment(String groupId) {
+        Entry entry = locate(groupId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.fragment;
+    }
+
+    /**
+     * The group and the one fragment that holds it, or null if none or several do.
+     */
+    private Entry locate(String groupId) {
+        if (groupId == null) {
+            return null;
+        }
+        List<String> holders = holders(groupId);
+        if (holders.size() != 1) {
+            return null;
+        }
+        NhomNC group = groups.getOrDefault(holders.get(0), Map.of()).get(groupId);
+        return group != null ? new Entry(group, holders.get(0)) : null;
+    }
+
+    /**
+     * Fragments whose replica holds the group, not counting an unfinished migration copy.
+     */
+    private List<String> holders(String groupId) {
+        List<String> holders = new ArrayList<>();
+        for (Map.Entry<String, Map<String, NhomNC>> fragment : groups.entrySet()) {
+            if (fragment.getValue().containsKey(groupId)
+                    && !connectionManager.isMigrationCopy(groupId, fragment.getKey())) {
+                holders.add(fragment.getKey());
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * Tell the router where the group is if exactly one fragment holds it, and
+     * make it forget a location that several fragments claim. A group being
+     * migrated is left alone; the migration registers its new location.
+     */
+    private void registerLocation(String groupId) {
+        if (connectionManager.isGroupMigrating(groupId)) {
+            return;
+        }
+        List<String> holders = holders(groupId);
+        if (holders.size() == 1) {
+            connectionManager.registerGroupLocation(groupId, holders.get(0));
+        } else if (holders.size() > 1) {
+            logger.warn("Group {} exists on fragments {}", groupId, holders);
+            connectionManager.forgetGroupLocation(groupId);
+        }
+    }
+
+    private Map<String, NhomNC> fragmentGroups(String fragment) {
+        return groups.computeIfAbsent(fragment, f -> new ConcurrentHashMap<>());
+    }
+
+    private long groupCount() {
+        return groups.values().stream().flatMap(byId -> byId.keySet().stream()).distinct().count();
+    }
+
+    /**
+     * Forget what is known about a fragment and reload it in the background,
+     * for callers that found the replica to be wrong.
+     */
+    public void invalidate(String fragment) {
+        versions.remove(fragment);
+        refresher.execute(() -> reload(List.of(fragment)));
+    }
+
+    private void onDataChanged(DataChangeEvent event) {
+        if (!"nhomnc".equals(event.getTable()) || event.getFragment() == null) {
+            return;
+        }
+        generation(event.getFragment()).incrementAndGet();
+        // The version no longer describes the fragment either way
+        versions.remove(event.getFragment());
+
+        if (event.getType() == DataChangeEvent.Type.MIGRATE || !(event.getSubject() instanceof NhomNC group)) {
+            refresher.execute(() -> reload(List.of(event.getFragment())));
+            return;
+        }
+        switch (event.getType()) {
+            case INSERT, UPDATE -> {
+                fragmentGroups(event.getFragment()).put(group.getMaHomnc(), new NhomNC(group.getMaHomnc(),
+                        group.getTenNhomnc(), group.getTenPhong(), group.getCreatedAt(), group.getUpdatedAt()));
+                registerLocation(group.getMaHomnc());
+            }
+            case DELETE -> {
+                fragmentGroups(event.getFragment()).remove(group.getMaHomnc());
+                registerLocation(group.getMaHomnc());
+            }
+            default -> refresher.execute(() -> reload(List.of(event.getFragment())));
+        }
+    }
+
+    /**
+     * Compare each fragment's version with the loaded one and reload what changed.
+     */
+    private void refresh() {
+        List<String> changed = new ArrayList<>();
+        for (FragmentResult<List<Long>> result : fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(), this::readVersion)) {
+            if (!result.isSuccess()) {
+                logger.warn("Group version check on {} failed: {}", result.getFragment(),
+                        result.getError().getMessage());
+            } else if (!result.getValue().equals(versions.get(result.getFragment()))) {
+                changed.add(result.getFragment());
+            }
+        }
+        if (!changed.isEmpty()) {
+            reload(changed);
+        }
+    }
+
+    private void reload(List<String> fragments) {
+        Map<String, Long> startGenerations = new HashMap<>();
+        for (String fragment : fragments) {
+            startGenerations.put(fragment, generation(fragment).get());
+        }
+
+        for (FragmentResult<Snapshot> result : fragmentExecutor.invokeAll(fragments, this::load)) {
+            String fragment = result.getFragment();
+            if (!result.isSuccess()) {
+                logger.warn("Cannot load groups of fragment {}: {}", fragment, result.getError().getMessage());
+                continue;
+            }
+            if (generation(fragment).get() != startGenerations.get(fragment)) {
+                // A write landed while loading; the snapshot may predate it
+                refresher.execute(() -> reload(List.of(fragment)));
+                continue;
+            }
+            Snapshot snapshot = result.getValue();
+            // Only this fragment's entries are replaced; what other fragments hold stays as loaded
+            Map<String, NhomNC> previous = groups.put(fragment, new ConcurrentHashMap<>(snapshot.groups));
+            // Groups gone from this fragment may now be held by one other fragment only
+            Set<String> affected = new HashSet<>(snapshot.groups.keySet());
+            if (previous != null) {
+                affected.addAll(previous.keySet());
+            }
+            for (String groupId : affected) {
+                registerLocation(groupId);
+            }
+            versions.put(fragment, snapshot.version);
+            reloads.incrementAndGet();
+            logger.debug("Reloaded {} groups of fragment {}", snapshot.groups.size(), fragment);
+        }
+    }
+
+    private Snapshot load(String fragment) throws SQLException, FragmentException {
+        Snapshot snapshot = new Snapshot();
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            // Version first: a write between the two reads only causes one extra reload
+            snapshot.version = readVersion(conn, fragment);
+            String sql = String.format(
+                    "SELECT manhomnc, tennhomnc, tenphong, created_at, updated_at FROM nhomnc_%s", fragment);
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp createdAt = rs.getTimestamp("created_at");
+                    Timestamp updatedAt = rs.getTimestamp("updated_at");
+                    NhomNC group = new NhomNC(rs.getString("manhomnc"), rs.getString("tennhomnc"),
+                            rs.getString("tenphong"),
+                            createdAt != null ? createdAt.toLocalDateTime() : null,
+                            updatedAt != null ? updatedAt.toLocalDateTime() : null);
+                    snapshot.groups.put(group.getMaHomnc(), group);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private List<Long> readVersion(String fragment) throws SQLException, FragmentException {
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            return readVersion(conn, fragment);
+        }
+    }
+
+    private List<Long> readVersion(Connection conn, String fragment) throws SQLException {
+        String sql = String.format("SELECT COUNT(*), CHECKSUM_AGG(BINARY_CHECKSUM(manhomnc, tennhomnc, " +
+                "tenphong, updated_at)) FROM nhomnc_%s", fragment);
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return Arrays.asList(rs.getLong(1), rs.getLong(2));
+        }
+    }
+
+    private AtomicLong generation(String fragment) {
+        return generations.computeIfAbsent(fragment, f -> new AtomicLong());
+    }
+
+    public void logStats() {
+        logger.info("Group reference cache stats: {} groups, {} hits, {} misses, {} fragment reloads",
+                groupCount(), hits.get(), misses.get(), reloads.get());
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private static final class Entry {
+        private final NhomNC group;
+        private final String fragment;
+
+        private Entry(NhomNC group, String fragment) {
+            this.group = group;
+            this.fragment = fragment;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, NhomNC> groups = new HashMap<>();
+        private List<Long> version;
+    }
+}
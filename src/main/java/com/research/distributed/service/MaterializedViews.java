@@ -0,0 +1,471 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.WorkPriority;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
+import com.research.distributed.exception.FragmentException;
+import com.research.distributed.model.DeAn;
+import com.research.distributed.model.NhanVien;
+import com.research.distributed.model.ThamGia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application-level materialized views over all fragments:
+ * project -> participants and group -> projects with external participants.
+ *
+ * The views are built once with a full scan and then kept current from the
+ * row-level DataChangeEvents of the DAOs. Events that carry no row (migrations,
+ * bulk writes) mark the views stale and trigger a rebuild; while stale, callers
+ * fall back to querying the fragments. A periodic rebuild compares the result
+ * with the incrementally maintained state and logs any drift it corrects.
+ */
+public class MaterializedViews {
+    private static final Logger logger = LoggerFactory.getLogger(MaterializedViews.class);
+    private static MaterializedViews instance;
+
+    private final FragmentConnectionManager connectionManager;
+    private final FragmentExecutor fragmentExecutor;
+    private final boolean enabled;
+    private final int rebuildIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    private Snapshot current;
+    private boolean stale = true;
+
+    // Events seen while a rebuild is scanning the fragments, replayed on the new snapshot
+    private List<DataChangeEvent> pendingEvents;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong appliedEvents = new AtomicLong();
+    private final AtomicLong driftCorrections = new AtomicLong();
+
+    private MaterializedViews() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+        this.enabled = config.isViewsEnabled();
+        this.rebuildIntervalSeconds = config.getViewsRebuildIntervalSeconds();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(WorkPriority.BATCH.wrap(runnable), "view-rebuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            DataChangeBus.getInstance().subscribe(this::onDataChanged);
+        }
+    }
+
+    public static synchronized MaterializedViews getInstance() {
+        if (instance == null) {
+            instance = new MaterializedViews();
+        }
+        return instance;
+    }
+
+    /**
+     * Build the views in the background and schedule the periodic drift check.
+     */
+    public void start() {
+        if (!enabled) {
+            logger.info("Materialized views disabled");
+            return;
+        }
+        requestRebuild();
+        scheduler.scheduleWithFixedDelay(this::rebuild,
+                rebuildIntervalSeconds, rebuildIntervalSeconds, TimeUnit.SECONDS);
+        logger.info("Materialized views enabled (full rebuild every {} s)", rebuildIntervalSeconds);
+    }
+
+    public synchronized boolean isReady() {
+        return enabled && current != null && !stale;
+    }
+
+    /**
+     * Query 1 from the views: projects of the group with participants from other groups.
+     * Only meaningful when {@link #isReady()} is true.
+     */
+    public synchronized List<DeAn> getProjectsWithExternalParticipants(String groupId) {
+        List<DeAn> results = new ArrayList<>();
+        for (String maDa : current.externalProjectsByGroup.getOrDefault(groupId, Collections.emptySet())) {
+            results.add(copyOf(current.projects.get(maDa)));
+        }
+        return results;
+    }
+
+    /**
+     * Query 3 from the views: projects without participants, on one fragment or on all if null.
+     */
+    public synchronized List<DeAn> getProjectsWithoutParticipants(String fragment) {
+        List<DeAn> results = new ArrayList<>();
+        for (DeAn project : current.projects.values()) {
+            if (current.participantCount(project.getMaDa()) == 0
+                    && (fragment == null || fragment.equals(current.projectFragments.get(project.getMaDa())))) {
+                results.add(copyOf(project));
+            }
+        }
+        return results;
+    }
+
+    public synchronized Map<String, Integer> getParticipantCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String maDa : current.projects.keySet()) {
+            counts.put(maDa, current.participantCount(maDa));
+        }
+        return counts;
+    }
+
+    private static DeAn copyOf(DeAn project) {
+        return new DeAn(project.getMaDa(), project.getTenDa(), project.getMaHomnc());
+    }
+
+    private synchronized void onDataChanged(DataChangeEvent event) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        }
+        if (current == null || stale) {
+            return;
+        }
+        if (!current.apply(event)) {
+            logger.debug("Views cannot apply {} incrementally, rebuilding", event);
+            stale = true;
+            requestRebuild();
+        } else {
+            appliedEvents.incrementAndGet();
+        }
+    }
+
+    private void requestRebuild() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        rebuildQueued.set(false);
+        synchronized (this) {
+            pendingEvents = new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        Snapshot fresh = load();
+
+        synchronized (this) {
+            List<DataChangeEvent> replay = pendingEvents;
+            pendingEvents = null;
+            if (fresh == null) {
+                return;
+            }
+            for (DataChangeEvent event : replay) {
+                if (!fresh.apply(event)) {
+                    // A migration overlapped the scan: scan again
+                    requestRebuild();
+                    return;
+                }
+            }
+
+            if (current != null && !stale) {
+                int drift = current.diff(fresh);
+                if (drift > 0) {
+                    driftCorrections.addAndGet(drift);
+                    logger.warn("Materialized views drifted from the fragments on {} project(s), corrected", drift);
+                }
+            }
+            current = fresh;
+            stale = false;
+            rebuilds.incrementAndGet();
+        }
+        logger.info("Materialized views rebuilt in {} ms ({} projects)",
+                (System.nanoTime() - start) / 1_000_000, fresh.projects.size());
+    }
+
+    private Snapshot load() {
+        List<FragmentResult<Snapshot>> partials =
+                fragmentExecutor.invokeAll(connectionManager.getAllFragments(), this::loadFragment);
+
+        Snapshot merged = new Snapshot();
+        for (FragmentResult<Snapshot> partial : partials) {
+            if (!partial.isSuccess()) {
+                logger.warn("Cannot build materialized views, fragment {} failed: {}",
+                        partial.getFragment(), partial.getError().getMessage());
+                return null;
+            }
+            merged.merge(partial.getValue());
+        }
+        merged.recomputeAll();
+        return merged;
+    }
+
+    private Snapshot loadFragment(String fragment) throws SQLException, FragmentException {
+        Snapshot snapshot = new Snapshot();
+        // Rows of an unfinished migration copy on this fragment, left out of the views
+        Set<String> copiedEmployees = new HashSet<>();
+        Set<String> copiedProjects = new HashSet<>();
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    String.format("SELECT manv, manhomnc FROM nhanvien_%s", fragment));
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (connectionManager.isMigrationCopy(rs.getString("manhomnc"), fragment)) {
+                        copiedEmployees.add(rs.getString("manv"));
+                    } else {
+                        snapshot.employeeGroups.put(rs.getString("manv"), rs.getString("manhomnc"));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    String.format("SELECT mada, tenda, manhomnc FROM dean_%s", fragment));
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    DeAn project = new DeAn(rs.getString("mada"), rs.getString("tenda"), rs.getString("manhomnc"));
+                    if (connectionManager.isMigrationCopy(project.getMaHomnc(), fragment)) {
+                        copiedProjects.add(project.getMaDa());
+                        continue;
+                    }
+                    snapshot.projects.put(project.getMaDa(), project);
+                    snapshot.projectFragments.put(project.getMaDa(), fragment);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    String.format("SELECT manv, mada FROM thamgia_%s", fragment));
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String maNv = rs.getString("manv");
+                    String maDa = rs.getString("mada");
+                    if (!copiedEmployees.contains(maNv) && !copiedProjects.contains(maDa)) {
+                        snapshot.addParticipation(maNv, maDa);
+                    }
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    public long getAppliedEvents() {
+        return appliedEvents.get();
+    }
+
+    public long getDriftCorrections() {
+        return driftCorrections.get();
+    }
+
+    public void logStats() {
+        logger.info("Materialized views - Rebuilds: {}, Incremental updates: {}, Drift corrections: {}",
+                rebuilds.get(), appliedEvents.get(), driftCorrections.get());
+    }
+
+    /**
+     * The view state itself. Not thread-safe; guarded by the enclosing instance.
+     */
+    private static class Snapshot {
+        private final Map<String, String> employeeGroups = new HashMap<>();
+        private final Map<String, DeAn> projects = new TreeMap<>();
+        private final Map<String, String> projectFragments = new HashMap<>();
+        private final Map<String, Set<String>> participantsByProject = new HashMap<>();
+        private final Map<String, Set<String>> projectsByEmployee = new HashMap<>();
+        private final Map<String, Set<String>> externalProjectsByGroup = new HashMap<>();
+
+        private int participantCount(String maDa) {
+            return participantsByProject.getOrDefault(maDa, Collections.emptySet()).size();
+        }
+
+        private void addParticipation(String maNv, String maDa) {
+            participantsByProject.computeIfAbsent(maDa, k -> new HashSet<>()).add(maNv);
+            projectsByEmployee.computeIfAbsent(maNv, k -> new HashSet<>()).add(maDa);
+        }
+
+        private void removeParticipation(String maNv, String maDa) {
+            removeFrom(participantsByProject, maDa, maNv);
+            removeFrom(projectsByEmployee, maNv, maDa);
+        }
+
+        private static void removeFrom(Map<String, Set<String>> index, String key, String value) {
+            Set<String> values = index.get(key);
+            if (values != null) {
+                values.remove(value);
+                if (values.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+
+        private void merge(Snapshot other) {
+            employeeGroups.putAll(other.employeeGroups);
+            projects.putAll(other.projects);
+            projectFragments.putAll(other.projectFragments);
+            other.participantsByProject.forEach((maDa, maNvs) -> maNvs.forEach(maNv -> addParticipation(maNv, maDa)));
+        }
+
+        private void recomputeAll() {
+            externalProjectsByGroup.clear();
+            for (String maDa : projects.keySet()) {
+                recompute(maDa);
+            }
+        }
+
+        /**
+         * Re-evaluate whether one project has a participant from another group.
+         */
+        private void recompute(String maDa) {
+            DeAn project = projects.get(maDa);
+            // The project may have moved group, so drop it everywhere first
+            externalProjectsByGroup.values().forEach(set -> set.remove(maDa));
+            externalProjectsByGroup.values().removeIf(Set::isEmpty);
+            if (project == null) {
+                return;
+            }
+            for (String maNv : participantsByProject.getOrDefault(maDa, Collections.emptySet())) {
+                String employeeGroup = employeeGroups.get(maNv);
+                if (employeeGroup != null && !employeeGroup.equals(project.getMaHomnc())) {
+                    externalProjectsByGroup.computeIfAbsent(project.getMaHomnc(), k -> new TreeSet<>()).add(maDa);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Apply one row-level change. Returns false if the event cannot be applied
+         * incrementally and the views have to be rebuilt.
+         */
+        private boolean apply(DataChangeEvent event) {
+            if (event.getType() == DataChangeEvent.Type.MIGRATE) {
+                return false;
+            }
+            switch (event.getTable()) {
+                case "nhomnc":
+                    // Group attributes are not part of the views; moving a group is a MIGRATE
+                    return true;
+                case "nhanvien":
+                    return event.getSubject() instanceof NhanVien employee && applyEmployee(event.getType(), employee);
+                case "dean":
+                    return event.getSubject() instanceof DeAn project && applyProject(event, project);
+                case "thamgia":
+                    return event.getSubject() instanceof ThamGia participation
+                            && applyParticipation(event.getType(), participation);
+                default:
+                    return true;
+            }
+        }
+
+        private boolean applyEmployee(DataChangeEvent.Type type, NhanVien employee) {
+            String maNv = employee.getMaNv();
+            if (type == DataChangeEvent.Type.DELETE) {
+                employeeGroups.remove(maNv);
+            } else {
+                employeeGroups.put(maNv, employee.getMaHomnc());
+            }
+            for (String maDa : projectsByEmployee.getOrDefault(maNv, Collections.emptySet())) {
+                recompute(maDa);
+            }
+            return true;
+        }
+
+        private boolean applyProject(DataChangeEvent event, DeAn project) {
+            String maDa = project.getMaDa();
+            if (event.getType() == DataChangeEvent.Type.DELETE) {
+                projects.remove(maDa);
+                projectFragments.remove(maDa);
+                for (String maNv : new ArrayList<>(participantsByProject.getOrDefault(maDa, Collections.emptySet()))) {
+                    removeParticipation(maNv, maDa);
+                }
+            } else {
+                projects.put(maDa, copyOf(project));
+                if (event.getFragment() != null) {
+                    projectFragments.put(maDa, event.getFragment());
+                }
+            }
+            recompute(maDa);
+            return true;
+        }
+
+        private boolean applyParticipation(DataChangeEvent.Type type, ThamGia participation) {
+            String maNv = participation.getMaNv();
+            String maDa = participation.getMaDa();
+            if (type == DataChangeEvent.Type.INSERT) {
+                addParticipation(maNv, maDa);
+                recompute(maDa);
+                return true;
+            }
+            if (type != DataChangeEvent.Type.DELETE) {
+                return false;
+            }
+
+            // Null key columns match any value, as in DELETE ... WHERE manv = ?
+            Set<String> touched = new HashSet<>();
+            for (Map.Entry<String, Set<String>> entry : participantsByProject.entrySet()) {
+                if (maDa != null && !maDa.equals(entry.getKey())) {
+                    continue;
+                }
+                for (String participant : entry.getValue()) {
+                    if (maNv == null || maNv.equals(participant)) {
+                        touched.add(participant + "|" + entry.getKey());
+                    }
+                }
+            }
+            Set<String> projectsTouched = new HashSet<>();
+            for (String pair : touched) {
+                int bar = pair.indexOf('|');
+                removeParticipation(pair.substring(0, bar), pair.substring(bar + 1));
+                projectsTouched.add(pair.substring(bar + 1));
+            }
+            projectsTouched.forEach(this::recompute);
+            return true;
+        }
+
+        /**
+         * Number of projects whose participant count or external status differs.
+         */
+        private int diff(Snapshot other) {
+            Set<String> keys = new HashSet<>(projects.keySet());
+            keys.addAll(other.projects.keySet());
+            int drift = 0;
+            for (String maDa : keys) {
+                if (participantCount(maDa) != other.participantCount(maDa)
+                        || isExternal(maDa) != other.isExternal(maDa)
+                        || !Objects.equals(projectFragments.get(maDa), other.projectFragments.get(maDa))) {
+                    drift++;
+                }
+            }
+            return drift;
+        }
+
+        private boolean isExternal(String maDa) {
+            DeAn project = projects.get(maDa);
+            return project != null && externalProjectsByGroup
+                    .getOrDefault(project.getMaHomnc(), Collections.emptySet()).contains(maDa);
+        }
+    }
+}
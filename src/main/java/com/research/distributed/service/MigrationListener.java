@@ -0,0 +1,12 @@
+package com.research.distributed.service;
+
+/**
+ * Receives progress reports from a running group migration.
+ * Called on the migrating thread, so implementations must return quickly.
+ */
+@FunctionalInterface
+public interface MigrationListener {
+    MigrationListener NONE = progress -> { };
+
+    void onProgress(MigrationProgress progress);
+}
@@ -0,0 +1,72 @@
+package com.research.distributed.service;
+
+/**
+ * Snapshot of a group migration: the phase it is in and how many rows have been copied.
+ */
+public class MigrationProgress {
+
+    public enum Phase {
+        PREPARING,
+        COPYING,
+        SWITCHING_OVER,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String groupId;
+    private final Phase phase;
+    private final String table;
+    private final long rowsCopied;
+    private final long totalRows;
+    private final double rowsPerSecond;
+
+    public MigrationProgress(String groupId, Phase phase, String table,
+                             long rowsCopied, long totalRows, double rowsPerSecond) {
+        this.groupId = groupId;
+        this.phase = phase;
+        this.table = table;
+        this.rowsCopied = rowsCopied;
+        this.totalRows = totalRows;
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public long getRowsCopied() {
+        return rowsCopied;
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public double getFraction() {
+        return totalRows == 0 ? 1.0 : Math.min(1.0, (double) rowsCopied / totalRows);
+    }
+
+    @Override
+    public String toString() {
+        return switch (phase) {
+            case COPYING -> String.format("Migrating %s: copying %s, %d/%d rows (%.0f rows/s)",
+                    groupId, table, rowsCopied, totalRows, rowsPerSecond);
+            case SWITCHING_OVER -> "Migrating " + groupId + ": switching over";
+            case COMPLETED -> String.format("Migrated %s: %d rows", groupId, rowsCopied);
+            case FAILED -> "Migration of " + groupId + " failed";
+            default -> "Migrating " + groupId + ": preparing";
+        };
+    }
+}
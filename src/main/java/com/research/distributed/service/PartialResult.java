@@ -0,0 +1,94 @@
+package com.research.distributed.service;
+
+import com.research.distributed.connection.ExecutionTrace;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentOutcome;
+import com.research.distributed.connection.FragmentStatus;
+import com.research.distributed.connection.ReadCompleteness;
+import com.research.distributed.exception.DatabaseException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A traced read that may be missing some fragments' rows. Under location
+ * transparency a fragment that fails or misses the deadline is skipped rather
+ * than failing the read; this result says which fragments answered, how each
+ * one fared and how long it took, so callers can show what they have or insist
+ * on a complete answer with {@link #requireComplete()}.
+ */
+public class PartialResult<T> extends TracedResult<T> {
+    private final boolean complete;
+    private final List<FragmentOutcome> fragments;
+
+    public PartialResult(T value, ExecutionTrace trace, boolean complete, List<FragmentOutcome> fragments) {
+        super(value, trace);
+        this.complete = complete;
+        this.fragments = fragments;
+    }
+
+    /**
+     * Run the read under a new execution trace and collect its completeness.
+     */
+    public static <T> PartialResult<T> collect(String operation, boolean includePlans, QueryLoader<T> query)
+            throws DatabaseException {
+        ExecutionTrace trace = ExecutionTrace.start(operation, includePlans);
+        ReadCompleteness previous = ReadCompleteness.begin();
+        T value;
+        boolean complete;
+        try {
+            value = query.load();
+        } finally {
+            complete = ReadCompleteness.end(previous);
+            trace.finish();
+        }
+        return new PartialResult<>(value, trace, complete,
+                trace.getFragmentOutcomes(FragmentConnectionManager.getInstance().getAllFragments()));
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public List<FragmentOutcome> getFragments() {
+        return fragments;
+    }
+
+    /**
+     * The fragments whose rows are missing from the value.
+     */
+    public List<FragmentOutcome> getMissing() {
+        return fragments.stream()
+                .filter(outcome -> outcome.getStatus() == FragmentStatus.FAILED
+                        || outcome.getStatus() == FragmentStatus.TIMED_OUT)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The value, or a DatabaseException naming the fragments that did not answer.
+     */
+    public T requireComplete() throws DatabaseException {
+        if (!complete) {
+            throw new DatabaseException("Incomplete result: " + describe());
+        }
+        return getValue();
+    }
+
+    /**
+     * One line for the UI, e.g. "Partial result: 1 of 2 fragments answered (p2 TIMED_OUT 15000.0 ms)".
+     */
+    public String describe() {
+        long answered = fragments.stream().filter(outcome -> outcome.getStatus() == FragmentStatus.OK).count();
+        if (complete) {
+            if (answered == 0) {
+                return "Complete result (served without contacting a fragment)";
+            }
+            return answered == fragments.size()
+                    ? String.format("Complete result: all %d fragments answered", answered)
+                    : String.format("Complete result: %d of %d fragments needed, all answered",
+                            answered, fragments.size());
+        }
+        return String.format("Partial result: %d of %d fragments answered (%s)", answered, fragments.size(),
+                getMissing().stream().map(FragmentOutcome::toString).collect(Collectors.joining(", ")));
+    }
+}
@@ -0,0 +1,152 @@
+package com.research.distributed.service;
+
+import com.research.distributed.model.DeAn;
+import com.research.distributed.model.NhanVien;
+import com.research.distributed.model.NhomNC;
+import com.research.distributed.model.ThamGia;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A write acknowledged by the WriteBehindQueue but not yet applied to its fragment.
+ * The entity is one of the model classes; its fields are what gets written.
+ *
+ * A versioned update only applies while the row's updated_at still equals the
+ * version the user edited. Updates that follow another queued write of the same
+ * row are not versioned, since that row version only exists once the earlier
+ * write is applied.
+ */
+public class PendingWrite {
+
+    public enum Op {
+        INSERT,
+        UPDATE
+    }
+
+    // Column values of every table, as returned by fields()
+    static final int FIELD_COUNT = 3;
+
+    private final long seq;
+    private final String fragment;
+    private final String table;
+    private final Op op;
+    private final Object entity;
+    private final boolean versioned;
+    private final LocalDateTime version;
+
+    public PendingWrite(long seq, String fragment, String table, Op op, Object entity) {
+        this(seq, fragment, table, op, entity, false, null);
+    }
+
+    public PendingWrite(long seq, String fragment, String table, Op op, Object entity,
+                        boolean versioned, LocalDateTime version) {
+        this.seq = seq;
+        this.fragment = fragment;
+        this.table = table;
+        this.op = op;
+        this.entity = entity;
+        this.versioned = versioned;
+        this.version = version;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+
+    public boolean isVersioned() {
+        return versioned;
+    }
+
+    /**
+     * The updated_at the row must still have for a versioned update; null for a row never updated.
+     */
+    public LocalDateTime getVersion() {
+        return version;
+    }
+
+    /**
+     * Primary key of the entity, used to overlay the write on rows read from the database.
+     */
+    public String getKey() {
+        return keyOf(entity);
+    }
+
+    public static String keyOf(Object entity) {
+        if (entity instanceof NhomNC nhomNC) {
+            return nhomNC.getMaHomnc();
+        } else if (entity instanceof NhanVien nhanVien) {
+            return nhanVien.getMaNv();
+        } else if (entity instanceof DeAn deAn) {
+            return deAn.getMaDa();
+        } else if (entity instanceof ThamGia thamGia) {
+            return thamGia.getMaNv() + "|" + thamGia.getMaDa();
+        }
+        throw new IllegalArgumentException("Unsupported entity: " + entity);
+    }
+
+    /**
+     * The row version the entity was read with, or null if it carries none.
+     */
+    public static LocalDateTime versionOf(Object entity) {
+        if (entity instanceof NhomNC nhomNC) {
+            return nhomNC.getUpdatedAt();
+        } else if (entity instanceof NhanVien nhanVien) {
+            return nhanVien.getUpdatedAt();
+        } else if (entity instanceof DeAn deAn) {
+            return deAn.getUpdatedAt();
+        }
+        return null;
+    }
+
+    /**
+     * Column values in the order the journal stores them; null stays null.
+     */
+    List<String> fields() {
+        if (entity instanceof NhomNC nhomNC) {
+            return Arrays.asList(nhomNC.getMaHomnc(), nhomNC.getTenNhomnc(), nhomNC.getTenPhong());
+        } else if (entity instanceof NhanVien nhanVien) {
+            return Arrays.asList(nhanVien.getMaNv(), nhanVien.getHoTen(), nhanVien.getMaHomnc());
+        } else if (entity instanceof DeAn deAn) {
+            return Arrays.asList(deAn.getMaDa(), deAn.getTenDa(), deAn.getMaHomnc());
+        } else if (entity instanceof ThamGia thamGia) {
+            return Arrays.asList(thamGia.getMaNv(), thamGia.getMaDa(),
+                    thamGia.getNgayThamGia() != null ? thamGia.getNgayThamGia().toString() : null);
+        }
+        throw new IllegalArgumentException("Unsupported entity: " + entity);
+    }
+
+    static Object entityOf(String table, List<String> fields) {
+        return switch (table) {
+            case "nhomnc" -> new NhomNC(fields.get(0), fields.get(1), fields.get(2));
+            case "nhanvien" -> new NhanVien(fields.get(0), fields.get(1), fields.get(2));
+            case "dean" -> new DeAn(fields.get(0), fields.get(1), fields.get(2));
+            case "thamgia" -> new ThamGia(fields.get(0), fields.get(1),
+                    fields.get(2) != null ? LocalDate.parse(fields.get(2)) : null);
+            default -> throw new IllegalArgumentException("Unsupported table: " + table);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + op + " " + table + "_" + fragment + " " + getKey();
+    }
+}
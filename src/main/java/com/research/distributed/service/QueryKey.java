@@ -0,0 +1,61 @@
+package com.research.distributed.service;
+
+import com.research.distributed.connection.TransparencyLevel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identity of a read: operation name, parameters and transparency level.
+ */
+public final class QueryKey {
+    private final String operation;
+    private final List<Object> params;
+    private final TransparencyLevel level;
+
+    private QueryKey(String operation, TransparencyLevel level, Object... params) {
+        this.operation = operation;
+        this.level = level;
+        this.params = Collections.unmodifiableList(Arrays.asList(params));
+    }
+
+    public static QueryKey of(String operation, TransparencyLevel level, Object... params) {
+        return new QueryKey(operation, level, params);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public List<Object> getParams() {
+        return params;
+    }
+
+    public TransparencyLevel getLevel() {
+        return level;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey) o;
+        return operation.equals(other.operation) && params.equals(other.params) && level == other.level;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operation, params, level);
+    }
+
+    @Override
+    public String toString() {
+        return operation + params + "@" + (level != null ? level.getLevel() : "-");
+    }
+}
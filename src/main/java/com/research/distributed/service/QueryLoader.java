@@ -0,0 +1,11 @@
+package com.research.distributed.service;
+
+import com.research.distributed.exception.DatabaseException;
+
+/**
+ * Produces the result of a read when it is not served from a cache.
+ */
+@FunctionalInterface
+public interface QueryLoader<T> {
+    T load() throws DatabaseException;
+}
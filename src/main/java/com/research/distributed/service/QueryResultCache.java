@@ -0,0 +1,254 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.ExecutionTrace;
+import com.research.distributed.connection.ReadCompleteness;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
+import com.research.distributed.exception.DatabaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of read results keyed by QueryKey. Every entry records the
+ * table@fragment pairs it was read from, and a DataChangeEvent for one of
+ * those pairs evicts exactly the entries that depend on it. Lists of model
+ * entities are kept as CompactEntityLists (cache.compact), so a hit rebuilds
+ * fresh objects instead of sharing the cached ones.
+ */
+public class QueryResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+    private static QueryResultCache instance;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final boolean compact;
+    private final LinkedHashMap<QueryKey, Entry> entries;
+    private final SingleFlight singleFlight = SingleFlight.getInstance();
+
+    // Generation at which each table@fragment (or table@*) was last invalidated,
+    // so a load that overlapped a write is not cached with stale data
+    private final Map<String, Long> lastInvalidated = new HashMap<>();
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+
+    private static class Entry {
+        private final List<?> value;
+        private final Set<String> dependencies;
+        private final long loadNanos;
+
+        private Entry(List<?> value, Set<String> dependencies, long loadNanos) {
+            this.value = value;
+            this.dependencies = dependencies;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    private QueryResultCache() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.enabled = config.isCacheEnabled();
+        this.maxEntries = config.getCacheMaxEntries();
+        this.compact = config.isCacheCompact();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        DataChangeBus.getInstance().subscribe(this::invalidate);
+        logger.info("Query result cache {} (max {} entries{})", enabled ? "enabled" : "disabled", maxEntries,
+                compact ? ", compact entity storage" : "");
+    }
+
+    public static synchronized QueryResultCache getInstance() {
+        if (instance == null) {
+            instance = new QueryResultCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Build the dependency set of a read: every table on every fragment it touched.
+     */
+    public static Set<String> dependencies(Collection<String> tables, Collection<String> fragments) {
+        Set<String> dependencies = new HashSet<>();
+        for (String table : tables) {
+            for (String fragment : fragments) {
+                dependencies.add(table + "@" + fragment);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Return the cached result for the key, or load, cache and return it.
+     * Concurrent misses on the same key share one load through SingleFlight.
+     * Callers always get their own copy of the list.
+     */
+    public <T> List<T> get(QueryKey key, Set<String> dependencies, QueryLoader<List<T>> loader)
+            throws DatabaseException {
+        if (!enabled) {
+            return new ArrayList<>(singleFlight.execute(key, loader));
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            // Entries are never modified, so the copy (a full decode when compact) is made outside the lock
+            hits.incrementAndGet();
+            savedNanos.addAndGet(entry.loadNanos);
+            logger.debug("Cache hit for {}", key);
+            ExecutionTrace.note("Served from result cache (%s), no fragment contacted", key);
+            @SuppressWarnings("unchecked")
+            List<T> cached = (List<T>) entry.value;
+            return new ArrayList<>(cached);
+        }
+
+        return new ArrayList<>(singleFlight.execute(key, () -> load(key, dependencies, loader)));
+    }
+
+    private <T> List<T> load(QueryKey key, Set<String> dependencies, QueryLoader<List<T>> loader)
+            throws DatabaseException {
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        ReadCompleteness previous = ReadCompleteness.begin();
+        List<T> value;
+        boolean complete;
+        try {
+            value = loader.load();
+        } finally {
+            complete = ReadCompleteness.end(previous);
+        }
+        long loadNanos = System.nanoTime() - start;
+
+        synchronized (this) {
+            if (!complete) {
+                logger.debug("Not caching {}: some fragments did not answer", key);
+            } else if (invalidatedSince(dependencies, startGeneration)) {
+                logger.debug("Not caching {}: a dependency changed while it was loading", key);
+            } else {
+                entries.put(key, new Entry(store(value), dependencies, loadNanos));
+            }
+        }
+        return value;
+    }
+
+    private List<?> store(List<?> value) {
+        List<?> encoded = compact ? CompactEntityList.tryEncode(value) : null;
+        return encoded != null ? encoded : new ArrayList<>(value);
+    }
+
+    private boolean invalidatedSince(Set<String> dependencies, long startGeneration) {
+        for (String dependency : dependencies) {
+            String tableWide = dependency.substring(0, dependency.indexOf('@')) + "@*";
+            if (lastInvalidated.getOrDefault(dependency, -1L) >= startGeneration
+                    || lastInvalidated.getOrDefault(tableWide, -1L) >= startGeneration) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop every entry that read the changed table on the changed fragment.
+     */
+    public synchronized void invalidate(DataChangeEvent event) {
+        String marker = event.getTable() + "@" + (event.getFragment() != null ? event.getFragment() : "*");
+        lastInvalidated.put(marker, generation++);
+
+        int removed = 0;
+        Iterator<Map.Entry<QueryKey, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (dependsOn(it.next().getValue(), event)) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            invalidations.addAndGet(removed);
+            logger.debug("Invalidated {} cached result(s) after {}", removed, event);
+        }
+    }
+
+    private boolean dependsOn(Entry entry, DataChangeEvent event) {
+        for (String dependency : entry.dependencies) {
+            int at = dependency.indexOf('@');
+            if (event.affects(dependency.substring(0, at), dependency.substring(at + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        lastInvalidated.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Total time the cache saved: the original load time of every entry, once per hit.
+     */
+    public long getSavedMillis() {
+        return savedNanos.get() / 1_000_000;
+    }
+
+    public void logStats() {
+        logger.info("Query cache - Entries: {}, Hits: {}, Misses: {}, Hit ratio: {}, Saved: {} ms, " +
+                        "Evictions: {}, Invalidations: {}",
+                size(), hits.get(), misses.get(), String.format("%.2f", getHitRatio()),
+                getSavedMillis(), evictions.get(), invalidations.get());
+    }
+}
@@ -1,12 +1,24 @@
 package com.research.distributed.service;
 
+import com.research.distributed.connection.ExecutionTrace;
 import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.FragmentRoute;
+import com.research.distributed.connection.FragmentRouter;
+import com.research.distributed.connection.FragmentTrace;
+import com.research.distributed.connection.QueryCancellation;
+import com.research.distributed.connection.ReadCompleteness;
+import com.research.distributed.connection.ResultStream;
+import com.research.distributed.connection.RetryPolicy;
 import com.research.distributed.connection.TransparencyLevel;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
 import com.research.distributed.exception.DatabaseException;
 import com.research.distributed.exception.FragmentException;
 import com.research.distributed.exception.ValidationException;
+import com.research.distributed.model.AggregateRow;
 import com.research.distributed.model.DeAn;
-import com.research.distributed.model.NhanVien;
 import com.research.distributed.model.NhomNC;
 import com.research.distributed.model.ThamGia;
 import org.slf4j.Logger;
@@ -14,15 +26,56 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+// QueryCancellation.Registration resources only deregister their statement on close and are
+// never referenced in the try body, which -Xlint:try would report at every statement
+@SuppressWarnings("try")
 public class QueryService {
     private static final Logger logger = LoggerFactory.getLogger(QueryService.class);
     private final FragmentConnectionManager connectionManager;
+    private final FragmentRouter router;
+    private final FragmentExecutor fragmentExecutor;
+    private final QueryResultCache resultCache;
+    private final MaterializedViews views;
+    private final GroupMigrator groupMigrator;
+    private final DataChangeBus changeBus;
+    private final GroupReferenceCache groupCache;
+    private final RetryPolicy retryPolicy;
+
+    private static final List<String> QUERY1_TABLES = List.of("dean", "thamgia", "nhanvien");
+    private static final List<String> QUERY3_TABLES = List.of("dean", "thamgia");
+    private static final List<String> GROUP_TABLES = List.of("nhomnc", "nhanvien", "dean", "thamgia");
 
     public QueryService() {
         this.connectionManager = FragmentConnectionManager.getInstance();
+        this.router = FragmentRouter.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+        this.resultCache = QueryResultCache.getInstance();
+        this.views = MaterializedViews.getInstance();
+        this.groupMigrator = GroupMigrator.getInstance();
+        this.changeBus = DataChangeBus.getInstance();
+        this.groupCache = GroupReferenceCache.getInstance();
+        this.retryPolicy = RetryPolicy.getInstance();
+    }
+
+    /**
+     * Run any read of this service (or of the DAOs) with an execution trace:
+     * the fragments contacted, the SQL sent, rows and per-phase timings, and
+     * optionally the SQL Server showplan of every statement. The result also
+     * says which fragments answered (see PartialResult).
+     */
+    public <T> PartialResult<T> traced(String operation, boolean includePlans, QueryLoader<T> query)
+            throws DatabaseException {
+        PartialResult<T> result = PartialResult.collect(operation, includePlans, query);
+        logger.debug("Execution trace:\n{}\n{}", result.getTrace().format(), result.describe());
+        return result;
     }
 
     /**
@@ -30,7 +83,21 @@ public class QueryService {
      * Level 1 (Fragment Transparency): User knows about fragments
      */
     public List<DeAn> getProjectsWithExternalParticipantsLevel1(String groupId) throws DatabaseException {
+        String fragment = connectionManager.getFragmentForGroup(groupId);
+        if (fragment != null && views.isReady()) {
+            ExecutionTrace.note("Answered from materialized views, no fragment contacted");
+            return views.getProjectsWithExternalParticipants(groupId);
+        }
+        List<String> fragments = fragment != null ? List.of(fragment) : connectionManager.getAllFragments();
+        return resultCache.get(
+                QueryKey.of("query1", TransparencyLevel.FRAGMENT_TRANSPARENCY, groupId),
+                QueryResultCache.dependencies(QUERY1_TABLES, fragments),
+                () -> loadProjectsWithExternalParticipantsLevel1(groupId));
+    }
+
+    private List<DeAn> loadProjectsWithExternalParticipantsLevel1(String groupId) throws DatabaseException {
         List<DeAn> results = new ArrayList<>();
+        FragmentTrace trace = null;
 
         try {
             String fragment = connectionManager.getFragmentForGroup(groupId);
@@ -40,32 +107,48 @@ public class QueryService {
 
             logger.info("Level 1 Query: Querying fragment {} for group {}", fragment, groupId);
 
-            try (Connection conn = connectionManager.getConnection(fragment)) {
-                String sql = String.format("""
-                    SELECT DISTINCT d.mada, d.tenda, d.manhomnc
-                    FROM dean_%s d
-                    INNER JOIN thamgia_%s t ON d.mada = t.mada
-                    INNER JOIN nhanvien_%s nv ON t.manv = nv.manv
-                    WHERE d.manhomnc = ? AND nv.manhomnc != ?
-                    """, fragment, fragment, fragment);
-
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setString(1, groupId);
-                    stmt.setString(2, groupId);
-                    ResultSet rs = stmt.executeQuery();
-
-                    while (rs.next()) {
-                        results.add(new DeAn(
-                                rs.getString("mada"),
-                                rs.getString("tenda"),
-                                rs.getString("manhomnc")
-                        ));
+            String sql = String.format("""
+                SELECT DISTINCT d.mada, d.tenda, d.manhomnc
+                FROM dean_%s d
+                INNER JOIN thamgia_%s t ON d.mada = t.mada
+                INNER JOIN nhanvien_%s nv ON t.manv = nv.manv
+                WHERE d.manhomnc = ? AND nv.manhomnc != ?
+                """, fragment, fragment, fragment);
+            trace = ExecutionTrace.statement(fragment, sql).withParams(groupId, groupId);
+
+            FragmentTrace statement = trace;
+            List<DeAn> fetched = retryPolicy.call(fragment, true, () -> {
+                List<DeAn> rows = new ArrayList<>();
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    statement.checkedOut();
+                    statement.capturePlan(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                        stmt.setString(1, groupId);
+                        stmt.setString(2, groupId);
+                        ResultSet rs = stmt.executeQuery();
+                        statement.executed();
+
+                        while (rs.next()) {
+                            rows.add(new DeAn(
+                                    rs.getString("mada"),
+                                    rs.getString("tenda"),
+                                    rs.getString("manhomnc")
+                            ));
+                        }
+                        statement.finished(rows.size());
                     }
                 }
-            }
+                return rows;
+            });
+            ResultStream.publish(fragment, fetched);
+            results.addAll(fetched);
 
             logger.info("Level 1 Query: Found {} projects with external participants", results.size());
         } catch (SQLException | FragmentException e) {
+            if (trace != null) {
+                trace.failed(e);
+            }
             throw new DatabaseException("Error executing level 1 query", e);
         }
 
@@ -77,40 +160,88 @@ public class QueryService {
      * Level 2 (Location Transparency): User doesn't know about fragments
      */
     public List<DeAn> getProjectsWithExternalParticipantsLevel2(String groupId) throws DatabaseException {
-        List<DeAn> results = new ArrayList<>();
+        if (views.isReady()) {
+            ExecutionTrace.note("Answered from materialized views, no fragment contacted");
+            return views.getProjectsWithExternalParticipants(groupId);
+        }
 
-        logger.info("Level 2 Query: Searching all fragments for group {}", groupId);
+        // The predicate manhomnc = ? pins the fragment, so only the group's fragment is queried
+        FragmentRoute route = router.routeByGroup(groupId);
+        List<String> fragments = new ArrayList<>(route.getTargets());
+        fragments.addAll(route.getFallback());
+        return resultCache.get(
+                QueryKey.of("query1", TransparencyLevel.LOCATION_TRANSPARENCY, groupId),
+                QueryResultCache.dependencies(QUERY1_TABLES, fragments),
+                () -> loadProjectsWithExternalParticipantsLevel2(groupId, route));
+    }
 
-        for (String fragment : connectionManager.getAllFragments()) {
-            try (Connection conn = connectionManager.getConnection(fragment)) {
-                String sql = String.format("""
-                    SELECT DISTINCT d.mada, d.tenda, d.manhomnc
-                    FROM dean_%s d
-                    INNER JOIN thamgia_%s t ON d.mada = t.mada
-                    INNER JOIN nhanvien_%s nv ON t.manv = nv.manv
-                    WHERE d.manhomnc = ? AND nv.manhomnc != ?
-                    """, fragment, fragment, fragment);
+    private List<DeAn> loadProjectsWithExternalParticipantsLevel2(String groupId, FragmentRoute route) {
+        logger.info("Level 2 Query: Searching fragments {} for group {}", route.getTargets(), groupId);
+        ExecutionTrace.note("%s routed to %s", route.getReason(), route.getTargets());
+
+        List<DeAn> results = queryExternalParticipants(route.getTargets(), groupId);
+        if (results.isEmpty() && route.hasFallback()) {
+            router.recordFallback(route);
+            ExecutionTrace.note("Nothing on %s, probing fallback %s", route.getTargets(), route.getFallback());
+            results = queryExternalParticipants(route.getFallback(), groupId);
+            if (!results.isEmpty()) {
+                router.recordFallbackHit(route);
+            }
+        }
 
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setString(1, groupId);
-                    stmt.setString(2, groupId);
-                    ResultSet rs = stmt.executeQuery();
+        logger.info("Level 2 Query: Found {} projects with external participants ({} fragment(s) pruned)",
+                results.size(), route.getPrunedCount());
+        return results;
+    }
 
-                    while (rs.next()) {
-                        results.add(new DeAn(
-                                rs.getString("mada"),
-                                rs.getString("tenda"),
-                                rs.getString("manhomnc")
-                        ));
+    private List<DeAn> queryExternalParticipants(List<String> fragments, String groupId) {
+        List<DeAn> results = new ArrayList<>();
+
+        for (String fragment : fragments) {
+            String sql = String.format("""
+                SELECT DISTINCT d.mada, d.tenda, d.manhomnc
+                FROM dean_%s d
+                INNER JOIN thamgia_%s t ON d.mada = t.mada
+                INNER JOIN nhanvien_%s nv ON t.manv = nv.manv
+                WHERE d.manhomnc = ? AND nv.manhomnc != ?
+                """, fragment, fragment, fragment);
+            FragmentTrace trace = ExecutionTrace.statement(fragment, sql).withParams(groupId, groupId);
+
+            try {
+                List<DeAn> fetched = retryPolicy.call(fragment, true, () -> {
+                    List<DeAn> rows = new ArrayList<>();
+                    try (Connection conn = connectionManager.getConnection(fragment)) {
+                        trace.checkedOut();
+                        trace.capturePlan(conn);
+                        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                             QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                            stmt.setString(1, groupId);
+                            stmt.setString(2, groupId);
+                            ResultSet rs = stmt.executeQuery();
+                            trace.executed();
+
+                            while (rs.next()) {
+                                rows.add(new DeAn(
+                                        rs.getString("mada"),
+                                        rs.getString("tenda"),
+                                        rs.getString("manhomnc")
+                                ));
+                            }
+                            trace.finished(rows.size());
+                        }
                     }
-                }
+                    return rows;
+                });
+                ResultStream.publish(fragment, fetched);
+                results.addAll(fetched);
             } catch (SQLException | FragmentException e) {
+                trace.failed(e);
                 logger.warn("Error querying fragment {}: {}", fragment, e.getMessage());
                 // Continue to next fragment for location transparency
+                ReadCompleteness.markIncomplete();
             }
         }
 
-        logger.info("Level 2 Query: Found {} projects with external participants", results.size());
         return results;
     }
 
@@ -119,6 +250,14 @@ public class QueryService {
      */
     public void updateDepartment(String groupId, String newDepartment, TransparencyLevel level)
             throws DatabaseException, ValidationException {
+        updateDepartment(groupId, newDepartment, level, MigrationListener.NONE);
+    }
+
+    /**
+     * Query 2 with progress reports for the migration, if one is needed.
+     */
+    public void updateDepartment(String groupId, String newDepartment, TransparencyLevel level,
+                                 MigrationListener listener) throws DatabaseException, ValidationException {
         try {
             String oldFragment;
 
@@ -155,7 +294,7 @@ public class QueryService {
                 updateDepartmentInPlace(groupId, newDepartment, oldFragment);
             } else {
                 // Need to migrate to different fragment
-                migrateGroupBetweenFragments(groupId, oldFragment, newFragment, newDepartment);
+                migrateGroupBetweenFragments(groupId, oldFragment, newFragment, newDepartment, listener);
             }
 
             logger.info("Successfully updated department for group {} to {} (Level: {})",
@@ -169,17 +308,35 @@ public class QueryService {
      * Search all fragments to find where a group actually exists (for Location Transparency)
      */
     private String findGroupFragment(String groupId) throws SQLException, FragmentException {
+        String cached = groupCache.getFragment(groupId);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Probe the routed fragment first; the rest are only touched if the group is not there
+        FragmentRoute route = router.routeByGroup(groupId);
+        List<String> probeOrder = new ArrayList<>(route.getTargets());
         for (String fragment : connectionManager.getAllFragments()) {
-            try (Connection conn = connectionManager.getConnection(fragment)) {
-                String sql = String.format("SELECT 1 FROM nhomnc_%s WHERE manhomnc = ?", fragment);
-                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                    stmt.setString(1, groupId);
-                    ResultSet rs = stmt.executeQuery();
-                    if (rs.next()) {
-                        logger.info("Found group {} in fragment {}", groupId, fragment);
-                        return fragment;
+            if (!probeOrder.contains(fragment)) {
+                probeOrder.add(fragment);
+            }
+        }
+
+        for (String fragment : probeOrder) {
+            boolean found = retryPolicy.call(fragment, true, () -> {
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    String sql = String.format("SELECT 1 FROM nhomnc_%s WHERE manhomnc = ?", fragment);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                        stmt.setString(1, groupId);
+                        return stmt.executeQuery().next();
                     }
                 }
+            });
+            if (found) {
+                logger.info("Found group {} in fragment {}", groupId, fragment);
+                connectionManager.registerGroupLocation(groupId, fragment);
+                return fragment;
             }
         }
         return null;
@@ -187,364 +344,494 @@ public class QueryService {
 
     private String getDepartmentForGroup(String groupId, String fragment)
             throws SQLException, FragmentException {
-        try (Connection conn = connectionManager.getConnection(fragment)) {
-            String sql = String.format("SELECT tenphong FROM nhomnc_%s WHERE manhomnc = ?", fragment);
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, groupId);
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    return rs.getString("tenphong");
+        NhomNC cached = groupCache.get(groupId);
+        if (cached != null && fragment.equals(groupCache.getFragment(groupId))) {
+            return cached.getTenPhong();
+        }
+        return retryPolicy.call(fragment, true, () -> {
+            try (Connection conn = connectionManager.getConnection(fragment)) {
+                String sql = String.format("SELECT tenphong FROM nhomnc_%s WHERE manhomnc = ?", fragment);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, groupId);
+                    ResultSet rs = stmt.executeQuery();
+                    return rs.next() ? rs.getString("tenphong") : null;
                 }
             }
-        }
-        return null;
+        });
     }
 
     private void updateDepartmentInPlace(String groupId, String newDepartment, String fragment)
             throws SQLException, FragmentException {
-        try (Connection conn = connectionManager.getConnection(fragment)) {
-            String sql = String.format(
-                    "UPDATE nhomnc_%s SET tenphong = ?, updated_at = GETDATE() WHERE manhomnc = ?",
-                    fragment);
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, newDepartment);
-                stmt.setString(2, groupId);
-                stmt.executeUpdate();
+        // Setting the department is idempotent, so a broken connection can be retried too
+        retryPolicy.call(fragment, true, () -> {
+            try (Connection conn = connectionManager.getConnection(fragment)) {
+                String sql = String.format(
+                        "UPDATE nhomnc_%s SET tenphong = ?, updated_at = GETDATE() WHERE manhomnc = ?",
+                        fragment);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newDepartment);
+                    stmt.setString(2, groupId);
+                    if (stmt.executeUpdate() == 0) {
+                        // Only possible when the group was looked up in a replica that is out of date
+                        groupCache.invalidate(fragment);
+                        throw new SQLException("Group " + groupId + " is no longer in fragment " + fragment);
+                    }
+                }
             }
-        }
+            return null;
+        });
+        changeBus.publish(DataChangeEvent.Type.UPDATE, "nhomnc", fragment);
     }
 
-    private void migrateGroupBetweenFragments(String groupId, String oldFragment,
-                                               String newFragment, String newDepartment)
-            throws SQLException, FragmentException, DatabaseException {
-        logger.info("Migrating group {} from fragment {} to {}", groupId, oldFragment, newFragment);
-
-        Connection oldConn = null;
-        Connection newConn = null;
-
+    private void migrateGroupBetweenFragments(String groupId, String oldFragment, String newFragment,
+                                               String newDepartment, MigrationListener listener)
+            throws DatabaseException {
+        boolean migrated = false;
         try {
-            oldConn = connectionManager.getConnection(oldFragment);
-            newConn = connectionManager.getConnection(newFragment);
-
-            // Disable auto-commit for transaction-like behavior
-            oldConn.setAutoCommit(false);
-            newConn.setAutoCommit(false);
-
-            // Step 1: Fetch all data from old fragment
-            NhomNC group = fetchGroup(oldConn, groupId, oldFragment);
-            if (group == null) {
-                throw new DatabaseException("Group not found: " + groupId);
-            }
-            group.setTenPhong(newDepartment);
-
-            List<NhanVien> employees = fetchEmployeesByGroup(oldConn, groupId, oldFragment);
-            List<DeAn> projects = fetchProjectsByGroup(oldConn, groupId, oldFragment);
-            List<ThamGia> participations = fetchParticipationsByGroup(oldConn, groupId, oldFragment);
-
-            logger.info("Found {} employees, {} projects, {} participations to migrate",
-                    employees.size(), projects.size(), participations.size());
-
-            // Step 2: Clean up any existing data in target fragment (handles retry scenarios)
-            deleteParticipationsByGroup(newConn, groupId, newFragment);
-            deleteProjectsByGroup(newConn, groupId, newFragment);
-            deleteEmployeesByGroup(newConn, groupId, newFragment);
-            deleteGroup(newConn, groupId, newFragment);
-            logger.info("Cleaned up any existing data for group {} in target fragment {}", groupId, newFragment);
-
-            // Step 3: Insert data into new fragment
-            insertGroup(newConn, group, newFragment);
-            for (NhanVien emp : employees) {
-                insertEmployee(newConn, emp, newFragment);
-            }
-            for (DeAn proj : projects) {
-                insertProject(newConn, proj, newFragment);
-            }
-            for (ThamGia tg : participations) {
-                insertParticipation(newConn, tg, newFragment);
-            }
-
-            // Step 4: Delete data from old fragment (in reverse order due to FK constraints)
-            deleteParticipationsByGroup(oldConn, groupId, oldFragment);
-            deleteProjectsByGroup(oldConn, groupId, oldFragment);
-            deleteEmployeesByGroup(oldConn, groupId, oldFragment);
-            deleteGroup(oldConn, groupId, oldFragment);
-
-            // Commit both connections
-            newConn.commit();
-            oldConn.commit();
-
-            logger.info("Successfully migrated group {} from {} to {}", groupId, oldFragment, newFragment);
-
-        } catch (Exception e) {
-            // Rollback on any error
-            if (oldConn != null) {
-                try { oldConn.rollback(); } catch (SQLException ex) { logger.error("Rollback failed", ex); }
-            }
-            if (newConn != null) {
-                try { newConn.rollback(); } catch (SQLException ex) { logger.error("Rollback failed", ex); }
-            }
-            throw new DatabaseException("Migration failed: " + e.getMessage(), e);
+            groupMigrator.migrate(groupId, oldFragment, newFragment, newDepartment, listener);
+            connectionManager.registerGroupLocation(groupId, newFragment);
+            migrated = true;
         } finally {
-            // Restore auto-commit and close connections
-            if (oldConn != null) {
-                try { oldConn.setAutoCommit(true); oldConn.close(); } catch (SQLException e) { /* ignore */ }
-            }
-            if (newConn != null) {
-                try { newConn.setAutoCommit(true); newConn.close(); } catch (SQLException e) { /* ignore */ }
+            if (!migrated) {
+                // Where the group ended up is unknown; the next lookup probes every fragment
+                connectionManager.forgetGroupLocation(groupId);
             }
+            // Even a failed migration wrote (and removed) a partial copy on the target
+            publishMigration(oldFragment, newFragment);
         }
     }
 
-    // Helper methods for fetching data
-    private NhomNC fetchGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        String sql = String.format("SELECT manhomnc, tennhomnc, tenphong FROM nhomnc_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new NhomNC(rs.getString("manhomnc"), rs.getString("tennhomnc"), rs.getString("tenphong"));
-            }
+    private void publishMigration(String oldFragment, String newFragment) {
+        for (String table : GROUP_TABLES) {
+            changeBus.publish(DataChangeEvent.Type.MIGRATE, table, oldFragment);
+            changeBus.publish(DataChangeEvent.Type.MIGRATE, table, newFragment);
         }
-        return null;
     }
 
-    private List<NhanVien> fetchEmployeesByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        List<NhanVien> list = new ArrayList<>();
-        String sql = String.format("SELECT manv, hoten, manhomnc FROM nhanvien_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                list.add(new NhanVien(rs.getString("manv"), rs.getString("hoten"), rs.getString("manhomnc")));
-            }
+    /**
+     * Query 3: Get projects without participants
+     * Level 1 (Fragment Transparency)
+     */
+    public List<DeAn> getProjectsWithoutParticipantsLevel1(String fragment) throws DatabaseException {
+        if (views.isReady()) {
+            ExecutionTrace.note("Answered from materialized views, no fragment contacted");
+            return views.getProjectsWithoutParticipants(fragment);
         }
-        return list;
+        return resultCache.get(
+                QueryKey.of("query3", TransparencyLevel.FRAGMENT_TRANSPARENCY, fragment),
+                QueryResultCache.dependencies(QUERY3_TABLES, List.of(fragment)),
+                () -> loadProjectsWithoutParticipantsLevel1(fragment));
     }
 
-    private List<DeAn> fetchProjectsByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        List<DeAn> list = new ArrayList<>();
-        String sql = String.format("SELECT mada, tenda, manhomnc FROM dean_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                list.add(new DeAn(rs.getString("mada"), rs.getString("tenda"), rs.getString("manhomnc")));
-            }
+    private List<DeAn> loadProjectsWithoutParticipantsLevel1(String fragment) throws DatabaseException {
+        try {
+            List<DeAn> results = fetchProjectsWithoutParticipants(fragment);
+            logger.info("Level 1 Query: Found {} projects without participants in fragment {}",
+                    results.size(), fragment);
+            return results;
+        } catch (SQLException | FragmentException e) {
+            throw new DatabaseException("Error getting projects without participants", fragment, e);
         }
-        return list;
     }
 
-    private List<ThamGia> fetchParticipationsByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        List<ThamGia> list = new ArrayList<>();
-        // Only fetch participations where BOTH the employee AND the project belong to the group
-        String sql = String.format(
-                "SELECT t.manv, t.mada, t.ngaythamgia FROM thamgia_%s t " +
-                "INNER JOIN nhanvien_%s nv ON t.manv = nv.manv " +
-                "INNER JOIN dean_%s d ON t.mada = d.mada " +
-                "WHERE nv.manhomnc = ? AND d.manhomnc = ?", fragment, fragment, fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            stmt.setString(2, groupId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                Date date = rs.getDate("ngaythamgia");
-                LocalDate localDate = date != null ? date.toLocalDate() : null;
-                list.add(new ThamGia(rs.getString("manv"), rs.getString("mada"), localDate));
-            }
-        }
-        return list;
-    }
+    private List<DeAn> fetchProjectsWithoutParticipants(String fragment) throws SQLException, FragmentException {
+        String sql = String.format("""
+            SELECT d.mada, d.tenda, d.manhomnc
+            FROM dean_%s d
+            LEFT JOIN thamgia_%s t ON d.mada = t.mada
+            WHERE t.mada IS NULL
+            """, fragment, fragment);
+        FragmentTrace trace = ExecutionTrace.statement(fragment, sql);
 
-    // Helper methods for inserting data
-    private void insertGroup(Connection conn, NhomNC group, String fragment) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO nhomnc_%s (manhomnc, tennhomnc, tenphong, created_at) VALUES (?, ?, ?, GETDATE())", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, group.getMaHomnc());
-            stmt.setString(2, group.getTenNhomnc());
-            stmt.setString(3, group.getTenPhong());
-            stmt.executeUpdate();
+        try {
+            List<DeAn> fetched = retryPolicy.call(fragment, true, () -> {
+                List<DeAn> rows = new ArrayList<>();
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    trace.checkedOut();
+                    trace.capturePlan(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt);
+                         ResultSet rs = stmt.executeQuery()) {
+                        trace.executed();
+
+                        while (rs.next()) {
+                            DeAn project = new DeAn(
+                                    rs.getString("mada"),
+                                    rs.getString("tenda"),
+                                    rs.getString("manhomnc")
+                            );
+                            // A copied project has no participants until they are copied too
+                            if (!connectionManager.isMigrationCopy(project.getMaHomnc(), fragment)) {
+                                rows.add(project);
+                            }
+                        }
+                        trace.finished(rows.size());
+                    }
+                }
+                return rows;
+            });
+            ResultStream.publish(fragment, fetched);
+            return fetched;
+        } catch (SQLException | FragmentException e) {
+            trace.failed(e);
+            throw e;
         }
     }
 
-    private void insertEmployee(Connection conn, NhanVien emp, String fragment) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO nhanvien_%s (manv, hoten, manhomnc, created_at) VALUES (?, ?, ?, GETDATE())", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, emp.getMaNv());
-            stmt.setString(2, emp.getHoTen());
-            stmt.setString(3, emp.getMaHomnc());
-            stmt.executeUpdate();
+    /**
+     * Query 3: Get projects without participants
+     * Level 2 (Location Transparency)
+     */
+    public List<DeAn> getProjectsWithoutParticipantsLevel2() throws DatabaseException {
+        if (views.isReady()) {
+            ExecutionTrace.note("Answered from materialized views, no fragment contacted");
+            return views.getProjectsWithoutParticipants(null);
         }
+        return resultCache.get(
+                QueryKey.of("query3", TransparencyLevel.LOCATION_TRANSPARENCY),
+                QueryResultCache.dependencies(QUERY3_TABLES, connectionManager.getAllFragments()),
+                this::loadProjectsWithoutParticipantsLevel2);
     }
 
-    private void insertProject(Connection conn, DeAn proj, String fragment) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO dean_%s (mada, tenda, manhomnc, created_at) VALUES (?, ?, ?, GETDATE())", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, proj.getMaDa());
-            stmt.setString(2, proj.getTenDa());
-            stmt.setString(3, proj.getMaHomnc());
-            stmt.executeUpdate();
-        }
-    }
+    private List<DeAn> loadProjectsWithoutParticipantsLevel2() {
+        // In parallel, so each fragment's rows can be shown as soon as it answers
+        List<FragmentResult<List<DeAn>>> fetched = fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(), this::fetchProjectsWithoutParticipants);
 
-    private void insertParticipation(Connection conn, ThamGia tg, String fragment) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO thamgia_%s (manv, mada, ngaythamgia, created_at) VALUES (?, ?, ?, GETDATE())", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, tg.getMaNv());
-            stmt.setString(2, tg.getMaDa());
-            if (tg.getNgayThamGia() != null) {
-                stmt.setDate(3, Date.valueOf(tg.getNgayThamGia()));
+        List<DeAn> results = new ArrayList<>();
+        for (FragmentResult<List<DeAn>> result : fetched) {
+            if (result.isSuccess()) {
+                results.addAll(result.getValue());
             } else {
-                stmt.setNull(3, Types.DATE);
+                logger.warn("Error querying fragment {}: {}", result.getFragment(), result.getError().getMessage());
+                ReadCompleteness.markIncomplete();
             }
-            stmt.executeUpdate();
         }
+
+        logger.info("Level 2 Query: Found {} total projects without participants", results.size());
+        return results;
     }
 
-    // Helper methods for deleting data
-    private void deleteParticipationsByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        // Delete ALL participations that reference either employees OR projects from this group
-        // This is needed because we're about to delete those employees and projects
-        String sql = String.format(
-                "DELETE FROM thamgia_%s WHERE manv IN (SELECT manv FROM nhanvien_%s WHERE manhomnc = ?) " +
-                "OR mada IN (SELECT mada FROM dean_%s WHERE manhomnc = ?)",
-                fragment, fragment, fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            stmt.setString(2, groupId);
-            stmt.executeUpdate();
+    /**
+     * Get all research groups
+     */
+    public List<NhomNC> getAllGroups(TransparencyLevel level) throws DatabaseException {
+        List<NhomNC> results = new ArrayList<>();
+
+        for (String fragment : connectionManager.getAllFragments()) {
+            String sql = String.format(
+                    "SELECT manhomnc, tennhomnc, tenphong FROM nhomnc_%s", fragment);
+            FragmentTrace trace = ExecutionTrace.statement(fragment, sql);
+
+            try {
+                results.addAll(retryPolicy.call(fragment, true, () -> {
+                    List<NhomNC> rows = new ArrayList<>();
+                    try (Connection conn = connectionManager.getConnection(fragment)) {
+                        trace.checkedOut();
+                        trace.capturePlan(conn);
+                        try (PreparedStatement stmt = conn.prepareStatement(sql);
+                             QueryCancellation.Registration registration = QueryCancellation.register(stmt);
+                             ResultSet rs = stmt.executeQuery()) {
+                            trace.executed();
+
+                            while (rs.next()) {
+                                String groupId = rs.getString("manhomnc");
+                                if (connectionManager.isMigrationCopy(groupId, fragment)) {
+                                    continue;
+                                }
+                                rows.add(new NhomNC(groupId, rs.getString("tennhomnc"), rs.getString("tenphong")));
+                            }
+                            trace.finished(rows.size());
+                        }
+                    }
+                    return rows;
+                }));
+            } catch (SQLException | FragmentException e) {
+                trace.failed(e);
+                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                    throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
+                }
+                logger.warn("Error querying fragment {}: {}", fragment, e.getMessage());
+                ReadCompleteness.markIncomplete();
+            }
         }
+
+        return results;
     }
 
-    private void deleteProjectsByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        String sql = String.format("DELETE FROM dean_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            stmt.executeUpdate();
-        }
+    // ==================== Distributed Aggregation ====================
+
+    /**
+     * Dashboard: number of projects owned by each research group
+     */
+    public List<AggregateRow> getProjectCountPerGroup(TransparencyLevel level) throws DatabaseException {
+        AggregateQuery query = new AggregateQuery("dean_{FRAGMENT}")
+                .groupBy("manhomnc", "manhomnc")
+                .aggregate(AggregateFunction.COUNT, "*", "project_count");
+        return aggregate(query, level);
     }
 
-    private void deleteEmployeesByGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        String sql = String.format("DELETE FROM nhanvien_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            stmt.executeUpdate();
-        }
+    /**
+     * Dashboard: participants per project, with the first and last join dates
+     */
+    public List<AggregateRow> getParticipantCountPerProject(TransparencyLevel level) throws DatabaseException {
+        AggregateQuery query = new AggregateQuery("thamgia_{FRAGMENT}")
+                .groupBy("mada", "mada")
+                .aggregate(AggregateFunction.COUNT, "*", "participant_count")
+                .aggregate(AggregateFunction.MIN, "ngaythamgia", "first_joined")
+                .aggregate(AggregateFunction.MAX, "ngaythamgia", "last_joined");
+        return aggregate(query, level);
     }
 
-    private void deleteGroup(Connection conn, String groupId, String fragment) throws SQLException {
-        String sql = String.format("DELETE FROM nhomnc_%s WHERE manhomnc = ?", fragment);
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, groupId);
-            stmt.executeUpdate();
-        }
+    /**
+     * Dashboard: participations per month of thamgia.ngaythamgia (yyyy-MM)
+     */
+    public List<AggregateRow> getParticipationsPerMonth(TransparencyLevel level) throws DatabaseException {
+        AggregateQuery query = new AggregateQuery("thamgia_{FRAGMENT}")
+                .where("ngaythamgia IS NOT NULL")
+                .groupBy("CONVERT(CHAR(7), ngaythamgia, 120)", "join_month")
+                .aggregate(AggregateFunction.COUNT, "*", "participation_count");
+        return aggregate(query, level);
     }
 
     /**
-     * Query 3: Get projects without participants
-     * Level 1 (Fragment Transparency)
+     * Push the GROUP BY down to every fragment in parallel and merge the partial
+     * aggregates here, so only aggregated rows ever cross the wire.
      */
-    public List<DeAn> getProjectsWithoutParticipantsLevel1(String fragment) throws DatabaseException {
-        List<DeAn> results = new ArrayList<>();
+    public List<AggregateRow> aggregate(AggregateQuery query, TransparencyLevel level) throws DatabaseException {
+        List<FragmentResult<List<AggregateRow>>> partials = fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(), fragment -> fetchPartialAggregates(query, fragment));
 
-        try (Connection conn = connectionManager.getConnection(fragment)) {
-            String sql = String.format("""
-                SELECT d.mada, d.tenda, d.manhomnc
-                FROM dean_%s d
-                LEFT JOIN thamgia_%s t ON d.mada = t.mada
-                WHERE t.mada IS NULL
-                """, fragment, fragment);
+        List<AggregateFunction> functions = query.getFunctions();
+        Map<List<Object>, Object[]> states = new LinkedHashMap<>();
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
-
-                while (rs.next()) {
-                    results.add(new DeAn(
-                            rs.getString("mada"),
-                            rs.getString("tenda"),
-                            rs.getString("manhomnc")
-                    ));
+        for (FragmentResult<List<AggregateRow>> partial : partials) {
+            if (!partial.isSuccess()) {
+                if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
+                    throw new DatabaseException("Error aggregating fragment " + partial.getFragment(),
+                            partial.getFragment(), partial.getError());
                 }
+                logger.warn("Error aggregating fragment {}: {}", partial.getFragment(), partial.getError().getMessage());
+                ReadCompleteness.markIncomplete();
+                continue;
             }
 
-            logger.info("Level 1 Query: Found {} projects without participants in fragment {}",
-                    results.size(), fragment);
-        } catch (SQLException | FragmentException e) {
-            throw new DatabaseException("Error getting projects without participants", fragment, e);
+            for (AggregateRow row : partial.getValue()) {
+                Object[] state = states.get(row.getKey());
+                if (state == null) {
+                    states.put(row.getKey(), row.getValues().values().toArray());
+                    continue;
+                }
+                Object[] incoming = row.getValues().values().toArray();
+                for (int i = 0; i < functions.size(); i++) {
+                    state[i] = functions.get(i).merge(state[i], incoming[i]);
+                }
+            }
+        }
+
+        List<AggregateRow> results = new ArrayList<>();
+        for (Map.Entry<List<Object>, Object[]> entry : states.entrySet()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < functions.size(); i++) {
+                values.put(query.getAggregateAliases().get(i), entry.getValue()[i]);
+            }
+            results.add(new AggregateRow(entry.getKey(), values));
         }
+        results.sort(QueryService::compareKeys);
 
+        logger.info("Aggregation merged {} partial result set(s) into {} groups", partials.size(), results.size());
         return results;
     }
 
-    /**
-     * Query 3: Get projects without participants
-     * Level 2 (Location Transparency)
-     */
-    public List<DeAn> getProjectsWithoutParticipantsLevel2() throws DatabaseException {
-        List<DeAn> results = new ArrayList<>();
-
-        for (String fragment : connectionManager.getAllFragments()) {
-            try (Connection conn = connectionManager.getConnection(fragment)) {
-                String sql = String.format("""
-                    SELECT d.mada, d.tenda, d.manhomnc
-                    FROM dean_%s d
-                    LEFT JOIN thamgia_%s t ON d.mada = t.mada
-                    WHERE t.mada IS NULL
-                    """, fragment, fragment);
+    private List<AggregateRow> fetchPartialAggregates(AggregateQuery query, String fragment)
+            throws SQLException, FragmentException {
+        List<AggregateRow> rows = new ArrayList<>();
+        List<String> keyAliases = query.getGroupByAliases();
+        List<String> aggregateAliases = query.getAggregateAliases();
+        List<AggregateFunction> functions = query.getFunctions();
 
-                try (PreparedStatement stmt = conn.prepareStatement(sql);
-                     ResultSet rs = stmt.executeQuery()) {
+        String sql = query.toSql(fragment);
+        FragmentTrace trace = ExecutionTrace.statement(fragment, sql);
 
-                    while (rs.next()) {
-                        results.add(new DeAn(
-                                rs.getString("mada"),
-                                rs.getString("tenda"),
-                                rs.getString("manhomnc")
-                        ));
+        try {
+            rows.addAll(retryPolicy.call(fragment, true, () -> {
+                List<AggregateRow> partial = new ArrayList<>();
+                try (Connection conn = connectionManager.getConnection(fragment)) {
+                    trace.checkedOut();
+                    trace.capturePlan(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(sql);
+                         QueryCancellation.Registration registration = QueryCancellation.register(stmt);
+                         ResultSet rs = stmt.executeQuery()) {
+                        trace.executed();
+
+                        while (rs.next()) {
+                            Object[] key = new Object[keyAliases.size()];
+                            for (int i = 0; i < key.length; i++) {
+                                key[i] = rs.getObject(keyAliases.get(i));
+                            }
+                            Map<String, Object> values = new LinkedHashMap<>();
+                            for (int i = 0; i < functions.size(); i++) {
+                                values.put(aggregateAliases.get(i),
+                                        functions.get(i).normalize(rs.getObject(aggregateAliases.get(i))));
+                            }
+                            partial.add(new AggregateRow(Arrays.asList(key), values));
+                        }
+                        trace.finished(partial.size());
                     }
                 }
-            } catch (SQLException | FragmentException e) {
-                logger.warn("Error querying fragment {}: {}", fragment, e.getMessage());
+                return partial;
+            }));
+        } catch (SQLException | FragmentException e) {
+            trace.failed(e);
+            throw e;
+        }
+
+        logger.debug("Fragment {} returned {} partial aggregate rows", fragment, rows.size());
+        return rows;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(AggregateRow left, AggregateRow right) {
+        for (int i = 0; i < left.getKey().size(); i++) {
+            Object a = left.getKey(i);
+            Object b = right.getKey(i);
+            if (a == b) {
+                continue;
+            }
+            if (a == null) {
+                return -1;
+            }
+            if (b == null) {
+                return 1;
+            }
+            int cmp = ((Comparable) a).compareTo(b);
+            if (cmp != 0) {
+                return cmp;
             }
         }
+        return 0;
+    }
 
-        logger.info("Level 2 Query: Found {} total projects without participants", results.size());
-        return results;
+    // ==================== Distributed Top-K ====================
+
+    /**
+     * Top N research groups by number of distinct participants in their projects.
+     * A group's projects and participations live in one fragment, so each fragment's
+     * own TOP (k) is exact and the merged heap yields the global answer.
+     */
+    public List<AggregateRow> getTopGroupsByParticipantCount(int k, TransparencyLevel level)
+            throws DatabaseException {
+        String sql = """
+                SELECT TOP (?) d.manhomnc, COUNT(DISTINCT t.manv) AS participant_count
+                FROM dean_{FRAGMENT} d
+                INNER JOIN thamgia_{FRAGMENT} t ON d.mada = t.mada
+                GROUP BY d.manhomnc
+                ORDER BY participant_count DESC, d.manhomnc COLLATE Latin1_General_BIN2
+                """;
+        Comparator<AggregateRow> order = Comparator
+                .comparingLong((AggregateRow row) -> row.getLong("participant_count")).reversed()
+                .thenComparing(row -> (String) row.getKey(0));
+
+        return topK(sql, k, rs -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("participant_count", rs.getLong("participant_count"));
+            return new AggregateRow(List.of(rs.getString("manhomnc")), values);
+        }, order, level);
     }
 
     /**
-     * Get all research groups
+     * The N most recent participations across all fragments, newest first.
      */
-    public List<NhomNC> getAllGroups(TransparencyLevel level) throws DatabaseException {
-        List<NhomNC> results = new ArrayList<>();
+    public List<ThamGia> getMostRecentParticipations(int k, TransparencyLevel level) throws DatabaseException {
+        String sql = """
+                SELECT TOP (?) manv, mada, ngaythamgia, created_at
+                FROM thamgia_{FRAGMENT}
+                ORDER BY ngaythamgia DESC, created_at DESC,
+                         manv COLLATE Latin1_General_BIN2, mada COLLATE Latin1_General_BIN2
+                """;
+        Comparator<ThamGia> order = Comparator
+                .comparing(ThamGia::getNgayThamGia, Comparator.nullsLast(Comparator.<LocalDate>reverseOrder()))
+                .thenComparing(ThamGia::getCreatedAt, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+                .thenComparing(ThamGia::getMaNv)
+                .thenComparing(ThamGia::getMaDa);
+
+        return topK(sql, k, rs -> {
+            Date date = rs.getDate("ngaythamgia");
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            ThamGia thamGia = new ThamGia(rs.getString("manv"), rs.getString("mada"),
+                    date != null ? date.toLocalDate() : null);
+            thamGia.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+            return thamGia;
+        }, order, level);
+    }
 
-        for (String fragment : connectionManager.getAllFragments()) {
-            try (Connection conn = connectionManager.getConnection(fragment)) {
-                String sql = String.format(
-                        "SELECT manhomnc, tennhomnc, tenphong FROM nhomnc_%s", fragment);
+    /**
+     * Distributed ORDER BY ... TOP (k): every fragment returns at most k rows already
+     * sorted, and a size-k heap merges them. A fragment stops being read as soon as
+     * its next row cannot beat the worst row in the heap, so cost depends on k only.
+     * Text columns in the ORDER BY need a binary collation, so ties at the k-th row
+     * are broken as String.compareTo breaks them in the merge.
+     *
+     * @param sqlTemplate query with {FRAGMENT} suffixes and a single TOP (?) parameter
+     * @param order       the same ordering as the SQL ORDER BY, best row first
+     */
+    public <T> List<T> topK(String sqlTemplate, int k, ResultSetMapper<T> mapper,
+                            Comparator<T> order, TransparencyLevel level) throws DatabaseException {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
 
-                try (PreparedStatement stmt = conn.prepareStatement(sql);
-                     ResultSet rs = stmt.executeQuery()) {
+        TopKMerger<T> merger = new TopKMerger<>(k, order);
+        List<FragmentResult<Integer>> fetched = fragmentExecutor.invokeAll(
+                connectionManager.getAllFragments(),
+                fragment -> fetchTopK(sqlTemplate.replace("{FRAGMENT}", fragment), fragment, k, mapper, merger));
 
-                    while (rs.next()) {
-                        results.add(new NhomNC(
-                                rs.getString("manhomnc"),
-                                rs.getString("tennhomnc"),
-                                rs.getString("tenphong")
-                        ));
-                    }
-                }
-            } catch (SQLException | FragmentException e) {
+        for (FragmentResult<Integer> result : fetched) {
+            if (!result.isSuccess()) {
                 if (level == TransparencyLevel.FRAGMENT_TRANSPARENCY) {
-                    throw new DatabaseException("Error querying fragment " + fragment, fragment, e);
+                    throw new DatabaseException("Error querying fragment " + result.getFragment(),
+                            result.getFragment(), result.getError());
                 }
-                logger.warn("Error querying fragment {}: {}", fragment, e.getMessage());
+                logger.warn("Error querying fragment {}: {}", result.getFragment(), result.getError().getMessage());
+                ReadCompleteness.markIncomplete();
             }
         }
 
+        List<T> results = merger.result();
+        logger.info("Top-{} query: merged {} row(s) from {} fragment(s)", k, results.size(), fetched.size());
         return results;
     }
+
+    private <T> int fetchTopK(String sql, String fragment, int k, ResultSetMapper<T> mapper,
+                              TopKMerger<T> merger) throws SQLException, FragmentException {
+        int read = 0;
+        FragmentTrace trace = ExecutionTrace.statement(fragment, sql).withParams(k);
+
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            trace.checkedOut();
+            trace.capturePlan(conn);
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                 QueryCancellation.Registration registration = QueryCancellation.register(stmt)) {
+                stmt.setInt(1, k);
+                stmt.setFetchSize(k);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    trace.executed();
+                    while (rs.next()) {
+                        read++;
+                        if (!merger.offer(mapper.map(rs))) {
+                            // Rows arrive in result order: nothing further on this fragment can qualify
+                            logger.debug("Fragment {}: early cut-off after {} of at most {} rows", fragment, read, k);
+                            break;
+                        }
+                    }
+                    trace.finished(read);
+                }
+            }
+        } catch (SQLException | FragmentException e) {
+            trace.failed(e);
+            throw e;
+        }
+        return read;
+    }
 }
@@ -0,0 +1,129 @@
+package com.research.distributed.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group moves proposed by the Rebalancer, with their estimated cost and the
+ * fragment scores before and after. Executing a move changes the group's department.
+ */
+public class RebalancePlan {
+
+    public enum Status {
+        PLANNED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    public static class Move {
+        private final String groupId;
+        private final String fromFragment;
+        private final String toFragment;
+        private final String newDepartment;
+        private final long rows;
+        private final double estimatedSeconds;
+        private volatile Status status = Status.PLANNED;
+        private volatile String message;
+
+        public Move(String groupId, String fromFragment, String toFragment, String newDepartment,
+                    long rows, double estimatedSeconds) {
+            this.groupId = groupId;
+            this.fromFragment = fromFragment;
+            this.toFragment = toFragment;
+            this.newDepartment = newDepartment;
+            this.rows = rows;
+            this.estimatedSeconds = estimatedSeconds;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getFromFragment() {
+            return fromFragment;
+        }
+
+        public String getToFragment() {
+            return toFragment;
+        }
+
+        public String getNewDepartment() {
+            return newDepartment;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public double getEstimatedSeconds() {
+            return estimatedSeconds;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        void setOutcome(Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s -> %s (department %s, %d rows, ~%.1f s) %s%s",
+                    groupId, fromFragment, toFragment, newDepartment, rows, estimatedSeconds, status,
+                    message != null ? ": " + message : "");
+        }
+    }
+
+    private final List<FragmentLoad> loads;
+    private final List<Move> moves;
+    private final Map<String, Double> projectedScores;
+
+    public RebalancePlan(List<FragmentLoad> loads, List<Move> moves, Map<String, Double> projectedScores) {
+        this.loads = Collections.unmodifiableList(loads);
+        this.moves = Collections.unmodifiableList(moves);
+        this.projectedScores = Collections.unmodifiableMap(projectedScores);
+    }
+
+    public List<FragmentLoad> getLoads() {
+        return loads;
+    }
+
+    public List<Move> getMoves() {
+        return moves;
+    }
+
+    public Map<String, Double> getProjectedScores() {
+        return projectedScores;
+    }
+
+    public boolean isEmpty() {
+        return moves.isEmpty();
+    }
+
+    public double getEstimatedSeconds() {
+        return moves.stream().mapToDouble(Move::getEstimatedSeconds).sum();
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder("Rebalance plan\n");
+        for (FragmentLoad load : loads) {
+            sb.append("  ").append(load)
+                    .append(String.format(" -> %.0f%n", projectedScores.getOrDefault(load.getFragment(), load.getScore())));
+        }
+        if (moves.isEmpty()) {
+            sb.append("  No moves needed\n");
+        }
+        for (Move move : moves) {
+            sb.append("  move ").append(move).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,285 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.config.FragmentationConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.FragmentExecutor;
+import com.research.distributed.connection.FragmentResult;
+import com.research.distributed.connection.TransparencyLevel;
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.exception.FragmentException;
+import com.research.distributed.exception.ValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evens out load between fragments by moving whole research groups.
+ *
+ * The planner scores every fragment by its row count scaled with its pool
+ * utilization, then greedily picks moves from the hottest to the coldest
+ * fragment that close the gap the most per estimated second of migration.
+ * Since fragments are defined by department, moving a group changes its
+ * department. Plans can be inspected (dry run) before they are executed, as
+ * the main window does before asking the user to confirm the moves;
+ * execution runs the moves concurrently, at most rebalance.maxPerFragmentPair
+ * at a time between the same two fragments.
+ */
+public class Rebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(Rebalancer.class);
+    private static Rebalancer instance;
+
+    // Fixed cost of a move on top of the copy: setup, verification and switchover
+    private static final double MOVE_OVERHEAD_SECONDS = 0.5;
+    // Copy rate assumed for cost estimates when migrations are not throttled
+    private static final int UNTHROTTLED_ROWS_PER_SECOND = 5000;
+    private static final int LOAD_SAMPLES = 5;
+    private static final long LOAD_SAMPLE_INTERVAL_MILLIS = 100;
+
+    private final FragmentConnectionManager connectionManager;
+    private final FragmentExecutor fragmentExecutor;
+    private final FragmentationConfig fragmentConfig;
+    private final double tolerance;
+    private final int maxMoves;
+    private final int maxConcurrent;
+    private final int maxPerFragmentPair;
+    private final int rowsPerSecond;
+
+    private final ConcurrentMap<String, Semaphore> pairPermits = new ConcurrentHashMap<>();
+
+    private Rebalancer() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.fragmentExecutor = FragmentExecutor.getInstance();
+        this.fragmentConfig = FragmentationConfig.getInstance();
+        this.tolerance = config.getRebalanceTolerance();
+        this.maxMoves = config.getRebalanceMaxMoves();
+        this.maxConcurrent = config.getRebalanceMaxConcurrent();
+        this.maxPerFragmentPair = config.getRebalanceMaxPerFragmentPair();
+        int configuredRate = config.getMigrationRowsPerSecond();
+        this.rowsPerSecond = configuredRate > 0 ? configuredRate : UNTHROTTLED_ROWS_PER_SECOND;
+    }
+
+    public static synchronized Rebalancer getInstance() {
+        if (instance == null) {
+            instance = new Rebalancer();
+        }
+        return instance;
+    }
+
+    /**
+     * Collect a plan and, unless this is a dry run, execute it.
+     */
+    public RebalancePlan rebalance(boolean dryRun, MigrationListener listener) throws DatabaseException {
+        RebalancePlan plan = plan();
+        logger.info("{}{}", dryRun ? "[dry run] " : "", plan.describe());
+        if (!dryRun && !plan.isEmpty()) {
+            execute(plan, listener);
+            logger.info("Rebalance finished:\n{}", plan.describe());
+        }
+        return plan;
+    }
+
+    public RebalancePlan plan() throws DatabaseException {
+        return plan(collectLoad());
+    }
+
+    /**
+     * Per-fragment group sizes (counted in parallel) and pool utilization
+     * (averaged over a short sampling window).
+     */
+    public List<FragmentLoad> collectLoad() throws DatabaseException {
+        List<String> fragments = connectionManager.getAllFragments();
+        Map<String, Double> utilization = sampleUtilization(fragments);
+
+        List<FragmentLoad> loads = new ArrayList<>();
+        for (FragmentResult<Map<String, Long>> result : fragmentExecutor.invokeAll(fragments, this::countGroupRows)) {
+            if (!result.isSuccess()) {
+                // A plan built without one fragment would move everything towards it
+                throw new DatabaseException("Cannot collect load of fragment " + result.getFragment(),
+                        result.getFragment(), result.getError());
+            }
+            loads.add(new FragmentLoad(result.getFragment(), result.getValue(),
+                    utilization.getOrDefault(result.getFragment(), 0.0)));
+        }
+        return loads;
+    }
+
+    private Map<String, Double> sampleUtilization(List<String> fragments) throws DatabaseException {
+        Map<String, Double> sums = new HashMap<>();
+        for (int i = 0; i < LOAD_SAMPLES; i++) {
+            for (String fragment : fragments) {
+                sums.merge(fragment, connectionManager.getPoolUtilization(fragment), Double::sum);
+            }
+            if (i < LOAD_SAMPLES - 1) {
+                try {
+                    Thread.sleep(LOAD_SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DatabaseException("Interrupted while sampling pool load", e);
+                }
+            }
+        }
+        sums.replaceAll((fragment, sum) -> sum / LOAD_SAMPLES);
+        return sums;
+    }
+
+    private Map<String, Long> countGroupRows(String fragment) throws SQLException, FragmentException {
+        String sql = String.format("""
+            SELECT g.manhomnc,
+                   1
+                   + (SELECT COUNT(*) FROM nhanvien_%1$s nv WHERE nv.manhomnc = g.manhomnc)
+                   + (SELECT COUNT(*) FROM dean_%1$s d WHERE d.manhomnc = g.manhomnc)
+                   + (SELECT COUNT(*) FROM thamgia_%1$s t INNER JOIN dean_%1$s d ON t.mada = d.mada
+                      WHERE d.manhomnc = g.manhomnc) AS row_count
+            FROM nhomnc_%1$s g
+            """, fragment);
+
+        Map<String, Long> rows = new LinkedHashMap<>();
+        try (Connection conn = connectionManager.getConnection(fragment);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.put(rs.getString("manhomnc"), rs.getLong("row_count"));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Greedy planner over the given loads; does not touch the database.
+     */
+    public RebalancePlan plan(List<FragmentLoad> loads) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Map<String, Double> pressure = new HashMap<>();
+        Map<String, Map<String, Long>> groups = new HashMap<>();
+        for (FragmentLoad load : loads) {
+            scores.put(load.getFragment(), load.getScore());
+            pressure.put(load.getFragment(), load.getPressure());
+            groups.put(load.getFragment(), new HashMap<>(load.getGroupRows()));
+        }
+
+        List<RebalancePlan.Move> moves = new ArrayList<>();
+        while (moves.size() < maxMoves && scores.size() > 1) {
+            String hot = scores.entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+            String cold = scores.entrySet().stream().min(Map.Entry.comparingByValue()).get().getKey();
+            double mean = scores.values().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double gap = scores.get(hot) - scores.get(cold);
+            if (mean == 0 || gap <= tolerance * mean) {
+                break;
+            }
+
+            String bestGroup = null;
+            double bestBenefit = 0;
+            for (Map.Entry<String, Long> group : groups.get(hot).entrySet()) {
+                long rows = group.getValue();
+                double hotAfter = scores.get(hot) - rows * pressure.get(hot);
+                double coldAfter = scores.get(cold) + rows * pressure.get(cold);
+                double improvement = gap - Math.abs(hotAfter - coldAfter);
+                double benefit = improvement / estimateSeconds(rows);
+                if (improvement > 0 && benefit > bestBenefit) {
+                    bestBenefit = benefit;
+                    bestGroup = group.getKey();
+                }
+            }
+            if (bestGroup == null) {
+                break;
+            }
+
+            long rows = groups.get(hot).remove(bestGroup);
+            groups.get(cold).put(bestGroup, rows);
+            scores.merge(hot, -rows * pressure.get(hot), Double::sum);
+            scores.merge(cold, rows * pressure.get(cold), Double::sum);
+            moves.add(new RebalancePlan.Move(bestGroup, hot, cold,
+                    fragmentConfig.getDepartmentForFragment(cold), rows, estimateSeconds(rows)));
+        }
+
+        moves.sort(Comparator.comparingDouble(RebalancePlan.Move::getEstimatedSeconds).reversed());
+        return new RebalancePlan(loads, moves, scores);
+    }
+
+    private double estimateSeconds(long rows) {
+        return MOVE_OVERHEAD_SECONDS + (double) rows / rowsPerSecond;
+    }
+
+    /**
+     * Run the plan's moves concurrently and wait for all of them.
+     * Each move records its own outcome; one failure does not stop the others.
+     */
+    public void execute(RebalancePlan plan, MigrationListener listener) throws DatabaseException {
+        QueryService queryService = new QueryService();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(maxConcurrent, plan.getMoves().size())), runnable -> {
+                    Thread thread = new Thread(runnable, "rebalance-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        // Longest moves were sorted first so they start early
+        for (RebalancePlan.Move move : plan.getMoves()) {
+            workers.submit(() -> runMove(queryService, move, listener));
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Rebalance still running...");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while rebalancing", e);
+        }
+    }
+
+    private void runMove(QueryService queryService, RebalancePlan.Move move, MigrationListener listener) {
+        Semaphore permits = pairPermits.computeIfAbsent(pairKey(move), k -> new Semaphore(maxPerFragmentPair, true));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            move.setOutcome(RebalancePlan.Status.FAILED, "interrupted");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            move.setOutcome(RebalancePlan.Status.RUNNING, null);
+            queryService.updateDepartment(move.getGroupId(), move.getNewDepartment(),
+                    TransparencyLevel.LOCATION_TRANSPARENCY, listener);
+            move.setOutcome(RebalancePlan.Status.DONE,
+                    String.format("%.1f s", (System.nanoTime() - start) / 1_000_000_000.0));
+        } catch (DatabaseException | ValidationException e) {
+            logger.error("Rebalance move of group {} failed: {}", move.getGroupId(), e.getMessage());
+            move.setOutcome(RebalancePlan.Status.FAILED, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Rebalance move of group {} failed", move.getGroupId(), e);
+            move.setOutcome(RebalancePlan.Status.FAILED, e.toString());
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static String pairKey(RebalancePlan.Move move) {
+        String a = move.getFromFragment();
+        String b = move.getToFragment();
+        return a.compareTo(b) <= 0 ? a + "|" + b : b + "|" + a;
+    }
+}
@@ -0,0 +1,36 @@
+package com.research.distributed.service;
+
+/**
+ * A write-behind write the database refused after it had been acknowledged, kept
+ * in the fragment's dead-letter journal so it can be looked at and re-entered.
+ */
+public class RejectedWrite {
+    private final PendingWrite write;
+    private final String reason;
+
+    public RejectedWrite(PendingWrite write, String reason) {
+        this.write = write;
+        this.reason = reason;
+    }
+
+    public PendingWrite getWrite() {
+        return write;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * e.g. "INSERT of nhanvien NV42 on p1 was rejected: ..."
+     */
+    public String describe() {
+        return write.getOp() + " of " + write.getTable() + " " + write.getKey() + " on " + write.getFragment()
+                + " was rejected: " + reason;
+    }
+
+    @Override
+    public String toString() {
+        return write + " rejected: " + reason;
+    }
+}
@@ -0,0 +1,10 @@
+package com.research.distributed.service;
+
+/**
+ * Told about every write-behind write the database rejects, after it has been
+ * dead-lettered. Called on the flusher thread, so implementations must return quickly.
+ */
+@FunctionalInterface
+public interface RejectedWriteListener {
+    void onRejected(RejectedWrite rejected);
+}
@@ -0,0 +1,142 @@
+package com.research.distributed.service;
+
+import com.research.distributed.connection.ExecutionTrace;
+import com.research.distributed.connection.QueryCancellation;
+import com.research.distributed.connection.ReadCompleteness;
+import com.research.distributed.exception.DatabaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent reads: while a load for a QueryKey is in
+ * flight, further callers with the same key wait for it and share its result
+ * (or its exception) instead of starting their own fan-out.
+ *
+ * Callers share the returned object and must not modify it. A load that failed
+ * or came back incomplete because its caller was cancelled or ran out of time
+ * is not shared: the callers waiting for it load again, one of them leading.
+ */
+public class SingleFlight {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+    private static SingleFlight instance;
+
+    // Handed to joiners when the leader's own cancellation or deadline cut its load short
+    private static final Shared RETRY = new Shared(null, false);
+
+    private final ConcurrentMap<QueryKey, CompletableFuture<Shared>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private SingleFlight() {
+    }
+
+    public static synchronized SingleFlight getInstance() {
+        if (instance == null) {
+            instance = new SingleFlight();
+        }
+        return instance;
+    }
+
+    public <T> T execute(QueryKey key, QueryLoader<T> loader) throws DatabaseException {
+        while (true) {
+            CompletableFuture<Shared> call = new CompletableFuture<>();
+            CompletableFuture<Shared> existing = inFlight.putIfAbsent(key, call);
+            if (existing == null) {
+                return lead(key, call, loader);
+            }
+            coalesced.incrementAndGet();
+            logger.debug("Joining in-flight execution of {}", key);
+            ExecutionTrace.note("Joined an identical in-flight execution of %s", key);
+            Shared shared = await(key, existing);
+            if (shared != RETRY) {
+                if (!shared.complete()) {
+                    ReadCompleteness.markIncomplete();
+                }
+                @SuppressWarnings("unchecked")
+                T value = (T) shared.value();
+                return value;
+            }
+            logger.debug("Leader of {} was cancelled or timed out, loading again", key);
+        }
+    }
+
+    private <T> T lead(QueryKey key, CompletableFuture<Shared> call, QueryLoader<T> loader)
+            throws DatabaseException {
+        executions.incrementAndGet();
+        ReadCompleteness previous = ReadCompleteness.begin();
+        T value;
+        try {
+            value = loader.load();
+        } catch (DatabaseException | RuntimeException | Error e) {
+            ReadCompleteness.end(previous);
+            inFlight.remove(key, call);
+            // A cancelled or timed-out leader fails for its own request only
+            if (QueryCancellation.isExpired()) {
+                call.complete(RETRY);
+            } else {
+                call.completeExceptionally(e);
+            }
+            throw e;
+        }
+        boolean complete = ReadCompleteness.end(previous);
+        // Removed before completing, so joiners sent to retry cannot find this call again
+        inFlight.remove(key, call);
+        if (!complete && QueryCancellation.isExpired()) {
+            // Cut short by this caller's deadline, which the joiners do not share
+            call.complete(RETRY);
+        } else {
+            call.complete(new Shared(value, complete));
+        }
+        return value;
+    }
+
+    private Shared await(QueryKey key, CompletableFuture<Shared> call) throws DatabaseException {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DatabaseException databaseException) {
+                throw databaseException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new DatabaseException("Shared execution of " + key + " failed", cause);
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * Number of requests that were served by another caller's execution.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public void logStats() {
+        logger.info("Single-flight - Executions: {}, Coalesced requests: {}", executions.get(), coalesced.get());
+    }
+
+    private record Shared(Object value, boolean complete) {
+    }
+}
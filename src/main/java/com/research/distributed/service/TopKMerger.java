@@ -0,0 +1,59 @@
+package com.research.distributed.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best k rows seen so far in a size-k heap, with the worst retained row on top.
+ * Safe to feed from several fragment threads at once.
+ */
+public class TopKMerger<T> {
+    private final int k;
+    private final Comparator<T> order;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param order ordering of the result, best row first (same as the pushed-down ORDER BY)
+     */
+    public TopKMerger(int k, Comparator<T> order) {
+        this.k = k;
+        this.order = order;
+        this.heap = new PriorityQueue<>(Math.max(1, k), order.reversed());
+    }
+
+    /**
+     * Offer a row. Returns false when the heap is full and the row is not better than
+     * the worst retained row. Since each fragment streams rows in result order, a
+     * rejected row means nothing after it on that fragment can qualify either.
+     */
+    public synchronized boolean offer(T row) {
+        if (k <= 0) {
+            return false;
+        }
+        if (heap.size() < k) {
+            heap.add(row);
+            return true;
+        }
+        if (order.compare(row, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(row);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    /**
+     * The retained rows, best first.
+     */
+    public synchronized List<T> result() {
+        List<T> rows = new ArrayList<>(heap);
+        rows.sort(order);
+        return rows;
+    }
+}
@@ -0,0 +1,24 @@
+package com.research.distributed.service;
+
+import com.research.distributed.connection.ExecutionTrace;
+
+/**
+ * The result of a read together with the execution trace that produced it.
+ */
+public class TracedResult<T> {
+    private final T value;
+    private final ExecutionTrace trace;
+
+    public TracedResult(T value, ExecutionTrace trace) {
+        this.value = value;
+        this.trace = trace;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+}
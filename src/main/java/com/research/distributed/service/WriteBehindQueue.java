@@ -0,0 +1,603 @@
+package com.research.distributed.service;
+
+import com.research.distributed.config.DatabaseConfig;
+import com.research.distributed.connection.FragmentConnectionManager;
+import com.research.distributed.connection.WorkPriority;
+import com.research.distributed.dao.BaseDAO;
+import com.research.distributed.dao.DataChangeBus;
+import com.research.distributed.dao.DataChangeEvent;
+import com.research.distributed.exception.DatabaseException;
+import com.research.distributed.exception.FragmentException;
+import com.research.distributed.model.ThamGia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional write-behind mode for CRUD inserts and updates.
+ *
+ * A write is appended to its fragment's durable journal and acknowledged right
+ * away; a background flusher applies each fragment's writes in journal order,
+ * in batches of one transaction each, and publishes the usual DataChangeEvents
+ * once they have committed. A fragment that cannot be reached is retried with
+ * exponential backoff while the others keep flushing.
+ *
+ * A queued update only applies while the row still has the updated_at the user
+ * edited (see PendingWrite). A write the database rejects, by a constraint or
+ * because the row changed or disappeared meanwhile, goes to the fragment's
+ * dead-letter journal and is reported to the RejectedWriteListeners; later
+ * queued updates of the same row are rejected with it. A subject-less change
+ * event then makes caches, views and open tables read the table again, since
+ * they showed the write.
+ *
+ * Until a write is flushed, CRUDService overlays it on what it reads, so the
+ * user sees their own writes. Journals left by a crash are replayed on start();
+ * a replayed insert that had in fact committed is recognized by its duplicate key.
+ */
+public class WriteBehindQueue {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private static WriteBehindQueue instance;
+
+    // SQL Server: violation of PRIMARY KEY / unique index
+    private static final int DUPLICATE_KEY = 2627;
+    private static final int DUPLICATE_INDEX_KEY = 2601;
+
+    private static final Map<String, String> INSERT_SQL = Map.of(
+            "nhomnc", "INSERT INTO nhomnc_%s (manhomnc, tennhomnc, tenphong) VALUES (?, ?, ?)",
+            "nhanvien", "INSERT INTO nhanvien_%s (manv, hoten, manhomnc) VALUES (?, ?, ?)",
+            "dean", "INSERT INTO dean_%s (mada, tenda, manhomnc) VALUES (?, ?, ?)",
+            "thamgia", "INSERT INTO thamgia_%s (manv, mada, ngaythamgia) VALUES (?, ?, COALESCE(?, GETDATE()))");
+
+    // Bound with the entity's fields, key moved to the end
+    private static final Map<String, String> UPDATE_SQL = Map.of(
+            "nhomnc", "UPDATE nhomnc_%s SET tennhomnc = ?, tenphong = ?, updated_at = GETDATE() WHERE manhomnc = ?",
+            "nhanvien", "UPDATE nhanvien_%s SET hoten = ?, manhomnc = ?, updated_at = GETDATE() WHERE manv = ?",
+            "dean", "UPDATE dean_%s SET tenda = ?, manhomnc = ?, updated_at = GETDATE() WHERE mada = ?");
+
+    private final FragmentConnectionManager connectionManager;
+    private final DataChangeBus changeBus;
+    private final boolean enabled;
+    private final Path directory;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long maxRetryDelayMillis;
+
+    private final Map<String, WriteJournal> journals = new ConcurrentHashMap<>();
+    private final Map<String, WriteJournal> deadLetters = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentLinkedDeque<PendingWrite>> queues = new ConcurrentHashMap<>();
+    // "table|key" of rows with a rejected write, per fragment, until its queue runs empty
+    private final Map<String, Set<String>> rejectedRows = new ConcurrentHashMap<>();
+    private final List<RejectedWrite> rejectedWrites = new CopyOnWriteArrayList<>();
+    private final List<RejectedWriteListener> rejectionListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> retryAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> retryDelay = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private ScheduledExecutorService flusher;
+
+    private WriteBehindQueue() {
+        DatabaseConfig config = DatabaseConfig.getInstance();
+        this.connectionManager = FragmentConnectionManager.getInstance();
+        this.changeBus = DataChangeBus.getInstance();
+        this.enabled = config.isWriteBehindEnabled();
+        this.directory = Path.of(config.getWriteBehindDirectory());
+        this.batchSize = config.getWriteBehindBatchSize();
+        this.flushIntervalMillis = config.getWriteBehindFlushIntervalMillis();
+        this.maxRetryDelayMillis = config.getWriteBehindMaxRetryDelayMillis();
+    }
+
+    public static synchronized WriteBehindQueue getInstance() {
+        if (instance == null) {
+            instance = new WriteBehindQueue();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replay journals left by an earlier run and start the flusher. Journals are
+     * replayed even when write-behind has since been disabled, so nothing is lost.
+     */
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        long maxSeq = 0;
+        for (String fragment : connectionManager.getAllFragments()) {
+            try {
+                for (PendingWrite write : journal(fragment).readUnacknowledged()) {
+                    queue(fragment).add(write);
+                    maxSeq = Math.max(maxSeq, write.getSeq());
+                }
+            } catch (IOException e) {
+                logger.error("Cannot replay write-behind journal of {}: {}", fragment, e.getMessage());
+            }
+            if (!queue(fragment).isEmpty()) {
+                logger.info("Replaying {} pending writes for fragment {}", queue(fragment).size(), fragment);
+            }
+            try {
+                rejectedWrites.addAll(deadLetters(fragment).readRejected());
+            } catch (IOException e) {
+                logger.error("Cannot read dead-letter journal of {}: {}", fragment, e.getMessage());
+            }
+        }
+        seq.set(maxSeq);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(WorkPriority.BATCH.wrap(runnable), "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Write-behind queue started (enabled: {}, batch {}, every {} ms)",
+                enabled, batchSize, flushIntervalMillis);
+    }
+
+    /**
+     * Journal a write durably and queue it for its fragment.
+     */
+    public PendingWrite enqueue(String fragment, String table, PendingWrite.Op op, Object entity)
+            throws DatabaseException {
+        if (op == PendingWrite.Op.UPDATE && !UPDATE_SQL.containsKey(table)) {
+            throw new DatabaseException("Updates of " + table + " cannot be written behind");
+        }
+        WriteJournal journal = journal(fragment);
+        // Sequence order must equal journal order, so both happen under the journal's lock
+        synchronized (journal) {
+            // An update of a row with a queued write builds on that write, whose row version does not exist yet
+            boolean versioned = op == PendingWrite.Op.UPDATE && !isPending(table, PendingWrite.keyOf(entity));
+            PendingWrite write = new PendingWrite(seq.incrementAndGet(), fragment, table, op, entity,
+                    versioned, versioned ? PendingWrite.versionOf(entity) : null);
+            try {
+                journal.append(write);
+            } catch (IOException e) {
+                throw new DatabaseException("Cannot journal write to " + table + " on " + fragment, fragment, e);
+            }
+            queue(fragment).add(write);
+            logger.debug("Queued {}", write);
+            return write;
+        }
+    }
+
+    /**
+     * Pending writes of a table on every fragment, oldest first.
+     */
+    public List<PendingWrite> getPending(String table) {
+        List<PendingWrite> pending = new ArrayList<>();
+        for (ConcurrentLinkedDeque<PendingWrite> queue : queues.values()) {
+            for (PendingWrite write : queue) {
+                if (write.getTable().equals(table)) {
+                    pending.add(write);
+                }
+            }
+        }
+        pending.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+        return pending;
+    }
+
+    private boolean isPending(String table, String key) {
+        for (ConcurrentLinkedDeque<PendingWrite> queue : queues.values()) {
+            for (PendingWrite write : queue) {
+                if (write.getTable().equals(table) && write.getKey().equals(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void addRejectionListener(RejectedWriteListener listener) {
+        rejectionListeners.add(listener);
+    }
+
+    public void removeRejectionListener(RejectedWriteListener listener) {
+        rejectionListeners.remove(listener);
+    }
+
+    /**
+     * Every write in the dead-letter journals, oldest first per fragment.
+     */
+    public List<RejectedWrite> getRejected() {
+        return new ArrayList<>(rejectedWrites);
+    }
+
+    public int getPendingCount() {
+        return queues.values().stream().mapToInt(ConcurrentLinkedDeque::size).sum();
+    }
+
+    /**
+     * Wait until everything queued for the fragment so far is applied. Used before
+     * operations that must see the fragment as the user sees it (deletes, migrations).
+     */
+    public void drain(String fragment, long timeoutMillis) throws DatabaseException {
+        ConcurrentLinkedDeque<PendingWrite> queue = queues.get(fragment);
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        long last = queue.peekLast() != null ? queue.peekLast().getSeq() : 0;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            PendingWrite head = queue.peekFirst();
+            if (head == null || head.getSeq() > last) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new DatabaseException("Pending writes for fragment " + fragment
+                        + " could not be applied in time; try again later", fragment, null);
+            }
+            retryAt.remove(fragment);
+            if (flusher != null) {
+                flusher.execute(() -> flush(fragment));
+            }
+            try {
+                Thread.sleep(Math.min(flushIntervalMillis, 100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException("Interrupted while waiting for pending writes", fragment, e);
+            }
+        }
+    }
+
+    public void drainAll(long timeoutMillis) throws DatabaseException {
+        for (String fragment : connectionManager.getAllFragments()) {
+            drain(fragment, timeoutMillis);
+        }
+    }
+
+    private void flushAll() {
+        for (String fragment : queues.keySet()) {
+            Long due = retryAt.get(fragment);
+            if (due != null && System.currentTimeMillis() < due) {
+                continue;
+            }
+            flush(fragment);
+        }
+    }
+
+    /**
+     * Apply the fragment's queue batch by batch. Runs on the flusher thread only.
+     */
+    private void flush(String fragment) {
+        ConcurrentLinkedDeque<PendingWrite> queue = queue(fragment);
+        while (!queue.isEmpty()) {
+            PendingWrite head = queue.peekFirst();
+            if (followsRejected(fragment, head)) {
+                reject(fragment, head, "an earlier queued change of the same row was rejected");
+                continue;
+            }
+            // A row is written at most once per batch, so a rejection is known before its next write runs
+            List<PendingWrite> batch = new ArrayList<>();
+            Set<String> rows = new HashSet<>();
+            for (PendingWrite write : queue) {
+                if (batch.size() == batchSize || !rows.add(rowOf(write)) || followsRejected(fragment, write)) {
+                    break;
+                }
+                batch.add(write);
+            }
+
+            try {
+                applyBatch(fragment, batch);
+            } catch (SQLException | FragmentException e) {
+                if (isTransient(e)) {
+                    scheduleRetry(fragment, e);
+                    return;
+                }
+                // Find the offending write(s) by applying the batch one write at a time
+                for (PendingWrite write : batch) {
+                    try {
+                        applyBatch(fragment, List.of(write));
+                    } catch (SQLException | FragmentException single) {
+                        if (isTransient(single)) {
+                            scheduleRetry(fragment, single);
+                            return;
+                        }
+                        reject(fragment, write, single.getMessage());
+                    }
+                }
+                continue;
+            }
+        }
+        retryDelay.remove(fragment);
+        retryAt.remove(fragment);
+        compact(fragment);
+    }
+
+    private void applyBatch(String fragment, List<PendingWrite> batch) throws SQLException, FragmentException {
+        Set<PendingWrite> missed = new HashSet<>();
+        try (Connection conn = connectionManager.getConnection(fragment)) {
+            conn.setAutoCommit(false);
+            try {
+                // Consecutive writes with the same statement share one JDBC batch
+                int start = 0;
+                while (start < batch.size()) {
+                    String sql = sqlFor(batch.get(start));
+                    int end = start;
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        while (end < batch.size() && sqlFor(batch.get(end)).equals(sql)) {
+                            bind(stmt, batch.get(end));
+                            stmt.addBatch();
+                            end++;
+                        }
+                        missed.addAll(executeBatch(stmt, batch.subList(start, end)));
+                    }
+                    start = end;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        batches.incrementAndGet();
+
+        // Updates that matched no row changed nothing; in queue order, so the journal is acknowledged in order
+        List<PendingWrite> applied = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            if (!missed.contains(write)) {
+                applied.add(write);
+                continue;
+            }
+            if (!applied.isEmpty()) {
+                acknowledge(fragment, applied);
+                applied = new ArrayList<>();
+            }
+            reject(fragment, write, write.isVersioned()
+                    ? "the row was changed or deleted by someone else after it was edited"
+                    : "the row no longer exists");
+        }
+        if (!applied.isEmpty()) {
+            acknowledge(fragment, applied);
+        }
+    }
+
+    /**
+     * Run the JDBC batch and return the updates in it that matched no row.
+     */
+    private List<PendingWrite> executeBatch(PreparedStatement stmt, List<PendingWrite> writes) throws SQLException {
+        int[] counts;
+        try {
+            counts = stmt.executeBatch();
+        } catch (SQLException e) {
+            // A replayed insert that committed before a crash: it is already applied
+            boolean duplicate = e.getErrorCode() == DUPLICATE_KEY || e.getErrorCode() == DUPLICATE_INDEX_KEY;
+            if (duplicate && writes.size() == 1 && writes.get(0).getOp() == PendingWrite.Op.INSERT) {
+                logger.info("Write-behind {} was already applied", writes.get(0));
+                return List.of();
+            }
+            throw e;
+        }
+        List<PendingWrite> missed = new ArrayList<>();
+        for (int i = 0; i < writes.size() && i < counts.length; i++) {
+            if (writes.get(i).getOp() == PendingWrite.Op.UPDATE && counts[i] == 0) {
+                missed.add(writes.get(i));
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Publish the committed writes and take them off the queue and the journal.
+     */
+    private void acknowledge(String fragment, List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            changeBus.publish(write.getOp() == PendingWrite.Op.INSERT ? DataChangeEvent.Type.INSERT
+                    : DataChangeEvent.Type.UPDATE, write.getTable(), fragment, write.getEntity());
+        }
+        remove(fragment, writes);
+    }
+
+    /**
+     * Dead-letter a write the database refused, take it off the queue and the
+     * journal, and undo what showing it as accepted left behind.
+     */
+    private void reject(String fragment, PendingWrite write, String reason) {
+        rejected.incrementAndGet();
+        logger.error("Write-behind {} rejected by fragment {}: {}", write, fragment, reason);
+        RejectedWrite rejectedWrite = new RejectedWrite(write, reason);
+        try {
+            deadLetters(fragment).appendRejected(write, reason);
+        } catch (IOException e) {
+            logger.error("Cannot dead-letter write-behind {}: {}", write, e.getMessage());
+        }
+        rejectedWrites.add(rejectedWrite);
+        rejectedRows.computeIfAbsent(fragment, f -> ConcurrentHashMap.newKeySet()).add(rowOf(write));
+        remove(fragment, List.of(write));
+
+        if (write.getOp() == PendingWrite.Op.INSERT && write.getTable().equals("nhomnc")) {
+            // Registered when the insert was queued
+            connectionManager.forgetGroupLocation(write.getKey(), fragment);
+        }
+        // Off the queue, so the overlay no longer shows it when the table is read again
+        changeBus.publish(DataChangeEvent.Type.UPDATE, write.getTable(), fragment);
+        for (RejectedWriteListener listener : rejectionListeners) {
+            try {
+                listener.onRejected(rejectedWrite);
+            } catch (RuntimeException e) {
+                logger.warn("Rejected write listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * An unversioned update that builds on a write of its row which was rejected.
+     */
+    private boolean followsRejected(String fragment, PendingWrite write) {
+        Set<String> rows = rejectedRows.get(fragment);
+        return write.getOp() == PendingWrite.Op.UPDATE && !write.isVersioned()
+                && rows != null && rows.contains(rowOf(write));
+    }
+
+    private static String rowOf(PendingWrite write) {
+        return write.getTable() + "|" + write.getKey();
+    }
+
+    private void remove(String fragment, List<PendingWrite> writes) {
+        ConcurrentLinkedDeque<PendingWrite> queue = queue(fragment);
+        for (int i = 0; i < writes.size(); i++) {
+            queue.pollFirst();
+        }
+        flushed.addAndGet(writes.size());
+        try {
+            journal(fragment).ack(writes.get(writes.size() - 1).getSeq());
+        } catch (IOException e) {
+            // Without the ACK the writes are replayed after a restart, which is harmless
+            logger.warn("Cannot acknowledge write-behind journal of {}: {}", fragment, e.getMessage());
+        }
+    }
+
+    private void compact(String fragment) {
+        WriteJournal journal = journal(fragment);
+        synchronized (journal) {
+            if (!queue(fragment).isEmpty()) {
+                return;
+            }
+            // No queued write can follow a rejected one any more
+            rejectedRows.remove(fragment);
+            try {
+                journal.truncate();
+            } catch (IOException e) {
+                logger.warn("Cannot truncate write-behind journal of {}: {}", fragment, e.getMessage());
+            }
+        }
+    }
+
+    private void scheduleRetry(String fragment, Exception e) {
+        long delay = Math.min(maxRetryDelayMillis, retryDelay.getOrDefault(fragment, flushIntervalMillis) * 2);
+        retryDelay.put(fragment, delay);
+        retryAt.put(fragment, System.currentTimeMillis() + delay);
+        retries.incrementAndGet();
+        logger.warn("Fragment {} unreachable for write-behind ({} pending), retrying in {} ms: {}",
+                fragment, queue(fragment).size(), delay, e.getMessage());
+    }
+
+    /**
+     * Connection failures (SQLState class 08) and pool errors are worth retrying;
+     * anything else is the database rejecting the write.
+     */
+    private static boolean isTransient(Exception e) {
+        if (e instanceof FragmentException) {
+            return true;
+        }
+        String state = ((SQLException) e).getSQLState();
+        return state == null || state.startsWith("08");
+    }
+
+    private static String sqlFor(PendingWrite write) {
+        if (write.getOp() == PendingWrite.Op.INSERT) {
+            return String.format(INSERT_SQL.get(write.getTable()), write.getFragment());
+        }
+        String sql = String.format(UPDATE_SQL.get(write.getTable()), write.getFragment());
+        return write.isVersioned() ? sql + " AND " + BaseDAO.VERSION_MATCHES : sql;
+    }
+
+    private static void bind(PreparedStatement stmt, PendingWrite write) throws SQLException {
+        List<Object> values = new ArrayList<>();
+        if (write.getEntity() instanceof ThamGia thamGia) {
+            values.add(thamGia.getMaNv());
+            values.add(thamGia.getMaDa());
+            values.add(thamGia.getNgayThamGia() != null ? java.sql.Date.valueOf(thamGia.getNgayThamGia()) : null);
+        } else {
+            values.addAll(write.fields());
+            if (write.getOp() == PendingWrite.Op.UPDATE) {
+                values.add(values.remove(0));
+            }
+            if (write.isVersioned()) {
+                Timestamp version = write.getVersion() != null ? Timestamp.valueOf(write.getVersion()) : null;
+                values.add(version);
+                values.add(version);
+            }
+        }
+        for (int i = 0; i < values.size(); i++) {
+            stmt.setObject(i + 1, values.get(i));
+        }
+    }
+
+    private WriteJournal journal(String fragment) {
+        return journals.computeIfAbsent(fragment,
+                f -> new WriteJournal(f, directory.resolve(f + ".journal")));
+    }
+
+    private WriteJournal deadLetters(String fragment) {
+        return deadLetters.computeIfAbsent(fragment,
+                f -> new WriteJournal(f, directory.resolve(f + ".rejected")));
+    }
+
+    private ConcurrentLinkedDeque<PendingWrite> queue(String fragment) {
+        return queues.computeIfAbsent(fragment, f -> new ConcurrentLinkedDeque<>());
+    }
+
+    public Map<String, Integer> getPendingByFragment() {
+        Map<String, Integer> pending = new HashMap<>();
+        queues.forEach((fragment, queue) -> pending.put(fragment, queue.size()));
+        return pending;
+    }
+
+    public void logStats() {
+        logger.info("Write-behind stats: {} flushed in {} batches, {} rejected, {} retries, pending {}",
+                flushed.get(), batches.get(), rejected.get(), retries.get(), getPendingByFragment());
+    }
+
+    /**
+     * Try to flush what is left, then stop. Anything still pending stays in the
+     * journals and is replayed at the next start.
+     */
+    public synchronized void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdownNow();
+        for (String fragment : queues.keySet()) {
+            if (!queue(fragment).isEmpty()) {
+                flush(fragment);
+            }
+        }
+        deadLetters.values().forEach(journal -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                /* ignore */
+            }
+        });
+        journals.values().forEach(journal -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                /* ignore */
+            }
+        });
+        flusher = null;
+    }
+}
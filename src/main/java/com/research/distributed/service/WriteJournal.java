@@ -0,0 +1,182 @@
+package com.research.distributed.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only journal of one fragment's pending writes, one record per line:
+ * WRITE (seq, table, op, column values and, for a versioned update, the row
+ * version) or ACK (every write up to seq is applied). Appends are forced to disk
+ * before they return.
+ *
+ * The dead-letter journal of a fragment uses the same format with REJECTED
+ * records: the write's fields, preceded by why the database refused it.
+ */
+class WriteJournal {
+    private static final Logger logger = LoggerFactory.getLogger(WriteJournal.class);
+
+    private static final String WRITE = "WRITE";
+    private static final String ACK = "ACK";
+    private static final String REJECTED = "REJECTED";
+    // URLEncoder never emits a bare '~', so it cannot clash with an encoded value
+    private static final String NULL = "~";
+
+    private final String fragment;
+    private final Path path;
+    private FileChannel channel;
+
+    WriteJournal(String fragment, Path path) {
+        this.fragment = fragment;
+        this.path = path;
+    }
+
+    synchronized void append(PendingWrite write) throws IOException {
+        List<String> fields = new ArrayList<>(List.of(WRITE, Long.toString(write.getSeq()),
+                write.getTable(), write.getOp().name()));
+        addValues(fields, write);
+        appendLine(fields);
+    }
+
+    synchronized void appendRejected(PendingWrite write, String reason) throws IOException {
+        List<String> fields = new ArrayList<>(List.of(REJECTED, Long.toString(write.getSeq()), reason,
+                write.getTable(), write.getOp().name()));
+        addValues(fields, write);
+        appendLine(fields);
+    }
+
+    private static void addValues(List<String> fields, PendingWrite write) {
+        fields.addAll(write.fields());
+        if (write.isVersioned()) {
+            fields.add(write.getVersion() != null ? write.getVersion().toString() : null);
+        }
+    }
+
+    /**
+     * Rebuild a write from its seq, table, op and values fields.
+     */
+    private PendingWrite parse(String seq, String table, String op, List<String> values) {
+        boolean versioned = values.size() > PendingWrite.FIELD_COUNT;
+        String version = versioned ? values.get(PendingWrite.FIELD_COUNT) : null;
+        return new PendingWrite(Long.parseLong(seq), fragment, table, PendingWrite.Op.valueOf(op),
+                PendingWrite.entityOf(table, values.subList(0, PendingWrite.FIELD_COUNT)),
+                versioned, version != null ? LocalDateTime.parse(version) : null);
+    }
+    synchronized void ack(long seq) throws IOException {
+        appendLine(List.of(ACK, Long.toString(seq)));
+    }
+
+    private void appendLine(List<String> fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append('|');
+            }
+            line.append(field == null ? NULL : URLEncoder.encode(field, StandardCharsets.UTF_8));
+        }
+        line.append('\n');
+        FileChannel out = channel();
+        out.write(ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8)));
+        out.force(false);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    /**
+     * Writes that were journaled but never acknowledged, in journal order.
+     */
+    synchronized List<PendingWrite> readUnacknowledged() throws IOException {
+        List<PendingWrite> writes = new ArrayList<>();
+        long acked = 0;
+        for (List<String> fields : readRecords()) {
+            try {
+                if (fields.get(0).equals(ACK)) {
+                    acked = Math.max(acked, Long.parseLong(fields.get(1)));
+                } else if (fields.get(0).equals(WRITE)) {
+                    writes.add(parse(fields.get(1), fields.get(2), fields.get(3), fields.subList(4, fields.size())));
+                }
+            } catch (RuntimeException e) {
+                // A torn last line from a crash mid-append was never acknowledged to anyone
+                logger.warn("Ignoring malformed journal record in {}: {}", path, fields);
+            }
+        }
+        long lastAcked = acked;
+        writes.removeIf(write -> write.getSeq() <= lastAcked);
+        return writes;
+    }
+
+    /**
+     * Every write in the dead-letter journal, oldest first.
+     */
+    synchronized List<RejectedWrite> readRejected() throws IOException {
+        List<RejectedWrite> rejected = new ArrayList<>();
+        for (List<String> fields : readRecords()) {
+            try {
+                if (fields.get(0).equals(REJECTED)) {
+                    rejected.add(new RejectedWrite(parse(fields.get(1), fields.get(3), fields.get(4),
+                            fields.subList(5, fields.size())), fields.get(2)));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring malformed journal record in {}: {}", path, fields);
+            }
+        }
+        return rejected;
+    }
+
+    private List<List<String>> readRecords() throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return records;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                records.add(Arrays.stream(line.split("\\|", -1))
+                        .map(field -> field.equals(NULL) ? null : URLDecoder.decode(field, StandardCharsets.UTF_8))
+                        .toList());
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring malformed journal record in {}: {}", path, line);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Empty the journal; only called once every write in it is acknowledged.
+     */
+    synchronized void truncate() throws IOException {
+        channel().truncate(0);
+        channel.force(false);
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}